@@ -0,0 +1,242 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.backend;
+
+import com.casewalker.narratechat.audio.AudioClip;
+import com.casewalker.narratechat.audio.AudioPlayer;
+import com.casewalker.narratechat.metrics.LatencyHistogram;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.casewalker.narratechat.NarrateChatMod.METRICS;
+
+/**
+ * JMH benchmarks for the time to first audio of a long narration spoken by the {@link SynthesizingNarrationBackend},
+ * synthesized whole (<code>chunkChars</code> 0) or streamed in chunks split by {@link SpeechChunker}.
+ * <p>
+ * A real engine cannot run inside the benchmark, so the backend drives a simulated engine which takes time and writes
+ * WAV audio in proportion to the length of each line, which is how pipe-based offline engines like piper behave. Each
+ * invocation times the real path from {@link SynthesizingNarrationBackend#say} through the synthesis thread to the
+ * first clip handed to the player, which records it in the same time to first audio histogram as the game, see
+ * <code>/narratechat stats</code>. Its percentiles are printed after each trial.
+ *
+ * @author Case Walker
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StreamingBenchmark {
+
+    private static final String NARRATION = "Steve says Has anyone seen my horse? I left it next to the village "
+            + "near spawn, and when I came back from the mine it was gone, along with the saddle, the diamond horse "
+            + "armor and the chest of supplies I had tied to it. If you find it, please bring it to my base at the "
+            + "river. I will pay you twenty emeralds and a stack of iron, which is more than the horse is worth.";
+
+    /**
+     * Simulated synthesis time per character, about twenty times faster than the speech it produces.
+     */
+    private static final long SYNTHESIS_NANOS_PER_CHAR = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private static final int SAMPLE_RATE = 22050;
+
+    /**
+     * Simulated audio per character, about fifteen characters per second of speech.
+     */
+    private static final int BYTES_PER_CHAR = SAMPLE_RATE * 2 / 15;
+
+    @Param({"0", "120"})
+    public int chunkChars;
+
+    private Path audioDir;
+    private FirstAudioPlayer player;
+    private SynthesizingNarrationBackend backend;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        audioDir = Files.createTempDirectory("narratechat-speech");
+        player = new FirstAudioPlayer();
+        backend = new SynthesizingNarrationBackend(
+                new SimulatedEngine(audioDir), Map.of(), chunkChars, null, player, 0);
+        METRICS.configure(true, 0);
+        METRICS.reset();
+    }
+
+    /**
+     * Say the narration and wait until its first audio reaches the player.
+     */
+    @Benchmark
+    public void firstAudio() throws InterruptedException {
+        player.expectPlay(true);
+        backend.say(NARRATION, false, false);
+        player.awaitPlay();
+    }
+
+    /**
+     * Cost of splitting the narration alone.
+     */
+    @Benchmark
+    public List<String> split() {
+        return SpeechChunker.split(NARRATION, 120);
+    }
+
+    /**
+     * Drop the rest of the narration, and wait until the synthesis thread is idle by having it speak a short line
+     * after whatever it is still working on.
+     */
+    @TearDown(Level.Invocation)
+    public void finishNarration() throws InterruptedException {
+        backend.clear();
+        player.expectPlay(false);
+        backend.say(".", false, false);
+        player.awaitPlay();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        backend.close();
+        final LatencyHistogram firstAudio = METRICS.firstAudioMicros();
+        System.out.printf("%nTime to first audio (chunkChars %d) us p50=%d p90=%d p99=%d%n", chunkChars,
+                firstAudio.percentile(50), firstAudio.percentile(90), firstAudio.percentile(99));
+        METRICS.configure(false, 0);
+        try (var files = Files.list(audioDir)) {
+            for (Path file : files.toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(audioDir);
+    }
+
+    /**
+     * Engine which takes time and writes silent audio in proportion to the length of each line. Only used by the
+     * synthesis thread.
+     */
+    private static final class SimulatedEngine extends EngineProcess {
+        private final Path dir;
+        private final Queue<String> lines = new ArrayDeque<>();
+        private final AudioFormat format = new AudioFormat(SAMPLE_RATE, 16, 1, true, false);
+        private int written;
+
+        private SimulatedEngine(final Path dir) {
+            super(List.of("simulated-engine"), true);
+            this.dir = dir;
+        }
+
+        @Override
+        void start() {}
+
+        @Override
+        boolean ensureStarted() {
+            return true;
+        }
+
+        @Override
+        boolean writeLine(final String text) {
+            return lines.add(text);
+        }
+
+        @Override
+        String readLine() {
+            final String text = lines.poll();
+            if (text == null) {
+                return null;
+            }
+            final long done = System.nanoTime() + SYNTHESIS_NANOS_PER_CHAR * text.length();
+            for (long left = done - System.nanoTime(); left > 0; left = done - System.nanoTime()) {
+                LockSupport.parkNanos(left);
+            }
+            final byte[] pcm = new byte[BYTES_PER_CHAR * text.length()];
+            final Path file = dir.resolve("speech-" + written++ + ".wav");
+            try {
+                AudioSystem.write(new AudioInputStream(new ByteArrayInputStream(pcm), format, pcm.length / 2),
+                        AudioFileFormat.Type.WAVE, file.toFile());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return file.toString();
+        }
+
+        @Override
+        void stop() {}
+    }
+
+    /**
+     * Player which records the time to first audio like {@link AudioPlayer} does when it starts a clip, without
+     * needing an audio line, and lets the benchmark wait for the next clip.
+     */
+    private static final class FirstAudioPlayer extends AudioPlayer {
+        private volatile CountDownLatch played = new CountDownLatch(1);
+        private volatile boolean recording;
+
+        @Override
+        public void play(final AudioClip clip, final float pitch, final long requestedAt) {
+            if (recording && requestedAt != 0) {
+                METRICS.recordFirstAudio(requestedAt, System.nanoTime());
+            }
+            played.countDown();
+        }
+
+        /**
+         * @param record Whether to record the time to first audio of the next narration
+         */
+        private void expectPlay(final boolean record) {
+            recording = record;
+            played = new CountDownLatch(1);
+        }
+
+        private void awaitPlay() throws InterruptedException {
+            played.await();
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.mixin;
+
+import com.casewalker.narratechat.backend.MinecraftNarrationBackend;
+import com.casewalker.narratechat.config.NarrateChatConfig;
+import com.casewalker.narratechat.narration.NarrationDispatcher;
+import com.casewalker.narratechat.narration.NarrationRoute;
+import com.casewalker.narratechat.narration.NarrationText;
+import com.casewalker.narratechat.util.Util;
+import com.mojang.text2speech.Narrator;
+import net.minecraft.client.option.NarratorMode;
+import net.minecraft.text.MutableText;
+import net.minecraft.text.Text;
+import net.minecraft.util.Formatting;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * JMH benchmarks for the narration decision path, from the mixin entry points down to a stub {@link Narrator}.
+ * <p>
+ * Run with <code>./gradlew jmh</code>, which also attaches the GC profiler so that the allocation rate per operation
+ * ("gc.alloc.rate.norm") is reported next to the throughput. Mixins are not applied outside of the game, so the
+ * benchmarks call the mixin's methods on a plain subclass, the same way {@code NarratorManagerMixinTest} does.
+ *
+ * @author Case Walker
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NarrationBenchmark {
+
+    /**
+     * Number of distinct chat lines cycled through, so that the duplicate filter does not short-circuit the path.
+     */
+    private static final int MESSAGE_COUNT = 1024;
+
+    private final BenchmarkNarratorManager manager = new BenchmarkNarratorManager();
+    private final ModeCheckNarratorManager modeManager = new ModeCheckNarratorManager();
+    private final NullNarrator narrator = new NullNarrator();
+    private final CallbackInfo ci = new CallbackInfo("narrateChatMessage", true);
+    private Text[] messages;
+    private Supplier<Text>[] suppliers;
+    private NarrationDispatcher dispatcher;
+    private NarratorMode currentMode;
+    private int next;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() throws ReflectiveOperationException {
+        messages = new Text[MESSAGE_COUNT];
+        suppliers = new Supplier[MESSAGE_COUNT];
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            final Text message = chatLine("Player" + (i % 40), "message number " + i);
+            messages[i] = message;
+            suppliers[i] = () -> message;
+        }
+
+        final NarrateChatConfig config = new NarrateChatConfig();
+        config.globalRatePerSecond = 0;
+        config.senderRatePerSecond = 0;
+        config.speechCharsPerSecond = 0;
+        dispatcher = new NarrationDispatcher(new MinecraftNarrationBackend(narrator), config, () -> "Benchmarker");
+        setField(manager, "narrator", narrator);
+        setField(manager, "narrationDispatcher", dispatcher);
+        setField(modeManager, "narrationDispatcher", dispatcher);
+        currentMode = NarratorMode.CHAT;
+    }
+
+    /**
+     * The cached check performed with {@link NarratorManagerMixin#narrationRouting()} on every narration.
+     */
+    @Benchmark
+    public boolean modeCheck() {
+        return (modeManager.narrationRouting() & NarrationRoute.CHAT.bit()) != 0;
+    }
+
+    /**
+     * Baseline: resolving the ALL_CHAT mode and comparing on every narration, as before the mode was cached.
+     */
+    @Benchmark
+    public boolean modeCheckUncached() {
+        return currentMode.equals(NarratorMode.byId(Util.ALL_CHAT_ID));
+    }
+
+    /**
+     * Baseline: flattening a realistic nested chat line the way vanilla does.
+     */
+    @Benchmark
+    public String flattenGetString() {
+        return nextMessage().getString();
+    }
+
+    /**
+     * Flattening a nested chat line with {@link NarrationText}, including formatting code and URL stripping.
+     */
+    @Benchmark
+    public String flattenNarrationText() {
+        return NarrationText.flatten(nextMessage());
+    }
+
+    /**
+     * Hashing a nested chat line from the reused buffer, which is all the client thread needs for its checks.
+     */
+    @Benchmark
+    public long hashFromBuffer() {
+        return Util.hash(NarrationText.flattenToBuffer(nextMessage()));
+    }
+
+    /**
+     * Client-thread cost of a chat line in ALL_CHAT mode: mixin entry, filters, flood control and queueing.
+     */
+    @Benchmark
+    public boolean mixinDispatch(final EmptyLanes emptyLanes) {
+        manager.allChat = true;
+        manager.onNarrateChatMessage(nextSupplier(), ci);
+        return ci.isCancelled();
+    }
+
+    /**
+     * Cost of a chat line when the mod is installed but ALL_CHAT mode is not selected.
+     */
+    @Benchmark
+    public boolean mixinDispatchOtherMode() {
+        manager.allChat = false;
+        manager.onNarrateChatMessage(nextSupplier(), ci);
+        return ci.isCancelled();
+    }
+
+    /**
+     * End to end: a chat line goes through the mixin and is spoken to the stub narrator on the same thread.
+     */
+    @Benchmark
+    public void endToEnd(final Blackhole blackhole) {
+        manager.allChat = true;
+        manager.onNarrateChatMessage(nextSupplier(), ci);
+        blackhole.consume(dispatcher.drain());
+    }
+
+    private Text nextMessage() {
+        return messages[next++ & (MESSAGE_COUNT - 1)];
+    }
+
+    private Supplier<Text> nextSupplier() {
+        return suppliers[next++ & (MESSAGE_COUNT - 1)];
+    }
+
+    /**
+     * Build a chat line shaped like a decorated server message, with a styled rank prefix, name and body.
+     */
+    private static Text chatLine(final String sender, final String body) {
+        final MutableText line = Text.literal("[").formatted(Formatting.GRAY)
+                .append(Text.literal("VIP").formatted(Formatting.GOLD))
+                .append(Text.literal("] ").formatted(Formatting.GRAY))
+                .append(Text.literal(sender).formatted(Formatting.AQUA))
+                .append(Text.literal(": "));
+        return line.append(Text.literal(body).append(Text.literal(" see https://example.com/page")));
+    }
+
+    private static void setField(final NarratorManagerMixin target, final String name, final Object value)
+            throws ReflectiveOperationException {
+        final Field field = NarratorManagerMixin.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    /**
+     * Empties the lanes before each invocation of {@link #mixinDispatch}, outside of the measured time. No worker runs
+     * in the benchmark, so the lanes would otherwise fill up within the first few thousand invocations and the rest
+     * would measure the overflow path of a full lane instead of queueing.
+     */
+    @State(Scope.Thread)
+    public static class EmptyLanes {
+        @Setup(Level.Invocation)
+        public void drain(final NarrationBenchmark benchmark) {
+            benchmark.dispatcher.drain();
+        }
+    }
+
+    /**
+     * Concrete implementation of the {@link NarratorManagerMixin} abstract class with a switchable mode.
+     */
+    private static class BenchmarkNarratorManager extends NarratorManagerMixin {
+        private boolean allChat;
+
+        public void debugPrintMessage(final String message) {}
+
+        int narrationRouting() {
+            return allChat ? NarrationRoute.ALL : 0;
+        }
+    }
+
+    /**
+     * Concrete implementation of the {@link NarratorManagerMixin} abstract class which keeps the real mode cache.
+     */
+    private static class ModeCheckNarratorManager extends NarratorManagerMixin {
+        public void debugPrintMessage(final String message) {}
+
+        NarratorMode resolveNarratorMode() {
+            return NarratorMode.CHAT;
+        }
+    }
+
+    /**
+     * Narrator which speaks nothing.
+     */
+    private static class NullNarrator implements Narrator {
+        public void say(final String msg, final boolean interrupt) {}
+        public void clear() {}
+        public boolean active() { return true; }
+        public void destroy() {}
+    }
+}
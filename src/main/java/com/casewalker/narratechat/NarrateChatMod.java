@@ -23,9 +23,31 @@
  */
 package com.casewalker.narratechat;
 
+import com.casewalker.narratechat.command.NarrateChatCommands;
+import com.casewalker.narratechat.config.NarrateChatConfig;
+import com.casewalker.narratechat.config.ServerProfiles;
+import com.casewalker.narratechat.interfaces.ForcedNarratorManager;
+import com.casewalker.narratechat.metrics.NarrationMetrics;
+import com.casewalker.narratechat.metrics.StartupTimings;
+import com.casewalker.narratechat.narration.NarrationHistory;
+import com.casewalker.narratechat.narration.NarrationModes;
+import com.casewalker.narratechat.util.LazyInit;
 import net.fabricmc.api.ModInitializer;
+import net.fabricmc.fabric.api.client.command.v2.ClientCommandRegistrationCallback;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientLifecycleEvents;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
+import net.fabricmc.fabric.api.client.keybinding.v1.KeyBindingHelper;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayConnectionEvents;
+import net.fabricmc.loader.api.FabricLoader;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.network.ServerInfo;
+import net.minecraft.client.option.KeyBinding;
+import net.minecraft.client.util.InputUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.lwjgl.glfw.GLFW;
+
+import java.nio.file.Path;
 
 /**
  * Mod Initializer class for the "Narrate Chat" Mod.
@@ -38,8 +60,101 @@ public class NarrateChatMod implements ModInitializer {
 
     public static final Logger LOGGER = LogManager.getLogger(MOD_NAME);
 
+    /**
+     * Metrics describing what the mod does with each message, see <code>/narratechat stats</code>.
+     */
+    public static final NarrationMetrics METRICS = new NarrationMetrics();
+
+    /**
+     * Recently narrated messages, see <code>/narratechat history</code> and the replay keybinds.
+     */
+    public static final NarrationHistory HISTORY = new NarrationHistory();
+
+    /**
+     * How long the mod took to start, see <code>/narratechat startup</code>.
+     */
+    public static final StartupTimings STARTUP = new StartupTimings();
+
+    private static final String KEY_CATEGORY = "key.categories.narratechatmod";
+
     @Override
     public void onInitialize() {
         LOGGER.info("Hello Fabric world, from the Narrate Chat Mod!");
+        final Path configDir = FabricLoader.getInstance().getConfigDir();
+        // The config is needed right away, since it defines the narrator modes added to the game
+        final NarrateChatConfig config = STARTUP.time("config", () -> NarrateChatConfig.load(configDir));
+        final long start = System.nanoTime();
+        METRICS.configure(config.metricsEnabled, config.metricsLogIntervalSeconds);
+        HISTORY.configure(config.historySize);
+        NarrationModes.configure(config);
+
+        // Everything else which takes time is built in the background once the game has started
+        final ServerProfiles serverProfiles = new ServerProfiles(configDir, NarrateChatMod::applyConfig);
+        final LazyInit<ServerProfiles> configWatcher = new LazyInit<>("config file watcher", () -> {
+            serverProfiles.watch();
+            return serverProfiles;
+        }, watching -> {}, STARTUP);
+        ClientLifecycleEvents.CLIENT_STARTED.register(client -> {
+            if (client.getNarratorManager() instanceof ForcedNarratorManager narratorManager) {
+                narratorManager.initializeInBackground();
+            }
+            configWatcher.start();
+        });
+        ClientPlayConnectionEvents.JOIN.register((handler, sender, client) -> {
+            final ServerInfo server = client.getCurrentServerEntry();
+            serverProfiles.join(server == null ? null : server.address);
+        });
+        ClientPlayConnectionEvents.DISCONNECT.register((handler, client) -> {
+            if (client.getNarratorManager() instanceof ForcedNarratorManager narratorManager) {
+                narratorManager.stopNarration();
+            }
+            serverProfiles.leave();
+        });
+
+        ClientCommandRegistrationCallback.EVENT.register(
+                (dispatcher, registryAccess) -> NarrateChatCommands.register(dispatcher));
+        final KeyBinding replayLast = KeyBindingHelper.registerKeyBinding(new KeyBinding(
+                "key.narratechatmod.replay_last", InputUtil.Type.KEYSYM, GLFW.GLFW_KEY_UNKNOWN, KEY_CATEGORY));
+        final KeyBinding replayRecent = KeyBindingHelper.registerKeyBinding(new KeyBinding(
+                "key.narratechatmod.replay_recent", InputUtil.Type.KEYSYM, GLFW.GLFW_KEY_UNKNOWN, KEY_CATEGORY));
+        ClientTickEvents.END_CLIENT_TICK.register(client -> {
+            METRICS.logPeriodically();
+            while (replayLast.wasPressed()) {
+                replayHistory(client, 1);
+            }
+            while (replayRecent.wasPressed()) {
+                replayHistory(client, NarrateChatConfig.get().historyReplayCount);
+            }
+        });
+        STARTUP.record("registration", System.nanoTime() - start, false);
+    }
+
+    /**
+     * Narrate the most recent messages of the history again.
+     *
+     * @param client The Minecraft client
+     * @param count Number of messages to narrate again
+     * @return The number of messages which will be narrated
+     */
+    public static int replayHistory(final MinecraftClient client, final int count) {
+        if (client != null && client.getNarratorManager() instanceof ForcedNarratorManager narratorManager) {
+            return narratorManager.replayHistory(count);
+        }
+        return 0;
+    }
+
+    /**
+     * Switch the running mod over to a new effective configuration.
+     *
+     * @param config The new configuration
+     */
+    private static void applyConfig(final NarrateChatConfig config) {
+        METRICS.configure(config.metricsEnabled, config.metricsLogIntervalSeconds);
+        HISTORY.configure(config.historySize);
+        NarrationModes.configure(config);
+        final MinecraftClient client = MinecraftClient.getInstance();
+        if (client != null && client.getNarratorManager() instanceof ForcedNarratorManager narratorManager) {
+            narratorManager.applyConfig(config);
+        }
     }
 }
@@ -0,0 +1,356 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.audio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Cache of synthesized speech, keyed by normalized message text, which lives in a memory-mapped file so that it stays
+ * off of the Java heap and survives restarts.
+ * <p>
+ * The file is a ring of records. New clips are appended at the write head, which overwrites the oldest records once
+ * the ring has wrapped around, so the cache never grows beyond its size in bytes. A clip found in the older half of the
+ * ring is appended again, which keeps frequently repeated messages (death messages, join notices, server broadcasts)
+ * alive while clips which are not used again are evicted, approximating LRU eviction without any bookkeeping on disk.
+ * <p>
+ * File layout, all values big-endian and every record aligned to 8 bytes:
+ * <pre>
+ * header: int magic, int version, long voice, int head, int reserved
+ * clip:   int CLIP, int length, long sequence, int sampleRate, short channels, short keyLength, int pcmLength,
+ *         int reserved, byte[] key (UTF-8), byte[] pcm, padding
+ * skip:   int SKIP, int length, padding
+ * </pre>
+ * Skip records cover the remains of partially overwritten records and the unused end of the ring, so that the records
+ * can be read back in order when the file is opened again. The cache is not thread-safe.
+ *
+ * @author Case Walker
+ */
+public class AudioCache implements Closeable {
+
+    private static final int FILE_MAGIC = 0x4E434143;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 24;
+    private static final int HEAD_OFFSET = 16;
+
+    private static final int CLIP = 0x434C4950;
+    private static final int SKIP = 0x534B4950;
+    private static final int CLIP_HEADER_BYTES = 32;
+    private static final int SKIP_BYTES = 8;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+
+    /**
+     * Live clips by key.
+     */
+    private final Map<String, Clip> clips = new HashMap<>();
+
+    /**
+     * All records, live or not, by offset. Needed to cover partially overwritten records with skips.
+     */
+    private final NavigableMap<Integer, Record> records = new TreeMap<>();
+
+    private int head;
+    private long sequence;
+
+    /**
+     * Open the cache file, creating it or starting over if it was written with another size or voice.
+     *
+     * @param file Cache file
+     * @param capacity Size of the file in bytes, rounded down to a multiple of 8
+     * @param voice Hash identifying the engine and voice which synthesize the clips
+     * @throws IOException If the file cannot be opened or mapped
+     */
+    public AudioCache(final Path file, final int capacity, final long voice) throws IOException {
+        this.capacity = capacity & ~7;
+        if (this.capacity < HEADER_BYTES + CLIP_HEADER_BYTES) {
+            throw new IllegalArgumentException("Audio cache is too small: " + capacity + " bytes");
+        }
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        this.channel = FileChannel.open(file,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        final boolean resized = channel.size() != this.capacity;
+        if (resized) {
+            channel.truncate(0);
+        }
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, this.capacity);
+
+        if (resized || buffer.getInt(0) != FILE_MAGIC || buffer.getInt(4) != VERSION || buffer.getLong(8) != voice
+                || !readRecords()) {
+            reset(voice);
+        }
+    }
+
+    /**
+     * Normalize message text into a cache key, so that differences in case and spacing share a clip.
+     *
+     * @param text Message text
+     * @return The cache key
+     */
+    public static String normalize(final String text) {
+        final StringBuilder key = new StringBuilder(text.length());
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = key.length() > 0;
+            } else {
+                if (space) {
+                    key.append(' ');
+                    space = false;
+                }
+                key.append(Character.toLowerCase(c));
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Look up the clip for a message.
+     *
+     * @param text Message text
+     * @return The clip, or null if it is not cached
+     */
+    public AudioClip get(final String text) {
+        final String key = normalize(text);
+        final Clip clip = clips.get(key);
+        if (clip == null) {
+            return null;
+        }
+        final byte[] pcm = new byte[clip.pcmLength];
+        buffer.get(clip.offset + CLIP_HEADER_BYTES + clip.keyLength, pcm);
+        final AudioClip audio = new AudioClip(clip.sampleRate, clip.channels, pcm);
+        if (distanceBehindHead(clip.offset) > (capacity - HEADER_BYTES) / 2) {
+            write(key, audio);
+        }
+        return audio;
+    }
+
+    /**
+     * Cache the clip for a message, evicting the oldest clips to make room.
+     *
+     * @param text Message text
+     * @param audio Synthesized clip
+     * @return False if the clip is too large to be cached
+     */
+    public boolean put(final String text, final AudioClip audio) {
+        return write(normalize(text), audio);
+    }
+
+    /**
+     * @return The number of cached clips
+     */
+    public int size() {
+        return clips.size();
+    }
+
+    /**
+     * Write the cache to disk and close the file.
+     */
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    private boolean write(final String key, final AudioClip audio) {
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        final long unaligned = (long) CLIP_HEADER_BYTES + keyBytes.length + audio.pcm().length;
+        if (keyBytes.length > Short.MAX_VALUE || unaligned > (capacity - HEADER_BYTES) / 2) {
+            return false;
+        }
+        final int length = ((int) unaligned + 7) & ~7;
+
+        if (head + length > capacity) {
+            overwrite(head, capacity);
+            if (capacity > head) {
+                writeSkip(head, capacity - head);
+            }
+            head = HEADER_BYTES;
+        }
+        final int end = overwrite(head, head + length);
+
+        buffer.putInt(head + 4, length);
+        buffer.putLong(head + 8, sequence++);
+        buffer.putInt(head + 16, audio.sampleRate());
+        buffer.putShort(head + 20, (short) audio.channels());
+        buffer.putShort(head + 22, (short) keyBytes.length);
+        buffer.putInt(head + 24, audio.pcm().length);
+        buffer.put(head + CLIP_HEADER_BYTES, keyBytes);
+        buffer.put(head + CLIP_HEADER_BYTES + keyBytes.length, audio.pcm());
+        buffer.putInt(head, CLIP);
+        records.put(head, new Record(length, key));
+        clips.put(key, new Clip(head, audio.sampleRate(), audio.channels(), keyBytes.length,
+                audio.pcm().length));
+
+        if (end > head + length) {
+            writeSkip(head + length, end - head - length);
+        }
+        head += length;
+        buffer.putInt(HEAD_OFFSET, head);
+        return true;
+    }
+
+    /**
+     * Forget every record which starts in the given range.
+     *
+     * @return The end of the last forgotten record, or the end of the range
+     */
+    private int overwrite(final int from, final int to) {
+        int end = to;
+        final Iterator<Map.Entry<Integer, Record>> iterator = records.subMap(from, to).entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<Integer, Record> entry = iterator.next();
+            final Record record = entry.getValue();
+            end = Math.max(end, entry.getKey() + record.length);
+            if (record.key != null) {
+                final Clip clip = clips.get(record.key);
+                if (clip != null && clip.offset == entry.getKey()) {
+                    clips.remove(record.key);
+                }
+            }
+            iterator.remove();
+        }
+        return end;
+    }
+
+    private void writeSkip(final int offset, final int length) {
+        buffer.putInt(offset + 4, length);
+        buffer.putInt(offset, SKIP);
+        records.put(offset, new Record(length, null));
+    }
+
+    /**
+     * @return How far the ring has moved on since the record at the given offset was written
+     */
+    private int distanceBehindHead(final int offset) {
+        final int ring = capacity - HEADER_BYTES;
+        return Math.floorMod(head - offset, ring);
+    }
+
+    /**
+     * Read back the records of an existing file.
+     *
+     * @return False if the file is corrupt
+     */
+    private boolean readRecords() {
+        head = buffer.getInt(HEAD_OFFSET);
+        if (head < HEADER_BYTES || head > capacity || (head & 7) != 0) {
+            return false;
+        }
+        final Map<String, Long> sequences = new HashMap<>();
+        int offset = HEADER_BYTES;
+        while (offset + SKIP_BYTES <= capacity) {
+            final int magic = buffer.getInt(offset);
+            final int length = buffer.getInt(offset + 4);
+            if ((magic != CLIP && magic != SKIP) || length < SKIP_BYTES || (length & 7) != 0
+                    || length > capacity - offset) {
+                break;
+            }
+            if (magic == CLIP) {
+                final int keyLength = buffer.getShort(offset + 22);
+                final int pcmLength = buffer.getInt(offset + 24);
+                if (keyLength < 0 || pcmLength < 0 || CLIP_HEADER_BYTES + keyLength + pcmLength > length) {
+                    return false;
+                }
+                final long clipSequence = buffer.getLong(offset + 8);
+                final byte[] keyBytes = new byte[keyLength];
+                buffer.get(offset + CLIP_HEADER_BYTES, keyBytes);
+                final String key = new String(keyBytes, StandardCharsets.UTF_8);
+                final Long previous = sequences.get(key);
+                if (previous == null || previous < clipSequence) {
+                    sequences.put(key, clipSequence);
+                    clips.put(key, new Clip(offset, buffer.getInt(offset + 16), buffer.getShort(offset + 20),
+                            keyLength, pcmLength));
+                }
+                sequence = Math.max(sequence, clipSequence + 1);
+                records.put(offset, new Record(length, key));
+            } else {
+                records.put(offset, new Record(length, null));
+            }
+            offset += length;
+        }
+        return true;
+    }
+
+    private void reset(final long voice) {
+        clips.clear();
+        records.clear();
+        sequence = 0;
+        head = HEADER_BYTES;
+        buffer.putInt(0, FILE_MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putLong(8, voice);
+        buffer.putInt(HEAD_OFFSET, head);
+        buffer.putInt(HEADER_BYTES, 0);
+    }
+
+    /**
+     * A record in the file, with the key of the clip it holds, or null for skips.
+     */
+    private static final class Record {
+        private final int length;
+        private final String key;
+
+        private Record(final int length, final String key) {
+            this.length = length;
+            this.key = key;
+        }
+    }
+
+    /**
+     * Location of a live clip in the file.
+     */
+    private static final class Clip {
+        private final int offset;
+        private final int sampleRate;
+        private final int channels;
+        private final int keyLength;
+        private final int pcmLength;
+
+        private Clip(final int offset, final int sampleRate, final int channels, final int keyLength,
+                     final int pcmLength) {
+            this.offset = offset;
+            this.sampleRate = sampleRate;
+            this.channels = channels;
+            this.keyLength = keyLength;
+            this.pcmLength = pcmLength;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.audio;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.List;
+
+/**
+ * Synthesized speech as signed 16-bit little-endian PCM samples.
+ *
+ * @author Case Walker
+ */
+public final class AudioClip {
+
+    private final int sampleRate;
+    private final int channels;
+    private final byte[] pcm;
+
+    /**
+     * @param sampleRate Samples per second
+     * @param channels Number of interleaved channels
+     * @param pcm Signed 16-bit little-endian samples
+     */
+    public AudioClip(final int sampleRate, final int channels, final byte[] pcm) {
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.pcm = pcm;
+    }
+
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    public int channels() {
+        return channels;
+    }
+
+    public byte[] pcm() {
+        return pcm;
+    }
+
+    /**
+     * @param rate Playback speed relative to normal
+     * @return The format for opening an audio line which plays the samples at the given speed
+     */
+    public AudioFormat format(final float rate) {
+        return new AudioFormat(sampleRate * rate, 16, channels, true, false);
+    }
+
+    /**
+     * Join clips which were synthesized separately, e.g. the chunks of a long narration, so that they can be cached as
+     * one.
+     *
+     * @param clips Clips to join, in order
+     * @return One clip playing the clips back to back, or null if there are none or their formats differ
+     */
+    public static AudioClip join(final List<AudioClip> clips) {
+        if (clips.isEmpty()) {
+            return null;
+        }
+        final AudioClip first = clips.get(0);
+        int length = 0;
+        for (AudioClip clip : clips) {
+            if (clip.sampleRate != first.sampleRate || clip.channels != first.channels) {
+                return null;
+            }
+            length += clip.pcm.length;
+        }
+        final byte[] pcm = new byte[length];
+        int offset = 0;
+        for (AudioClip clip : clips) {
+            System.arraycopy(clip.pcm, 0, pcm, offset, clip.pcm.length);
+            offset += clip.pcm.length;
+        }
+        return new AudioClip(first.sampleRate, first.channels, pcm);
+    }
+}
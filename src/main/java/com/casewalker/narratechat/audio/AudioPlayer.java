@@ -0,0 +1,213 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.audio;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.casewalker.narratechat.NarrateChatMod.LOGGER;
+import static com.casewalker.narratechat.NarrateChatMod.METRICS;
+
+/**
+ * Plays {@link AudioClip}s one after another on a daemon thread, so that callers never wait for playback.
+ * <p>
+ * The audio line is double-buffered: its buffer holds two short periods of audio, and the clip is written one period at
+ * a time, so one period plays while the next is written. Clips of the same format follow each other on the same line
+ * without a gap, which lets a backend queue a long narration chunk by chunk while it synthesizes the rest, and a small
+ * buffer keeps {@link #clear()} quick.
+ *
+ * @author Case Walker
+ */
+public class AudioPlayer {
+
+    private static final String THREAD_NAME = "Narrate Chat Audio";
+
+    /**
+     * Periods of audio per second, so each period is 100 milliseconds long.
+     */
+    private static final int PERIODS_PER_SECOND = 10;
+
+    private final BlockingQueue<Queued> clips = new LinkedBlockingQueue<>();
+
+    /**
+     * Incremented by {@link #clear()}, so that the clip being played stops at the next chunk.
+     */
+    private final AtomicInteger generation = new AtomicInteger();
+
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile SourceDataLine line;
+    private volatile float rate = 1;
+
+    public AudioPlayer() {
+        thread = new Thread(this::run, THREAD_NAME);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Play a clip after those already queued.
+     *
+     * @param clip Clip to play
+     */
+    public void play(final AudioClip clip) {
+        play(clip, 1);
+    }
+
+    /**
+     * Play a clip after those already queued, at a different pitch.
+     *
+     * @param clip Clip to play
+     * @param pitch Pitch relative to normal, which also changes the speed of the clip
+     */
+    public void play(final AudioClip clip, final float pitch) {
+        play(clip, pitch, 0);
+    }
+
+    /**
+     * Play a clip after those already queued, at a different pitch, and record the time to its first audio.
+     *
+     * @param clip Clip to play
+     * @param pitch Pitch relative to normal, which also changes the speed of the clip
+     * @param requestedAt Time the narration the clip starts was requested, from {@link System#nanoTime()}, or zero if
+     * the clip continues a narration
+     */
+    public void play(final AudioClip clip, final float pitch, final long requestedAt) {
+        clips.add(new Queued(clip, pitch, requestedAt));
+    }
+
+    /**
+     * Change the playback speed of the following clips. Speech played faster this way is also higher pitched.
+     *
+     * @param rate Playback speed relative to normal
+     */
+    public void setRate(final float rate) {
+        this.rate = rate;
+    }
+
+    /**
+     * Stop the current clip and drop the queued ones.
+     */
+    public void clear() {
+        generation.incrementAndGet();
+        clips.clear();
+        final SourceDataLine current = line;
+        if (current != null) {
+            current.flush();
+        }
+    }
+
+    /**
+     * Stop playing and release the audio line.
+     */
+    public void close() {
+        running = false;
+        clear();
+        thread.interrupt();
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                final Queued queued = clips.take();
+                final AudioClip clip = queued.clip;
+                final int playing = generation.get();
+                final SourceDataLine output = open(clip.format(rate * queued.pitch));
+                if (output == null) {
+                    continue;
+                }
+                if (queued.requestedAt != 0) {
+                    METRICS.recordFirstAudio(queued.requestedAt, System.nanoTime());
+                }
+                final byte[] pcm = clip.pcm();
+                final int period = periodBytes(output.getFormat());
+                for (int i = 0; i < pcm.length && playing == generation.get(); i += period) {
+                    output.write(pcm, i, Math.min(period, pcm.length - i));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            final SourceDataLine current = line;
+            line = null;
+            if (current != null) {
+                current.close();
+            }
+        }
+    }
+
+    /**
+     * Get a started line for the given format, reusing the current one if its format matches.
+     *
+     * @return The line, or null if no line is available
+     */
+    private SourceDataLine open(final AudioFormat format) {
+        final SourceDataLine current = line;
+        if (current != null && current.getFormat().matches(format)) {
+            return current;
+        }
+        if (current != null) {
+            line = null;
+            current.drain();
+            current.close();
+        }
+        try {
+            final SourceDataLine opened = AudioSystem.getSourceDataLine(format);
+            opened.open(format, 2 * periodBytes(format));
+            opened.start();
+            line = opened;
+            return opened;
+        } catch (LineUnavailableException | IllegalArgumentException e) {
+            LOGGER.error("No audio line available for {}", format, e);
+            return null;
+        }
+    }
+
+    /**
+     * @return The number of bytes of one period of audio in the given format, a whole number of frames
+     */
+    private static int periodBytes(final AudioFormat format) {
+        return Math.max(1, (int) (format.getFrameRate() / PERIODS_PER_SECOND)) * format.getFrameSize();
+    }
+
+    /**
+     * A clip waiting to be played, with its pitch.
+     */
+    private static final class Queued {
+        private final AudioClip clip;
+        private final float pitch;
+        private final long requestedAt;
+
+        private Queued(final AudioClip clip, final float pitch, final long requestedAt) {
+            this.clip = clip;
+            this.pitch = pitch;
+            this.requestedAt = requestedAt;
+        }
+    }
+}
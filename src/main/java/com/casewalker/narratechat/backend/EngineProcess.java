@@ -0,0 +1,206 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.backend;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.casewalker.narratechat.NarrateChatMod.LOGGER;
+
+/**
+ * A long-lived local text-to-speech engine process which reads one line of text at a time from its standard input.
+ * <p>
+ * If the engine dies or cannot be started, further attempts are delayed by {@link #RESTART_DELAY_NANOS} so that a
+ * missing engine does not spawn a process per message. Not thread-safe, the backends using it synchronize, except for
+ * {@link #close()}, which may be called while another thread waits for the engine.
+ *
+ * @author Case Walker
+ */
+class EngineProcess {
+
+    private static final long RESTART_DELAY_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final List<String> command;
+    private final boolean readsOutput;
+
+    private volatile Process process;
+    private volatile Writer input;
+    private volatile BufferedReader output;
+    private long nextStartAt;
+    private volatile boolean closed;
+
+    /**
+     * @param command Command line of the engine
+     * @param readsOutput Whether the engine's standard output is read with {@link #readLine()}, otherwise it is
+     * discarded
+     */
+    EngineProcess(final List<String> command, final boolean readsOutput) {
+        if (command == null || command.isEmpty()) {
+            throw new IllegalArgumentException("The text-to-speech command must not be empty");
+        }
+        this.command = List.copyOf(command);
+        this.readsOutput = readsOutput;
+    }
+
+    /**
+     * Start the engine process if it is not already running.
+     *
+     * @throws IOException If the process cannot be started
+     */
+    void start() throws IOException {
+        if (closed) {
+            throw new IOException("The text-to-speech process was closed");
+        }
+        if (process != null && process.isAlive()) {
+            return;
+        }
+        stop();
+        final Process started = new ProcessBuilder(command)
+                .redirectOutput(readsOutput ? ProcessBuilder.Redirect.PIPE : ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        process = started;
+        input = new BufferedWriter(new OutputStreamWriter(started.getOutputStream(), StandardCharsets.UTF_8));
+        if (readsOutput) {
+            output = new BufferedReader(new InputStreamReader(started.getInputStream(), StandardCharsets.UTF_8));
+        }
+        LOGGER.info("Started text-to-speech process {}", command);
+    }
+
+    /**
+     * Make sure the engine is running, restarting it unless a recent attempt failed.
+     *
+     * @return Whether the engine is running
+     */
+    boolean ensureStarted() {
+        if (process != null && process.isAlive()) {
+            return true;
+        }
+        if (closed || System.nanoTime() - nextStartAt < 0) {
+            return false;
+        }
+        try {
+            start();
+            return true;
+        } catch (IOException e) {
+            LOGGER.error("Could not start text-to-speech process {}", command, e);
+            fail();
+            return false;
+        }
+    }
+
+    /**
+     * Write text to the engine as a single line, starting the engine if needed.
+     *
+     * @param text Text to write, line breaks are replaced by spaces
+     * @return Whether the line was written
+     */
+    boolean writeLine(final String text) {
+        if (!ensureStarted()) {
+            return false;
+        }
+        final Writer writer = input;
+        if (writer == null) {
+            return false;
+        }
+        try {
+            for (int i = 0; i < text.length(); i++) {
+                final char c = text.charAt(i);
+                writer.write(c == '\n' || c == '\r' ? ' ' : c);
+            }
+            writer.write('\n');
+            writer.flush();
+            return true;
+        } catch (IOException e) {
+            LOGGER.warn("Text-to-speech process stopped accepting input", e);
+            fail();
+            return false;
+        }
+    }
+
+    /**
+     * Read a line of the engine's standard output, blocking until it is available.
+     *
+     * @return The line, or null if the engine is not running or closed its output
+     */
+    String readLine() {
+        final BufferedReader reader = output;
+        if (reader == null) {
+            return null;
+        }
+        try {
+            final String line = reader.readLine();
+            if (line == null) {
+                fail();
+            }
+            return line;
+        } catch (IOException e) {
+            LOGGER.warn("Could not read from text-to-speech process", e);
+            fail();
+            return null;
+        }
+    }
+
+    /**
+     * Kill the engine, including any processes it started, such as the audio player at the end of a shell pipeline.
+     */
+    void stop() {
+        final Process stopped = process;
+        process = null;
+        input = null;
+        output = null;
+        if (stopped != null) {
+            stopped.descendants().forEach(ProcessHandle::destroy);
+            stopped.destroy();
+        }
+    }
+
+    /**
+     * Kill the engine for good, so that it is not started again. A thread waiting for a line from the engine gets the
+     * end of its output.
+     */
+    void close() {
+        closed = true;
+        stop();
+    }
+
+    /**
+     * @return The engine's command line
+     */
+    List<String> command() {
+        return command;
+    }
+
+    private void fail() {
+        stop();
+        nextStartAt = System.nanoTime() + RESTART_DELAY_NANOS;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.backend;
+
+import com.casewalker.narratechat.config.NarrateChatConfig;
+import com.mojang.text2speech.Narrator;
+
+/**
+ * Default {@link NarrationBackend}, which speaks through Minecraft's own {@link Narrator}.
+ *
+ * @author Case Walker
+ */
+public class MinecraftNarrationBackend implements NarrationBackend {
+
+    public static final String ID = "minecraft";
+
+    /**
+     * Provider of this backend.
+     */
+    public static final NarrationBackendProvider PROVIDER = new NarrationBackendProvider() {
+        @Override
+        public String id() {
+            return ID;
+        }
+
+        @Override
+        public NarrationBackend create(final NarrateChatConfig config, final Narrator minecraftNarrator) {
+            return new MinecraftNarrationBackend(minecraftNarrator);
+        }
+    };
+
+    private final Narrator narrator;
+
+    /**
+     * @param narrator Minecraft's narrator, which stays owned by the narrator manager
+     */
+    public MinecraftNarrationBackend(final Narrator narrator) {
+        this.narrator = narrator;
+    }
+
+    @Override
+    public void say(final String text, final boolean interrupt) {
+        narrator.say(text, interrupt);
+    }
+
+    @Override
+    public void clear() {
+        narrator.clear();
+    }
+
+    @Override
+    public boolean active() {
+        return narrator.active();
+    }
+
+    /**
+     * Does nothing, the narrator is destroyed by Minecraft's narrator manager.
+     */
+    @Override
+    public void close() {}
+}
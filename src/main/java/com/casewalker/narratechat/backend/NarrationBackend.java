@@ -0,0 +1,105 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.backend;
+
+/**
+ * Text-to-speech engine which speaks the narrations of the "Narrate Chat" Mod. The backend is chosen with the
+ * <code>narrationBackend</code> setting, see {@link NarrationBackends}.
+ * <p>
+ * All methods besides {@link #close()} are only called from the narration worker thread, so implementations may block
+ * briefly, but should not wait for speech to finish.
+ *
+ * @author Case Walker
+ */
+public interface NarrationBackend {
+
+    /**
+     * Speak the given text, after anything which is already being spoken unless interrupting.
+     *
+     * @param text Text to speak, a single line
+     * @param interrupt Whether to stop the current speech first
+     */
+    void say(String text, boolean interrupt);
+
+    /**
+     * Speak the given text, with a hint whether it is likely to repeat, like system and game messages. Backends which
+     * synthesize audio themselves may cache such text.
+     *
+     * @param text Text to speak, a single line
+     * @param interrupt Whether to stop the current speech first
+     * @param cacheable Whether the text is likely to be spoken again
+     */
+    default void say(final String text, final boolean interrupt, final boolean cacheable) {
+        say(text, interrupt);
+    }
+
+    /**
+     * Change the speaking rate, if the engine supports it.
+     *
+     * @param rate Speaking rate relative to normal, e.g. 1.5 for half again as fast
+     * @return Whether the engine now speaks at the given rate
+     */
+    default boolean setRate(final float rate) {
+        return rate == 1;
+    }
+
+    /**
+     * @return Whether the engine can speak with several voices, see {@link #setVoice(int, int)}
+     */
+    default boolean supportsVoices() {
+        return false;
+    }
+
+    /**
+     * Switch the voice the following text is spoken with, so that listeners can tell players apart. Only called if
+     * {@link #supportsVoices()} is true.
+     *
+     * @param voice Voice to use, 0 for the default voice and 1 to <code>voices</code> for the players' voices
+     * @param voices Number of players' voices
+     */
+    default void setVoice(final int voice, final int voices) {}
+
+    /**
+     * Switch to a voice of the language the following text is written in, if the engine has one. Only called when the
+     * language differs from the previous one.
+     *
+     * @param language Language code, e.g. "de", or null for the default voice
+     */
+    default void setLanguage(final String language) {}
+
+    /**
+     * Stop the current speech and drop anything the engine still has queued.
+     */
+    void clear();
+
+    /**
+     * @return Whether the engine is available to speak
+     */
+    boolean active();
+
+    /**
+     * Release the engine's resources. The backend is not used again afterwards.
+     */
+    void close();
+}
@@ -0,0 +1,56 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.backend;
+
+import com.casewalker.narratechat.config.NarrateChatConfig;
+import com.mojang.text2speech.Narrator;
+
+/**
+ * Factory for a {@link NarrationBackend}. Besides the built-in providers, other mods can add backends by declaring an
+ * implementation of this interface under the {@link #ENTRYPOINT} entrypoint in their <code>fabric.mod.json</code>.
+ *
+ * @author Case Walker
+ */
+public interface NarrationBackendProvider {
+
+    /**
+     * Name of the Fabric entrypoint under which providers are discovered.
+     */
+    String ENTRYPOINT = "narratechatmod:backend";
+
+    /**
+     * @return The name users give in the <code>narrationBackend</code> setting to choose this backend
+     */
+    String id();
+
+    /**
+     * Create the backend.
+     *
+     * @param config Config of the mod
+     * @param minecraftNarrator Minecraft's own narrator, for backends which wrap or fall back to it
+     * @return A new backend
+     * @throws Exception If the backend cannot be created, in which case Minecraft's narrator is used instead
+     */
+    NarrationBackend create(NarrateChatConfig config, Narrator minecraftNarrator) throws Exception;
+}
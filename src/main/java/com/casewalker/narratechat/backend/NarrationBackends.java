@@ -0,0 +1,115 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.backend;
+
+import com.casewalker.narratechat.config.NarrateChatConfig;
+import com.google.common.annotations.VisibleForTesting;
+import com.mojang.text2speech.Narrator;
+import net.fabricmc.loader.api.FabricLoader;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.casewalker.narratechat.NarrateChatMod.LOGGER;
+
+/**
+ * Chooses the {@link NarrationBackend} named by the <code>narrationBackend</code> setting among the built-in backends
+ * and those other mods provide through the {@link NarrationBackendProvider#ENTRYPOINT} entrypoint. Minecraft's own
+ * narrator is used when the setting names an unknown backend or the chosen one fails to start.
+ *
+ * @author Case Walker
+ */
+public class NarrationBackends {
+
+    private NarrationBackends() {}
+
+    /**
+     * Create the configured backend.
+     *
+     * @param config Config naming the backend
+     * @param minecraftNarrator Minecraft's own narrator
+     * @return The configured backend, or one wrapping Minecraft's narrator
+     */
+    public static NarrationBackend create(final NarrateChatConfig config, final Narrator minecraftNarrator) {
+        final List<NarrationBackendProvider> providers = new ArrayList<>();
+        providers.add(MinecraftNarrationBackend.PROVIDER);
+        providers.add(ProcessNarrationBackend.PROVIDER);
+        providers.add(SynthesizingNarrationBackend.PROVIDER);
+        try {
+            providers.addAll(FabricLoader.getInstance()
+                    .getEntrypoints(NarrationBackendProvider.ENTRYPOINT, NarrationBackendProvider.class));
+        } catch (RuntimeException e) {
+            LOGGER.error("Could not load narration backends provided by other mods", e);
+        }
+        return create(config, minecraftNarrator, providers);
+    }
+
+    /**
+     * Check whether two configs would create the same backend, so a reloaded config only restarts the backend when one
+     * of its settings changed.
+     *
+     * @param a A config
+     * @param b Another config
+     * @return Whether the backend settings of both configs are equal
+     */
+    public static boolean sameBackend(final NarrateChatConfig a, final NarrateChatConfig b) {
+        return a.narrationBackend.equalsIgnoreCase(b.narrationBackend)
+                && a.processBackendCommand.equals(b.processBackendCommand)
+                && a.synthesisBackendCommand.equals(b.synthesisBackendCommand)
+                && a.languageBackendCommands.equals(b.languageBackendCommands)
+                && a.audioCacheMegabytes == b.audioCacheMegabytes
+                && a.streamingChunkChars == b.streamingChunkChars
+                && a.speakerPitchSpread == b.speakerPitchSpread;
+    }
+
+    /**
+     * Create the configured backend from the given providers.
+     *
+     * @param config Config naming the backend
+     * @param minecraftNarrator Minecraft's own narrator
+     * @param providers Available providers
+     * @return The configured backend, or one wrapping Minecraft's narrator
+     */
+    @VisibleForTesting
+    static NarrationBackend create(
+            final NarrateChatConfig config,
+            final Narrator minecraftNarrator,
+            final List<NarrationBackendProvider> providers) {
+        for (NarrationBackendProvider provider : providers) {
+            if (!provider.id().equalsIgnoreCase(config.narrationBackend)) {
+                continue;
+            }
+            try {
+                final NarrationBackend backend = provider.create(config, minecraftNarrator);
+                LOGGER.info("Using narration backend '{}'", provider.id());
+                return backend;
+            } catch (Exception e) {
+                LOGGER.error("Narration backend '{}' failed to start, using Minecraft's narrator", provider.id(), e);
+                return new MinecraftNarrationBackend(minecraftNarrator);
+            }
+        }
+        LOGGER.warn("Unknown narration backend '{}', using Minecraft's narrator", config.narrationBackend);
+        return new MinecraftNarrationBackend(minecraftNarrator);
+    }
+}
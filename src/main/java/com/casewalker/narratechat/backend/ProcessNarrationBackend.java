@@ -0,0 +1,157 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.backend;
+
+import com.casewalker.narratechat.config.NarrateChatConfig;
+import com.mojang.text2speech.Narrator;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link NarrationBackend} which streams narrations to a local text-to-speech engine, such as espeak-ng or piper,
+ * running as a long-lived child process. Each narration is written to the engine's standard input as one line, so no
+ * process is spawned per message.
+ * <p>
+ * Engines reading standard input cannot be told to stop mid-sentence, so interrupting or clearing kills the process,
+ * and the next narration starts a new one.
+ * <p>
+ * Long narrations are written as one line per sentence or clause (see {@link SpeechChunker}). An engine which
+ * synthesizes line by line, like piper piped into an audio player, then starts speaking after the first sentence
+ * instead of after the whole narration.
+ * <p>
+ * Chat in a language with its own command line is written to a separate engine for that language, which is started the
+ * first time it is needed.
+ *
+ * @author Case Walker
+ */
+public class ProcessNarrationBackend implements NarrationBackend {
+
+    public static final String ID = "process";
+
+    /**
+     * Provider of this backend, which uses the <code>processBackendCommand</code>, <code>languageBackendCommands</code>
+     * and <code>streamingChunkChars</code> settings.
+     */
+    public static final NarrationBackendProvider PROVIDER = new NarrationBackendProvider() {
+        @Override
+        public String id() {
+            return ID;
+        }
+
+        @Override
+        public NarrationBackend create(final NarrateChatConfig config, final Narrator minecraftNarrator)
+                throws IOException {
+            final ProcessNarrationBackend backend = new ProcessNarrationBackend(
+                    config.processBackendCommand, config.languageBackendCommands, config.streamingChunkChars);
+            backend.start();
+            return backend;
+        }
+    };
+
+    private final EngineProcess defaultEngine;
+    private final Map<String, EngineProcess> languageEngines = new HashMap<>();
+    private final int chunkChars;
+
+    /**
+     * Engine speaking the current language.
+     */
+    private EngineProcess engine;
+
+    /**
+     * Create a backend which is started by the first narration, or by {@link #start()}.
+     *
+     * @param command Command line of the engine, which must speak each line it reads from standard input
+     */
+    public ProcessNarrationBackend(final List<String> command) {
+        this(command, Map.of(), 0);
+    }
+
+    /**
+     * Create a backend with engines for some languages, each started by the first narration in its language, which
+     * writes long narrations chunk by chunk.
+     *
+     * @param command Command line of the default engine, which must speak each line it reads from standard input
+     * @param languageCommands Command lines of the engines for some languages, by language code
+     * @param chunkChars Longest line written to an engine, zero or less to write each narration as one line
+     */
+    public ProcessNarrationBackend(
+            final List<String> command,
+            final Map<String, List<String>> languageCommands,
+            final int chunkChars) {
+        this.defaultEngine = new EngineProcess(command, false);
+        this.chunkChars = chunkChars;
+        this.engine = defaultEngine;
+        languageCommands.forEach((language, languageCommand) ->
+                languageEngines.put(language, new EngineProcess(languageCommand, false)));
+    }
+
+    /**
+     * Start the engine process if it is not already running.
+     *
+     * @throws IOException If the process cannot be started
+     */
+    public synchronized void start() throws IOException {
+        defaultEngine.start();
+    }
+
+    @Override
+    public synchronized void say(final String text, final boolean interrupt) {
+        if (interrupt) {
+            stopEngines();
+        }
+        for (String chunk : SpeechChunker.split(text, chunkChars)) {
+            if (!engine.writeLine(chunk)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void setLanguage(final String language) {
+        engine = languageEngines.getOrDefault(language, defaultEngine);
+    }
+
+    @Override
+    public synchronized void clear() {
+        stopEngines();
+    }
+
+    @Override
+    public synchronized boolean active() {
+        return engine.ensureStarted();
+    }
+
+    @Override
+    public synchronized void close() {
+        stopEngines();
+    }
+
+    private void stopEngines() {
+        defaultEngine.stop();
+        languageEngines.values().forEach(EngineProcess::stop);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.backend;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits the text of a long narration into sentences, or clauses of long sentences, which a local engine synthesizes
+ * one at a time. The engine can then start speaking the first chunk while it still synthesizes the next, instead of
+ * staying silent until it has synthesized the whole narration.
+ *
+ * @author Case Walker
+ */
+final class SpeechChunker {
+
+    /**
+     * Chunks are at least this long, so that a short greeting does not cost an engine round trip of its own.
+     */
+    static final int MIN_CHUNK_CHARS = 20;
+
+    private SpeechChunker() {}
+
+    /**
+     * Split a text into chunks of at most the given length. Each chunk ends at the first end of a sentence, or failing
+     * that at the last clause break or space which keeps it short enough.
+     *
+     * @param text Text to split
+     * @param maxChars Maximum length of a chunk, zero or less to not split the text
+     * @return The chunks, trimmed and in order, just the text if it is short enough, or none if it is blank
+     */
+    static List<String> split(final String text, final int maxChars) {
+        final List<String> chunks = new ArrayList<>();
+        if (text.isBlank()) {
+            return chunks;
+        }
+        if (maxChars <= 0 || text.length() <= maxChars) {
+            chunks.add(text);
+            return chunks;
+        }
+        int start = 0;
+        while (start < text.length()) {
+            final int end = chunkEnd(text, start, Math.max(maxChars, MIN_CHUNK_CHARS + 1));
+            final String chunk = text.substring(start, end).trim();
+            if (!chunk.isEmpty()) {
+                chunks.add(chunk);
+            }
+            start = end;
+        }
+        return chunks;
+    }
+
+    /**
+     * @return The end of the chunk starting at the given index
+     */
+    private static int chunkEnd(final String text, final int start, final int maxChars) {
+        int limit = Math.min(text.length(), start + maxChars);
+        if (limit < text.length() && Character.isHighSurrogate(text.charAt(limit - 1))) {
+            limit--;
+        }
+        int clause = -1;
+        int space = -1;
+        for (int i = start + MIN_CHUNK_CHARS; i < limit; i++) {
+            final char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = i;
+                continue;
+            }
+            if (i + 1 < text.length() && !Character.isWhitespace(text.charAt(i + 1))) {
+                continue;
+            }
+            if (c == '.' || c == '!' || c == '?') {
+                return i + 1;
+            }
+            if (c == ',' || c == ';' || c == ':') {
+                clause = i + 1;
+            }
+        }
+        if (limit == text.length()) {
+            return limit;
+        }
+        return clause > 0 ? clause : space > 0 ? space : limit;
+    }
+}
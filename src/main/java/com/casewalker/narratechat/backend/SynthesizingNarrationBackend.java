@@ -0,0 +1,368 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.backend;
+
+import com.casewalker.narratechat.audio.AudioCache;
+import com.casewalker.narratechat.audio.AudioClip;
+import com.casewalker.narratechat.audio.AudioPlayer;
+import com.casewalker.narratechat.config.NarrateChatConfig;
+import com.casewalker.narratechat.util.Util;
+import com.mojang.text2speech.Narrator;
+import net.fabricmc.loader.api.FabricLoader;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.casewalker.narratechat.NarrateChatMod.LOGGER;
+
+/**
+ * {@link NarrationBackend} which has a local engine synthesize audio and plays it itself, so that the audio of
+ * repeated messages can be kept in an {@link AudioCache} and played again without synthesizing it.
+ * <p>
+ * The engine runs as a long-lived process, reads one line of text at a time from its standard input, writes the audio
+ * to a WAV file and prints the path of that file on its standard output. This is what piper does when given
+ * <code>--output_dir</code>. Each file is deleted once it has been read.
+ * <p>
+ * Long narrations are split into sentences or clauses (see {@link SpeechChunker}) and streamed: each chunk is handed
+ * to the {@link AudioPlayer} as soon as it is synthesized, so the player speaks chunk N while the engine synthesizes
+ * chunk N+1, and the first words are heard once the first chunk is ready rather than the whole narration.
+ * <p>
+ * Synthesis runs on a thread of its own, which alone talks to the engines and the cache, so {@link #say} returns at
+ * once and {@link #clear()}, {@link #setVoice}, {@link #setLanguage} and {@link #active()} never wait for the engine. A
+ * cleared narration is abandoned before its next chunk.
+ * <p>
+ * Chat in a language with its own command line is synthesized by a separate engine for that language, e.g. piper with a
+ * model of that language. Only the audio of the default engine is cached.
+ *
+ * @author Case Walker
+ */
+public class SynthesizingNarrationBackend implements NarrationBackend {
+
+    public static final String ID = "synthesis";
+
+    /**
+     * Provider of this backend, which uses the <code>synthesisBackendCommand</code>,
+     * <code>languageBackendCommands</code>, <code>streamingChunkChars</code> and <code>audioCacheMegabytes</code>
+     * settings.
+     */
+    public static final NarrationBackendProvider PROVIDER = new NarrationBackendProvider() {
+        @Override
+        public String id() {
+            return ID;
+        }
+
+        @Override
+        public NarrationBackend create(final NarrateChatConfig config, final Narrator minecraftNarrator)
+                throws IOException {
+            final List<String> command = config.synthesisBackendCommand;
+            final AudioCache cache = config.audioCacheMegabytes <= 0 ? null : new AudioCache(
+                    FabricLoader.getInstance().getGameDir().resolve(CACHE_FILE),
+                    (int) Math.min(Integer.MAX_VALUE, config.audioCacheMegabytes * 1024L * 1024L),
+                    Util.hash(String.join("\0", command)));
+            final SynthesizingNarrationBackend backend = new SynthesizingNarrationBackend(
+                    new EngineProcess(command, true), config.languageBackendCommands, config.streamingChunkChars,
+                    cache, new AudioPlayer(), (float) config.speakerPitchSpread);
+            backend.start();
+            return backend;
+        }
+    };
+
+    private static final String CACHE_FILE = "narratechatmod/audio-cache.bin";
+
+    private static final String THREAD_NAME = "Narrate Chat Synthesis";
+
+    private final EngineProcess defaultEngine;
+    private final Map<String, EngineProcess> languageEngines = new HashMap<>();
+    private final int chunkChars;
+    private final AudioCache cache;
+    private final AudioPlayer player;
+    private final float pitchSpread;
+    private volatile float pitch = 1;
+
+    /**
+     * Engine synthesizing the current language.
+     */
+    private volatile EngineProcess engine;
+
+    private final BlockingQueue<Request> requests = new LinkedBlockingQueue<>();
+
+    /**
+     * Incremented by {@link #clear()}, so that the narration being synthesized stops at the next chunk.
+     */
+    private final AtomicInteger generation = new AtomicInteger();
+
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile boolean available = true;
+
+    /**
+     * @param engine Engine which synthesizes audio files in the default language
+     * @param languageCommands Command lines of the engines for some languages, by language code
+     * @param chunkChars Longest chunk synthesized at once, zero or less to synthesize each narration whole
+     * @param cache Cache of synthesized audio, or null to not cache it
+     * @param player Player of the audio
+     * @param pitchSpread How far the players' voices are pitched above and below the default voice
+     */
+    SynthesizingNarrationBackend(
+            final EngineProcess engine,
+            final Map<String, List<String>> languageCommands,
+            final int chunkChars,
+            final AudioCache cache,
+            final AudioPlayer player,
+            final float pitchSpread) {
+        this.defaultEngine = engine;
+        this.engine = engine;
+        languageCommands.forEach((language, languageCommand) ->
+                languageEngines.put(language, new EngineProcess(languageCommand, true)));
+        this.chunkChars = chunkChars;
+        this.cache = cache;
+        this.player = player;
+        this.pitchSpread = pitchSpread;
+        thread = new Thread(this::run, THREAD_NAME);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Start the engine process if it is not already running. Called before the backend is used, afterwards the
+     * engines are only touched by the synthesis thread.
+     *
+     * @throws IOException If the process cannot be started
+     */
+    public void start() throws IOException {
+        defaultEngine.start();
+    }
+
+    @Override
+    public void say(final String text, final boolean interrupt) {
+        say(text, interrupt, false);
+    }
+
+    /**
+     * Queue the text for the synthesis thread and return right away, so that the narration worker stays free to clear
+     * or interrupt the speech while the engine is busy.
+     */
+    @Override
+    public void say(final String text, final boolean interrupt, final boolean cacheable) {
+        final long requestedAt = System.nanoTime();
+        if (interrupt) {
+            clear();
+        }
+        requests.add(new Request(text, cacheable, engine, pitch, generation.get(), requestedAt));
+    }
+
+    /**
+     * Plays the audio faster, which also raises its pitch.
+     */
+    @Override
+    public boolean setRate(final float rate) {
+        player.setRate(rate);
+        return true;
+    }
+
+    @Override
+    public boolean supportsVoices() {
+        return pitchSpread > 0;
+    }
+
+    /**
+     * Voices are the same synthesized audio played at pitches spread evenly around the default voice, so cached audio
+     * serves every voice.
+     */
+    @Override
+    public void setVoice(final int voice, final int voices) {
+        pitch = voice == 0 || voices < 2 ? 1 : 1 + pitchSpread * (2f * (voice - 1) / (voices - 1) - 1);
+    }
+
+    @Override
+    public void setLanguage(final String language) {
+        engine = languageEngines.getOrDefault(language, defaultEngine);
+    }
+
+    /**
+     * Drops the queued narrations and stops the one being synthesized before its next chunk. The chunk the engine is
+     * working on is discarded when it is done.
+     */
+    @Override
+    public void clear() {
+        generation.incrementAndGet();
+        requests.clear();
+        player.clear();
+    }
+
+    /**
+     * @return Whether the synthesis thread runs and the engine was available when last used
+     */
+    @Override
+    public boolean active() {
+        return running && available;
+    }
+
+    /**
+     * Stops the engines, which also ends a read of the synthesis thread from an engine which does not answer, and then
+     * the synthesis thread, which saves the cache.
+     */
+    @Override
+    public void close() {
+        running = false;
+        clear();
+        defaultEngine.close();
+        languageEngines.values().forEach(EngineProcess::close);
+        thread.interrupt();
+        player.close();
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                final Request request = requests.take();
+                if (!cleared(request)) {
+                    speak(request);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (cache != null) {
+                try {
+                    cache.close();
+                } catch (IOException e) {
+                    LOGGER.warn("Could not save the audio cache", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Synthesize a narration chunk by chunk and hand each chunk to the player, unless it is cleared in the meantime.
+     */
+    private void speak(final Request request) {
+        final boolean cached = request.cacheable && cache != null && request.engine == defaultEngine;
+        final AudioClip hit = cached ? cache.get(request.text) : null;
+        if (hit != null) {
+            player.play(hit, request.pitch, request.requestedAt);
+            return;
+        }
+        final List<String> chunks = SpeechChunker.split(request.text, chunkChars);
+        final List<AudioClip> clips = cached ? new ArrayList<>(chunks.size()) : null;
+        long startsNarration = request.requestedAt;
+        for (String chunk : chunks) {
+            final AudioClip clip = cleared(request) ? null : synthesize(request.engine, chunk);
+            if (clip == null || cleared(request)) {
+                return;
+            }
+            player.play(clip, request.pitch, startsNarration);
+            startsNarration = 0;
+            if (clips != null) {
+                clips.add(clip);
+            }
+        }
+        if (clips != null && !clips.isEmpty()) {
+            final AudioClip joined = clips.size() == 1 ? clips.get(0) : AudioClip.join(clips);
+            if (joined != null) {
+                cache.put(request.text, joined);
+            }
+        }
+    }
+
+    /**
+     * @return Whether the backend was cleared since the request was queued
+     */
+    private boolean cleared(final Request request) {
+        return request.generation != generation.get();
+    }
+
+    /**
+     * Have an engine synthesize the text and read the audio it wrote.
+     *
+     * @return The audio, or null if synthesis failed
+     */
+    private AudioClip synthesize(final EngineProcess engine, final String text) {
+        available = engine.writeLine(text);
+        if (!available) {
+            return null;
+        }
+        final String written = engine.readLine();
+        if (written == null || written.isBlank()) {
+            return null;
+        }
+        final Path file = Path.of(written.trim());
+        try (AudioInputStream source = AudioSystem.getAudioInputStream(file.toFile())) {
+            final AudioFormat format = source.getFormat();
+            final AudioFormat pcm = new AudioFormat(format.getSampleRate(), 16, format.getChannels(), true, false);
+            try (AudioInputStream converted = pcm.matches(format) ? source
+                    : AudioSystem.getAudioInputStream(pcm, source)) {
+                return new AudioClip((int) pcm.getSampleRate(), pcm.getChannels(), converted.readAllBytes());
+            }
+        } catch (IOException | UnsupportedAudioFileException | IllegalArgumentException e) {
+            LOGGER.warn("Could not read synthesized audio from {}", file, e);
+            return null;
+        } finally {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                LOGGER.warn("Could not delete synthesized audio {}", file, e);
+            }
+        }
+    }
+
+    /**
+     * A narration waiting to be synthesized, with the engine and pitch current when it was queued.
+     */
+    private static final class Request {
+        private final String text;
+        private final boolean cacheable;
+        private final EngineProcess engine;
+        private final float pitch;
+        private final int generation;
+        private final long requestedAt;
+
+        private Request(
+                final String text,
+                final boolean cacheable,
+                final EngineProcess engine,
+                final float pitch,
+                final int generation,
+                final long requestedAt) {
+            this.text = text;
+            this.cacheable = cacheable;
+            this.engine = engine;
+            this.pitch = pitch;
+            this.generation = generation;
+            this.requestedAt = requestedAt;
+        }
+    }
+}
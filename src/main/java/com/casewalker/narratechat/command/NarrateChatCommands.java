@@ -0,0 +1,139 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.command;
+
+import com.casewalker.narratechat.NarrateChatMod;
+import com.casewalker.narratechat.config.NarrateChatConfig;
+import com.casewalker.narratechat.narration.NarrationHistory;
+import com.mojang.brigadier.Command;
+import com.mojang.brigadier.CommandDispatcher;
+import net.fabricmc.fabric.api.client.command.v2.FabricClientCommandSource;
+import net.minecraft.text.Text;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+import static com.mojang.brigadier.arguments.IntegerArgumentType.getInteger;
+import static com.mojang.brigadier.arguments.IntegerArgumentType.integer;
+import static com.mojang.brigadier.arguments.StringArgumentType.getString;
+import static com.mojang.brigadier.arguments.StringArgumentType.greedyString;
+import static com.mojang.brigadier.arguments.StringArgumentType.word;
+import static net.fabricmc.fabric.api.client.command.v2.ClientCommandManager.argument;
+import static net.fabricmc.fabric.api.client.command.v2.ClientCommandManager.literal;
+
+/**
+ * Client-side commands of the "Narrate Chat" Mod, all under <code>/narratechat</code>.
+ *
+ * @author Case Walker
+ */
+public class NarrateChatCommands {
+
+    /**
+     * Maximum number of history entries listed by a search.
+     */
+    private static final int SEARCH_LIMIT = 10;
+
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    private NarrateChatCommands() {}
+
+    /**
+     * Register the commands.
+     *
+     * @param dispatcher Dispatcher for client commands
+     */
+    public static void register(final CommandDispatcher<FabricClientCommandSource> dispatcher) {
+        dispatcher.register(literal("narratechat")
+                .then(literal("stats")
+                        .executes(context -> {
+                            final FabricClientCommandSource source = context.getSource();
+                            if (!NarrateChatMod.METRICS.isEnabled()) {
+                                source.sendFeedback(Text.translatable("commands.narratechatmod.stats.disabled"));
+                            }
+                            source.sendFeedback(Text.literal(NarrateChatMod.METRICS.summary()));
+                            return Command.SINGLE_SUCCESS;
+                        })
+                        .then(literal("reset")
+                                .executes(context -> {
+                                    NarrateChatMod.METRICS.reset();
+                                    context.getSource()
+                                            .sendFeedback(Text.translatable("commands.narratechatmod.stats.reset"));
+                                    return Command.SINGLE_SUCCESS;
+                                })))
+                .then(literal("startup")
+                        .executes(context -> {
+                            context.getSource().sendFeedback(Text.literal(NarrateChatMod.STARTUP.report()));
+                            return Command.SINGLE_SUCCESS;
+                        }))
+                .then(literal("history")
+                        .then(literal("replay")
+                                .executes(context -> replay(
+                                        context.getSource(), NarrateChatConfig.get().historyReplayCount))
+                                .then(argument("count", integer(1))
+                                        .executes(context -> replay(
+                                                context.getSource(), getInteger(context, "count")))))
+                        .then(literal("search")
+                                .then(argument("text", greedyString())
+                                        .executes(context -> list(context.getSource(),
+                                                NarrateChatMod.HISTORY.searchText(
+                                                        getString(context, "text"), SEARCH_LIMIT)))))
+                        .then(literal("sender")
+                                .then(argument("name", word())
+                                        .executes(context -> list(context.getSource(),
+                                                NarrateChatMod.HISTORY.searchSender(
+                                                        getString(context, "name"), SEARCH_LIMIT)))))));
+    }
+
+    private static int replay(final FabricClientCommandSource source, final int count) {
+        final int replayed = NarrateChatMod.replayHistory(source.getClient(), count);
+        source.sendFeedback(Text.translatable("commands.narratechatmod.history.replayed", replayed));
+        return replayed;
+    }
+
+    /**
+     * Show history entries in the chat, oldest first.
+     *
+     * @param source Source of the command
+     * @param entries Entries to show, newest first
+     * @return The number of entries shown
+     */
+    private static int list(final FabricClientCommandSource source, final List<NarrationHistory.Entry> entries) {
+        if (entries.isEmpty()) {
+            source.sendFeedback(Text.translatable("commands.narratechatmod.history.none"));
+            return 0;
+        }
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            final NarrationHistory.Entry entry = entries.get(i);
+            final String time = TIME_FORMAT.format(Instant.ofEpochMilli(entry.timeMillis()));
+            // Templates usually already name the sender
+            source.sendFeedback(Text.literal(entry.sender() == null || entry.text().startsWith(entry.sender())
+                    ? "[" + time + "] " + entry.text()
+                    : "[" + time + "] <" + entry.sender() + "> " + entry.text()));
+        }
+        return entries.size();
+    }
+}
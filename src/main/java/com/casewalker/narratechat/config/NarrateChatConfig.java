@@ -0,0 +1,612 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.config;
+
+import com.casewalker.narratechat.util.Util;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.casewalker.narratechat.NarrateChatMod.LOGGER;
+
+/**
+ * Configuration for the "Narrate Chat" Mod, stored as JSON in the game's config directory.
+ * <p>
+ * Every field has a sensible default, so a missing file or a missing key simply falls back to the default value. The
+ * currently active configuration is held in a single volatile reference, so reading it from the narration hot path
+ * never requires a lock.
+ *
+ * @author Case Walker
+ */
+public class NarrateChatConfig {
+
+    /**
+     * Name of the configuration file inside the game's config directory.
+     */
+    public static final String FILE_NAME = "narratechatmod.json";
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    private static volatile NarrateChatConfig current = new NarrateChatConfig();
+
+    /**
+     * Maximum number of narrations waiting to be spoken before the {@link #queueOverflowPolicy} applies.
+     */
+    public int queueCapacity = 64;
+
+    /**
+     * What to do with a new narration when the queue is already full.
+     */
+    public QueueOverflowPolicy queueOverflowPolicy = QueueOverflowPolicy.DROP_OLDEST;
+
+    /**
+     * Number of threads which apply the templates and filters to incoming messages, so that the client thread only
+     * hands them over. Messages of one sender are always prepared in order. Zero prepares them on the client thread.
+     * Like the {@link #queueCapacity}, this only takes effect on restart.
+     */
+    public int preprocessingThreads = 2;
+
+    /**
+     * A message submitted again within this many milliseconds, e.g. because it reached the narrator through two
+     * different paths, is only narrated once. Zero disables the check.
+     */
+    public long duplicateWindowMillis = 250;
+
+    /**
+     * Near-identical messages arriving within this many milliseconds of a waiting copy are merged into it. Zero
+     * disables merging.
+     */
+    public long coalesceWindowMillis = 5000;
+
+    /**
+     * Format for merged messages, receiving the message text and the number of times it was received.
+     */
+    public String coalescedFormat = "%s, %d times";
+
+    /**
+     * Messages which have waited longer than this many milliseconds are dropped instead of narrated. Zero disables the
+     * limit.
+     */
+    public long maxNarrationAgeMillis = 20000;
+
+    /**
+     * Alerts and general chat which have waited longer than this many milliseconds are dropped, so they do not hold up
+     * newer messages. Zero disables the limit.
+     */
+    public long lowPriorityMaxAgeMillis = 8000;
+
+    /**
+     * Messages whose translation key starts with one of these prefixes are treated as whispers to the player.
+     */
+    public List<String> whisperKeys = new ArrayList<>(List.of("commands.message.display.incoming"));
+
+    /**
+     * System messages whose translation key starts with one of these prefixes are treated as alerts.
+     */
+    public List<String> alertKeys = new ArrayList<>(List.of("chat.type.announcement", "death."));
+
+    /**
+     * Whether mentions and whispers interrupt whatever is currently being narrated.
+     */
+    public boolean priorityInterrupts = false;
+
+    /**
+     * An utterance still being spoken this many milliseconds after its message arrived is cut off. Zero disables the
+     * limit.
+     */
+    public long staleUtteranceMillis = 30000;
+
+    /**
+     * Whether closing the chat stops the narration and drops the messages waiting to be narrated. Narration always
+     * stops when disconnecting or switching the narrator away from ALL_CHAT.
+     */
+    public boolean stopOnChatClose = true;
+
+    /**
+     * Estimated speaking rate of the narrator, used to hold back queued narrations until the current one has likely
+     * finished so that higher priority messages can still skip ahead. Zero or less hands every narration to the
+     * narrator immediately.
+     */
+    public double speechCharsPerSecond = 15;
+
+    /**
+     * Longest time, in milliseconds, a message is held back to be spoken together with the messages following it.
+     * Zero speaks every message as soon as the narrator is free.
+     */
+    public long batchWindowMillis = 50;
+
+    /**
+     * Maximum number of characters of messages spoken together as one utterance. Zero disables batching.
+     */
+    public int batchMaxChars = 160;
+
+    /**
+     * Estimated seconds of speech waiting in the queue at which the backend is asked to speak faster. Zero disables it.
+     */
+    public double backlogFastSeconds = 10;
+
+    /**
+     * Estimated seconds of speech waiting in the queue at which messages are shortened to their first {@link
+     * #abbreviatedWords} words. Zero disables it.
+     */
+    public double backlogAbbreviateSeconds = 20;
+
+    /**
+     * Estimated seconds of speech waiting in the queue at which the narrator skips to the newest message. Zero disables
+     * it.
+     */
+    public double backlogSkipSeconds = 40;
+
+    /**
+     * Number of waiting messages at which the narrator skips to the newest message. Zero disables it, otherwise it is
+     * at least 4, so that skipping stops at half of it before the queue has run empty.
+     */
+    public int backlogSkipDepth = 32;
+
+    /**
+     * Speaking rate, relative to normal, requested from the backend while there is a backlog. Only some backends can
+     * change their rate.
+     */
+    public float backlogFastRate = 1.5f;
+
+    /**
+     * Number of words messages are shortened to while there is a large backlog.
+     */
+    public int abbreviatedWords = 8;
+
+    /**
+     * Sustained number of narrations per second across all senders, except messages addressed to the player. Zero or
+     * less disables the global rate limit, which is the default, since the backlog controller already keeps busy chats
+     * in check without dropping ordinary conversation.
+     */
+    public double globalRatePerSecond = 0;
+
+    /**
+     * Number of narrations allowed in a burst across all senders.
+     */
+    public double globalBurst = 8;
+
+    /**
+     * Sustained number of narrations per second for a single player, not applied to messages without a sender or
+     * addressed to the player. Zero or less disables the per-sender rate limit, which is the default.
+     */
+    public double senderRatePerSecond = 0;
+
+    /**
+     * Number of narrations allowed in a burst from a single sender.
+     */
+    public double senderBurst = 3;
+
+    /**
+     * Whether chat messages sent by players are narrated.
+     */
+    public boolean narrateChat = true;
+
+    /**
+     * Whether system messages shown in the chat are narrated.
+     */
+    public boolean narrateSystem = true;
+
+    /**
+     * Whether game info messages shown above the hotbar are narrated.
+     */
+    public boolean narrateGame = true;
+
+    /**
+     * If not empty, only messages from these senders (or without a sender) are narrated. Case-insensitive.
+     */
+    public List<String> allowedSenders = new ArrayList<>();
+
+    /**
+     * Messages from these senders are never narrated. Case-insensitive.
+     */
+    public List<String> deniedSenders = new ArrayList<>();
+
+    /**
+     * Messages containing any of these keywords are never narrated. Case-insensitive.
+     */
+    public List<String> mutedKeywords = new ArrayList<>();
+
+    /**
+     * Messages matching any of these regular expressions are never narrated. Case-insensitive.
+     */
+    public List<String> mutedPatterns = new ArrayList<>();
+
+    /**
+     * Short phrases spoken instead of translatable messages, by translation key, in the syntax of Minecraft's language
+     * files (<code>%s</code> for the next argument, <code>%2$s</code> for the second). An empty phrase mutes the key.
+     */
+    public Map<String, String> narrationTemplates = defaultNarrationTemplates();
+
+    /**
+     * Whether each player who chats is spoken with one of several voices, so listeners can tell them apart and the
+     * "Player says" before each chat message is left out. Needs a backend which supports voices.
+     */
+    public boolean speakerVoices = false;
+
+    /**
+     * Number of distinct voices given to players. The players who spoke most recently never share a voice.
+     */
+    public int speakerVoiceCount = 4;
+
+    /**
+     * How far, relative to normal, the players' voices are pitched above and below the default voice by the "synthesis"
+     * backend.
+     */
+    public double speakerPitchSpread = 0.15;
+
+    /**
+     * Text-to-speech engine which speaks narrations, "minecraft" for Minecraft's own narrator, "process" for a local
+     * engine run with {@link #processBackendCommand}, "synthesis" for a local engine run with {@link
+     * #synthesisBackendCommand}, or a backend added by another mod.
+     */
+    public String narrationBackend = "minecraft";
+
+    /**
+     * Command line of the local text-to-speech engine used by the "process" backend. The engine must speak each line
+     * it reads from standard input.
+     */
+    public List<String> processBackendCommand = new ArrayList<>(List.of("espeak-ng"));
+
+    /**
+     * Command line of the local text-to-speech engine used by the "synthesis" backend. The engine must write the audio
+     * of each line it reads from standard input to a WAV file, and print the path of that file.
+     */
+    public List<String> synthesisBackendCommand = new ArrayList<>(List.of(
+            "piper", "--model", "en_US-lessac-medium.onnx", "--output_dir", "narratechatmod/speech"));
+
+    /**
+     * Size of the file caching the synthesized audio of repeated system and game messages, used by the "synthesis"
+     * backend. Zero disables the cache.
+     */
+    public int audioCacheMegabytes = 32;
+
+    /**
+     * Longest chunk, in characters, which the "process" and "synthesis" backends hand to their engine at once. Longer
+     * narrations are split into sentences or clauses, so the first one can be heard while the rest is synthesized.
+     * Zero hands every narration over whole.
+     */
+    public int streamingChunkChars = 120;
+
+    /**
+     * Whether the language of each chat message is detected, so it can be spoken by a voice of that language from
+     * {@link #languageBackendCommands}.
+     */
+    public boolean languageDetection = false;
+
+    /**
+     * Command lines of the local text-to-speech engine by language code ("en", "de", "fr", "es", "it", "pt" or "nl"),
+     * used by the "process" and "synthesis" backends instead of their usual command for chat in that language. Chat in
+     * other languages, and every message without a sender, uses the usual command.
+     */
+    public Map<String, List<String>> languageBackendCommands = new LinkedHashMap<>();
+
+    /**
+     * Whether narration metrics are recorded, see <code>/narratechat stats</code>.
+     */
+    public boolean metricsEnabled = false;
+
+    /**
+     * How often, in seconds, the metrics summary is written to the log while metrics are enabled. Zero disables it.
+     */
+    public long metricsLogIntervalSeconds = 300;
+
+    /**
+     * Number of narrated messages kept in the history, see <code>/narratechat history</code>. Zero disables the
+     * history.
+     */
+    public int historySize = 200;
+
+    /**
+     * Number of messages the "replay recent messages" keybind narrates again.
+     */
+    public int historyReplayCount = 5;
+
+    /**
+     * Narrator modes added next to "Custom - All Chats", each narrating only some kinds of messages. Modes are
+     * registered when the game starts, so only changes to their routes take effect without a restart.
+     */
+    public List<NarrationModeConfig> narrationModes = defaultNarrationModes();
+
+    /**
+     * Settings which differ per server, keyed by server address (e.g. <code>"mc.example.com"</code> or
+     * <code>"mc.example.com:25566"</code>). Each profile is a JSON object with any of the settings above, which replace
+     * the top-level value while connected to that server.
+     */
+    public Map<String, JsonObject> serverProfiles = new LinkedHashMap<>();
+
+    /**
+     * Get the currently active configuration.
+     *
+     * @return The active configuration, never null
+     */
+    public static NarrateChatConfig get() {
+        return current;
+    }
+
+    /**
+     * Load the configuration from the given directory and make it the active configuration. If no file exists yet, the
+     * defaults are written out so users have something to edit. A file which cannot be read or parsed is logged and the
+     * defaults are used instead.
+     *
+     * @param configDir Directory containing the configuration file
+     * @return The newly active configuration
+     */
+    public static NarrateChatConfig load(final Path configDir) {
+        final Path file = configDir.resolve(FILE_NAME);
+        if (Files.isRegularFile(file)) {
+            try {
+                return read(configDir);
+            } catch (IOException e) {
+                LOGGER.error("Could not read config file {}, using defaults", file, e);
+            }
+        }
+
+        final NarrateChatConfig loaded = new NarrateChatConfig();
+        if (!Files.exists(file)) {
+            loaded.save(file);
+        }
+        loaded.validate();
+        current = loaded;
+        return loaded;
+    }
+
+    /**
+     * Read the configuration file in the given directory and make it the active configuration. Unlike {@link
+     * #load(Path)}, nothing changes if the file cannot be read or parsed, so a half-written file is never replaced by
+     * the defaults.
+     *
+     * @param configDir Directory containing the configuration file
+     * @return The newly active configuration
+     * @throws IOException If the file is missing, cannot be read or does not hold a valid configuration
+     */
+    public static NarrateChatConfig read(final Path configDir) throws IOException {
+        final Path file = configDir.resolve(FILE_NAME);
+        final NarrateChatConfig loaded;
+        try (Reader reader = Files.newBufferedReader(file)) {
+            loaded = GSON.fromJson(reader, NarrateChatConfig.class);
+        } catch (JsonParseException e) {
+            throw new IOException("Invalid config file " + file, e);
+        }
+        if (loaded == null) {
+            throw new IOException("Empty config file " + file);
+        }
+        loaded.validate();
+        current = loaded;
+        return loaded;
+    }
+
+    /**
+     * Get the configuration to use on the given server: this configuration with the server's profile applied, if it
+     * has one. The address is matched case-insensitively, first with and then without its port. A profile which cannot
+     * be parsed is logged and ignored.
+     *
+     * @param address Address of the server, or null when not connected to a server (e.g. singleplayer)
+     * @return The effective configuration, which is this instance if no profile applies
+     */
+    public NarrateChatConfig forServer(final String address) {
+        final JsonObject profile = profileFor(address);
+        if (profile == null) {
+            return this;
+        }
+        final JsonObject merged = GSON.toJsonTree(this).getAsJsonObject();
+        for (Map.Entry<String, JsonElement> override : profile.entrySet()) {
+            merged.add(override.getKey(), override.getValue());
+        }
+        merged.remove("serverProfiles");
+        try {
+            final NarrateChatConfig effective = GSON.fromJson(merged, NarrateChatConfig.class);
+            effective.validate();
+            return effective;
+        } catch (JsonParseException e) {
+            LOGGER.error("Could not apply the profile of server {}, using the default settings", address, e);
+            return this;
+        }
+    }
+
+    /**
+     * @return An independent copy of this configuration
+     */
+    public NarrateChatConfig copy() {
+        final NarrateChatConfig copy = GSON.fromJson(GSON.toJsonTree(this), NarrateChatConfig.class);
+        copy.validate();
+        return copy;
+    }
+
+    private JsonObject profileFor(final String address) {
+        if (address == null || serverProfiles.isEmpty()) {
+            return null;
+        }
+        final String normalized = address.trim().toLowerCase(Locale.ROOT);
+        final JsonObject profile = serverProfiles.get(normalized);
+        if (profile != null) {
+            return profile;
+        }
+        final int port = normalized.lastIndexOf(':');
+        return port > 0 && normalized.indexOf(']') < port ? serverProfiles.get(normalized.substring(0, port)) : null;
+    }
+
+    /**
+     * Write this configuration as JSON to the given file.
+     *
+     * @param file File to write to
+     */
+    public void save(final Path file) {
+        try {
+            Files.createDirectories(file.getParent());
+            try (Writer writer = Files.newBufferedWriter(file)) {
+                GSON.toJson(this, writer);
+            }
+        } catch (IOException e) {
+            LOGGER.error("Could not write config file {}", file, e);
+        }
+    }
+
+    private static Map<String, String> defaultNarrationTemplates() {
+        final Map<String, String> templates = new LinkedHashMap<>();
+        templates.put("multiplayer.player.joined", "%s joined");
+        templates.put("multiplayer.player.joined.renamed", "%s joined");
+        templates.put("multiplayer.player.left", "%s left");
+        templates.put("chat.type.advancement.task", "%s got %s");
+        templates.put("chat.type.advancement.goal", "%s reached %s");
+        templates.put("chat.type.advancement.challenge", "%s completed %s");
+        return templates;
+    }
+
+    /**
+     * Highest id a custom narration mode may use, which bounds the narrator mode table.
+     */
+    public static final int MAX_NARRATION_MODE_ID = 63;
+
+    private static List<NarrationModeConfig> defaultNarrationModes() {
+        final List<NarrationModeConfig> modes = new ArrayList<>();
+        modes.add(new NarrationModeConfig(5, "Custom - Mentions Only", List.of("MENTION", "WHISPER")));
+        modes.add(new NarrationModeConfig(6, "Custom - System and Whispers", List.of("SYSTEM", "ALERT", "WHISPER")));
+        modes.add(new NarrationModeConfig(7, "Custom - Team Chat", List.of("TEAM", "MENTION", "WHISPER")));
+        return modes;
+    }
+
+    /**
+     * Replace values which are missing or out of range with their defaults.
+     */
+    void validate() {
+        if (queueCapacity < 1) {
+            queueCapacity = 64;
+        }
+        if (queueOverflowPolicy == null) {
+            queueOverflowPolicy = QueueOverflowPolicy.DROP_OLDEST;
+        }
+        preprocessingThreads = Math.min(Math.max(0, preprocessingThreads), 8);
+        if (coalescedFormat == null) {
+            coalescedFormat = "%s, %d times";
+        }
+        if (allowedSenders == null) {
+            allowedSenders = new ArrayList<>();
+        }
+        if (deniedSenders == null) {
+            deniedSenders = new ArrayList<>();
+        }
+        if (mutedKeywords == null) {
+            mutedKeywords = new ArrayList<>();
+        }
+        if (mutedPatterns == null) {
+            mutedPatterns = new ArrayList<>();
+        }
+        if (narrationBackend == null) {
+            narrationBackend = "minecraft";
+        }
+        if (processBackendCommand == null || processBackendCommand.isEmpty()) {
+            processBackendCommand = new ArrayList<>(List.of("espeak-ng"));
+        }
+        if (synthesisBackendCommand == null || synthesisBackendCommand.isEmpty()) {
+            synthesisBackendCommand = new ArrayList<>(List.of(
+                    "piper", "--model", "en_US-lessac-medium.onnx", "--output_dir", "narratechatmod/speech"));
+        }
+        audioCacheMegabytes = Math.min(Math.max(0, audioCacheMegabytes), 1024);
+        streamingChunkChars = Math.min(Math.max(0, streamingChunkChars), 1000);
+        final Map<String, List<String>> languageCommands = new LinkedHashMap<>();
+        if (languageBackendCommands != null) {
+            languageBackendCommands.forEach((language, command) -> {
+                if (language != null && command != null && !command.isEmpty()) {
+                    languageCommands.put(language.toLowerCase(Locale.ROOT), command);
+                }
+            });
+        }
+        languageBackendCommands = languageCommands;
+        historySize = Math.min(Math.max(0, historySize), 10000);
+        historyReplayCount = Math.max(1, historyReplayCount);
+        speakerVoiceCount = Math.min(Math.max(1, speakerVoiceCount), 16);
+        speakerPitchSpread = Math.min(Math.max(0, speakerPitchSpread), 0.5);
+        if (narrationTemplates == null) {
+            narrationTemplates = defaultNarrationTemplates();
+        } else {
+            final Map<String, String> templates = new LinkedHashMap<>();
+            narrationTemplates.forEach((key, template) -> {
+                if (key != null && template != null) {
+                    templates.put(key, template);
+                } else {
+                    LOGGER.warn("Ignoring narration template without a translation key or text: '{}'", key);
+                }
+            });
+            narrationTemplates = templates;
+        }
+        if (whisperKeys == null) {
+            whisperKeys = new ArrayList<>();
+        }
+        if (alertKeys == null) {
+            alertKeys = new ArrayList<>();
+        }
+        if (narrationModes == null) {
+            narrationModes = defaultNarrationModes();
+        } else {
+            // Sorted by id and without duplicates, the order in which they are registered
+            final Map<Integer, NarrationModeConfig> byId = new TreeMap<>();
+            for (NarrationModeConfig mode : narrationModes) {
+                if (mode == null || mode.id <= Util.ALL_CHAT_ID || mode.id > MAX_NARRATION_MODE_ID
+                        || mode.name == null || byId.containsKey(mode.id)) {
+                    LOGGER.warn("Ignoring invalid narration mode, ids must be unique and between {} and {}",
+                            Util.ALL_CHAT_ID + 1, MAX_NARRATION_MODE_ID);
+                    continue;
+                }
+                if (mode.routes == null) {
+                    mode.routes = new ArrayList<>();
+                }
+                byId.put(mode.id, mode);
+            }
+            narrationModes = new ArrayList<>(byId.values());
+        }
+        if (serverProfiles == null) {
+            serverProfiles = new LinkedHashMap<>();
+        } else {
+            final Map<String, JsonObject> normalized = new LinkedHashMap<>();
+            serverProfiles.forEach((address, profile) -> {
+                if (address != null && profile != null) {
+                    normalized.put(address.trim().toLowerCase(Locale.ROOT), profile);
+                }
+            });
+            serverProfiles = normalized;
+        }
+        batchWindowMillis = Math.min(Math.max(0, batchWindowMillis), 1000);
+        batchMaxChars = Math.max(0, batchMaxChars);
+        backlogFastRate = Math.min(Math.max(1, backlogFastRate), 3);
+        backlogSkipDepth = backlogSkipDepth <= 0 ? 0 : Math.max(4, backlogSkipDepth);
+        abbreviatedWords = Math.max(1, abbreviatedWords);
+        globalBurst = Math.max(1, globalBurst);
+        senderBurst = Math.max(1, senderBurst);
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A custom narration mode, added to the narrator modes offered by Minecraft next to "Custom - All Chats".
+ *
+ * @author Case Walker
+ */
+public class NarrationModeConfig {
+
+    /**
+     * Id of the mode, saved in Minecraft's options. It must never change for a mode, and must not be reused for a
+     * different mode, so that the saved option keeps its meaning.
+     */
+    public int id;
+
+    /**
+     * Name shown on the narrator button, either a translation key or plain text.
+     */
+    public String name;
+
+    /**
+     * Names of the {@link com.casewalker.narratechat.narration.NarrationRoute routes} the mode narrates.
+     */
+    public List<String> routes = new ArrayList<>();
+
+    public NarrationModeConfig() {}
+
+    NarrationModeConfig(final int id, final String name, final List<String> routes) {
+        this.id = id;
+        this.name = name;
+        this.routes = new ArrayList<>(routes);
+    }
+}
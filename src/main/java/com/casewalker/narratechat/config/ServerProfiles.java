@@ -0,0 +1,175 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.config;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static com.casewalker.narratechat.NarrateChatMod.LOGGER;
+
+/**
+ * Keeps the effective configuration in step with the server the player is connected to and with the configuration
+ * file. Joining or leaving a server applies the matching {@link NarrateChatConfig#serverProfiles server profile}, and
+ * saving the file reloads it without restarting the game.
+ * <p>
+ * Every change builds a complete new configuration which is handed to the consumer as a whole, so the narration hot
+ * path only ever sees one consistent snapshot and never needs a lock.
+ *
+ * @author Case Walker
+ */
+public class ServerProfiles {
+
+    /**
+     * Editors often write a file in several steps, so events arriving within this time are handled as one change.
+     */
+    private static final long SETTLE_MILLIS = 100;
+
+    private final Path configDir;
+    private final Consumer<NarrateChatConfig> apply;
+    private String serverAddress;
+    private WatchService watchService;
+
+    /**
+     * @param configDir Directory containing the configuration file
+     * @param apply Consumer of each new effective configuration, called from the thread which caused the change
+     */
+    public ServerProfiles(final Path configDir, final Consumer<NarrateChatConfig> apply) {
+        this.configDir = configDir;
+        this.apply = apply;
+    }
+
+    /**
+     * Apply the profile of the server the player has joined.
+     *
+     * @param address Address of the server, or null when playing singleplayer
+     */
+    public synchronized void join(final String address) {
+        serverAddress = address;
+        apply.accept(NarrateChatConfig.get().forServer(address));
+        if (address != null) {
+            LOGGER.info("Applied the narration settings for server {}", address);
+        }
+    }
+
+    /**
+     * Go back to the top-level settings after disconnecting.
+     */
+    public synchronized void leave() {
+        join(null);
+    }
+
+    /**
+     * Read the configuration file again and apply it, together with the profile of the current server. If the file
+     * cannot be read or parsed, e.g. because it is only half saved, the previous settings stay in effect.
+     */
+    public synchronized void reload() {
+        final Path file = configDir.resolve(NarrateChatConfig.FILE_NAME);
+        final NarrateChatConfig config;
+        try {
+            config = NarrateChatConfig.read(configDir);
+        } catch (IOException e) {
+            LOGGER.warn("Could not reload config file {}, keeping the previous settings", file, e);
+            return;
+        }
+        apply.accept(config.forServer(serverAddress));
+        LOGGER.info("Reloaded config file {}", file);
+    }
+
+    /**
+     * Start watching the configuration file on a daemon thread, calling {@link #reload()} whenever it changes.
+     */
+    public synchronized void watch() {
+        if (watchService != null) {
+            return;
+        }
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            configDir.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            LOGGER.error("Could not watch {} for changes, edits to the config need a restart", configDir, e);
+            return;
+        }
+        final WatchService service = watchService;
+        final Thread thread = new Thread(() -> watchLoop(service), "NarrateChat-ConfigWatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop watching the configuration file.
+     */
+    public synchronized void close() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                LOGGER.warn("Could not stop watching {}", configDir, e);
+            }
+            watchService = null;
+        }
+    }
+
+    private void watchLoop(final WatchService service) {
+        try {
+            while (true) {
+                boolean changed = touchesConfig(service.take());
+                // Wait for the write to settle, folding the events of a multi-step save into a single reload
+                for (WatchKey key = service.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS); key != null;
+                        key = service.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) {
+                    changed |= touchesConfig(key);
+                }
+                if (changed) {
+                    try {
+                        reload();
+                    } catch (RuntimeException e) {
+                        LOGGER.error("Could not apply the reloaded config", e);
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Stopped watching
+        }
+    }
+
+    private static boolean touchesConfig(final WatchKey key) {
+        boolean touches = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || event.context() instanceof Path path && path.toString().equals(NarrateChatConfig.FILE_NAME)) {
+                touches = true;
+            }
+        }
+        key.reset();
+        return touches;
+    }
+}
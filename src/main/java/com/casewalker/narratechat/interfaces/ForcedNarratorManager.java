@@ -23,6 +23,8 @@
  */
 package com.casewalker.narratechat.interfaces;
 
+import com.casewalker.narratechat.config.NarrateChatConfig;
+import com.casewalker.narratechat.narration.NarrationType;
 import net.minecraft.text.Text;
 
 /**
@@ -38,7 +40,49 @@ public interface ForcedNarratorManager {
      * the narration mode is correct.
      *
      * @param text Text to narrate
+     * @param type Type of the message, used by the user's filters
      */
-    void forceNarrateOnMode(final Text text);
+    void forceNarrateOnMode(final Text text, final NarrationType type);
+
+    /**
+     * Force narration of a system message, provided the narration mode is correct.
+     *
+     * @param text Text to narrate
+     */
+    default void forceNarrateOnMode(final Text text) {
+        forceNarrateOnMode(text, NarrationType.SYSTEM);
+    }
+
+    /**
+     * Stop the current narration immediately and drop every message still waiting to be narrated.
+     */
+    void stopNarration();
+
+    /**
+     * Called when the player closes the chat, stops the narration if the user wants it to.
+     */
+    void onChatClosed();
+
+    /**
+     * Switch narration over to a new configuration, e.g. after joining a server with its own profile or after the
+     * config file was edited. The backend is only restarted if its settings changed, and then on a background thread.
+     *
+     * @param config The new effective configuration
+     */
+    void applyConfig(final NarrateChatConfig config);
+
+    /**
+     * Narrate the most recent messages of the narration history again, interrupting the current narration.
+     *
+     * @param count Number of messages to narrate again
+     * @return The number of messages which will be narrated
+     */
+    int replayHistory(final int count);
+
+    /**
+     * Start building the narration components in the background, once the game has started. Until they are ready,
+     * narrations go to Minecraft's narrator directly.
+     */
+    void initializeInBackground();
 
 }
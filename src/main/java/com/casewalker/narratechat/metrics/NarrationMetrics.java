@@ -0,0 +1,220 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+import static com.casewalker.narratechat.NarrateChatMod.LOGGER;
+
+/**
+ * Registry of counters and latencies describing what the mod does with each message under load.
+ * <p>
+ * Counters are {@link LongAdder}s and latencies go into a lock-free {@link LatencyHistogram}, so recording from the
+ * client thread and the narration worker at the same time never contends. When metrics are disabled, every recording
+ * method returns after reading a single volatile flag.
+ *
+ * @author Case Walker
+ */
+public class NarrationMetrics {
+
+    /**
+     * Events counted by the metrics.
+     */
+    public enum Counter {
+        /** A message reached one of the mod's entry points. */
+        RECEIVED("received"),
+        /** A message was rejected by the user's filter. */
+        FILTERED("filtered"),
+        /** A message had already been submitted through another path. */
+        DUPLICATE("duplicates"),
+        /** A message was merged into an identical waiting narration. */
+        MERGED("merged"),
+        /** A message was dropped by a rate limit. */
+        RATE_LIMITED("rate limited"),
+        /** A message was dropped because its queue was full. */
+        OVERFLOWED("overflowed"),
+        /** A message waited too long and was dropped. */
+        EXPIRED("expired"),
+        /** A message was skipped to catch up with a backlog. */
+        SKIPPED("skipped"),
+        /** A message was dropped because narration was stopped. */
+        CANCELLED("cancelled"),
+        /** A message was handed to the narrator. */
+        NARRATED("narrated");
+
+        private final String label;
+
+        Counter(final String label) {
+            this.label = label;
+        }
+    }
+
+    private static final Counter[] COUNTERS = Counter.values();
+
+    private final LongAdder[] counters = new LongAdder[COUNTERS.length];
+    private final LatencyHistogram latencyMicros = new LatencyHistogram();
+    private final LatencyHistogram firstAudioMicros = new LatencyHistogram();
+    private volatile boolean enabled;
+    private volatile IntSupplier queueDepth = () -> 0;
+    private long logIntervalNanos;
+    private long nextLogAt;
+
+    public NarrationMetrics() {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param enabled Whether metrics should be recorded
+     * @param logIntervalSeconds How often the summary is written to the log while enabled, zero or less to never log it
+     */
+    public void configure(final boolean enabled, final long logIntervalSeconds) {
+        this.enabled = enabled;
+        this.logIntervalNanos = TimeUnit.SECONDS.toNanos(Math.max(0, logIntervalSeconds));
+        this.nextLogAt = System.nanoTime() + logIntervalNanos;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param queueDepth Supplier of the number of narrations currently waiting to be spoken
+     */
+    public void setQueueDepth(final IntSupplier queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+    /**
+     * Count an event.
+     *
+     * @param counter Event to count
+     */
+    public void increment(final Counter counter) {
+        if (enabled) {
+            counters[counter.ordinal()].increment();
+        }
+    }
+
+    /**
+     * Record a message being handed to the narrator.
+     *
+     * @param receivedAt Time the message was received, from {@link System#nanoTime()}
+     * @param now Current time, from {@link System#nanoTime()}
+     */
+    public void recordNarrated(final long receivedAt, final long now) {
+        if (enabled) {
+            counters[Counter.NARRATED.ordinal()].increment();
+            latencyMicros.record(TimeUnit.NANOSECONDS.toMicros(now - receivedAt));
+        }
+    }
+
+    /**
+     * Record the mod's own audio player starting to play a narration.
+     *
+     * @param requestedAt Time the backend was asked to speak the narration, from {@link System#nanoTime()}
+     * @param now Current time, from {@link System#nanoTime()}
+     */
+    public void recordFirstAudio(final long requestedAt, final long now) {
+        if (enabled) {
+            firstAudioMicros.record(TimeUnit.NANOSECONDS.toMicros(now - requestedAt));
+        }
+    }
+
+    /**
+     * @param counter Event to get the count of
+     * @return The number of times the event was counted since the last reset
+     */
+    public long get(final Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+
+    /**
+     * @return Histogram of the time, in microseconds, from receiving a message to handing it to the narrator
+     */
+    public LatencyHistogram latencyMicros() {
+        return latencyMicros;
+    }
+
+    /**
+     * @return Histogram of the time, in microseconds, from asking the backend to speak to its first audio playing, only
+     * recorded by backends which play the audio themselves
+     */
+    public LatencyHistogram firstAudioMicros() {
+        return firstAudioMicros;
+    }
+
+    /**
+     * Clear all counters and latencies.
+     */
+    public void reset() {
+        for (LongAdder counter : counters) {
+            counter.reset();
+        }
+        latencyMicros.reset();
+        firstAudioMicros.reset();
+    }
+
+    /**
+     * @return A one-line, human-readable summary of all metrics
+     */
+    public String summary() {
+        final StringBuilder summary = new StringBuilder();
+        for (Counter counter : COUNTERS) {
+            summary.append(counter.label).append('=').append(get(counter)).append(", ");
+        }
+        summary.append("queued=").append(queueDepth.getAsInt())
+                .append(", latency ms p50=").append(millis(latencyMicros.percentile(50)))
+                .append(" p90=").append(millis(latencyMicros.percentile(90)))
+                .append(" p99=").append(millis(latencyMicros.percentile(99)))
+                .append(" max=").append(millis(latencyMicros.max()));
+        if (firstAudioMicros.count() > 0) {
+            summary.append(", first audio ms p50=").append(millis(firstAudioMicros.percentile(50)))
+                    .append(" p90=").append(millis(firstAudioMicros.percentile(90)));
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Write the summary to the log if metrics are enabled and the log interval has passed. Meant to be called every
+     * client tick.
+     */
+    public void logPeriodically() {
+        if (!enabled || logIntervalNanos <= 0) {
+            return;
+        }
+        final long now = System.nanoTime();
+        if (now - nextLogAt >= 0) {
+            nextLogAt = now + logIntervalNanos;
+            LOGGER.info("Narration metrics: {}", summary());
+        }
+    }
+
+    private static String millis(final long micros) {
+        return String.format("%.1f", micros / 1000d);
+    }
+}
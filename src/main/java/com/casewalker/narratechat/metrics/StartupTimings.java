@@ -0,0 +1,115 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static com.casewalker.narratechat.NarrateChatMod.LOGGER;
+
+/**
+ * Durations of the steps which set up the mod, so that regressions in startup cost are visible. Steps on the client
+ * thread delay the game's startup, steps in the background only delay narration through the mod.
+ * <p>
+ * The report is logged once every background step which was started has finished, and can be shown with
+ * <code>/narratechat startup</code>.
+ *
+ * @author Case Walker
+ */
+public class StartupTimings {
+
+    private final List<String> steps = new ArrayList<>();
+    private final List<Long> durations = new ArrayList<>();
+    private final List<Boolean> background = new ArrayList<>();
+    private int running;
+
+    /**
+     * Run a step on the calling thread and record how long it took.
+     *
+     * @param step Name of the step
+     * @param task Work of the step
+     * @param <T> Type of the step's result
+     * @return The result of the step
+     */
+    public <T> T time(final String step, final Supplier<T> task) {
+        final long start = System.nanoTime();
+        try {
+            return task.get();
+        } finally {
+            record(step, System.nanoTime() - start, false);
+        }
+    }
+
+    /**
+     * Note that a background step was started, so that the report waits for it.
+     */
+    public synchronized void started() {
+        running++;
+    }
+
+    /**
+     * Record the duration of a step. Once the last running background step finishes, the report is logged.
+     *
+     * @param step Name of the step
+     * @param nanos Duration of the step in nanoseconds
+     * @param inBackground Whether the step ran on a background thread
+     */
+    public synchronized void record(final String step, final long nanos, final boolean inBackground) {
+        steps.add(step);
+        durations.add(nanos);
+        background.add(inBackground);
+        if (inBackground && --running == 0) {
+            LOGGER.info("Narrate Chat Mod startup:\n{}", report());
+        }
+    }
+
+    /**
+     * @return True while background steps are still running
+     */
+    public synchronized boolean isRunning() {
+        return running > 0;
+    }
+
+    /**
+     * @return One line per recorded step with its duration and where it ran
+     */
+    public synchronized String report() {
+        final StringBuilder report = new StringBuilder();
+        long clientThread = 0;
+        for (int i = 0; i < steps.size(); i++) {
+            final long nanos = durations.get(i);
+            if (!background.get(i)) {
+                clientThread += nanos;
+            }
+            report.append(String.format("  %-32s %8.1f ms%s%n", steps.get(i), nanos / 1e6,
+                    background.get(i) ? " (background)" : ""));
+        }
+        report.append(String.format("  %-32s %8.1f ms", "Total on the client thread", clientThread / 1e6));
+        if (running > 0) {
+            report.append(String.format("%n  %d background steps still running", running));
+        }
+        return report.toString();
+    }
+}
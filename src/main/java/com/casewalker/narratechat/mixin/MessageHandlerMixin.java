@@ -24,6 +24,8 @@
 package com.casewalker.narratechat.mixin;
 
 import com.casewalker.narratechat.interfaces.ForcedNarratorManager;
+import com.casewalker.narratechat.metrics.NarrationMetrics.Counter;
+import com.casewalker.narratechat.narration.NarrationType;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.network.message.MessageHandler;
 import net.minecraft.text.Text;
@@ -34,6 +36,8 @@ import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 
+import static com.casewalker.narratechat.NarrateChatMod.METRICS;
+
 /**
  * Mixin targeting the {@link MessageHandler} class to allow system messages to be narrated properly by this mod.
  *
@@ -48,14 +52,17 @@ public abstract class MessageHandlerMixin {
 
     /**
      * Inject a narration override at the end of {@link MessageHandler#onGameMessage(Text, boolean)} to ensure that game
-     * messages are correctly handled by the mod.
-     * 
+     * messages are correctly handled by the mod. Overlay messages (shown above the hotbar) are narrated as {@link
+     * NarrationType#GAME} messages, all others as {@link NarrationType#SYSTEM} messages.
+     *
      * @param message Text to be conditionally narrated
-     * @param overlay Boolean used in the parent method
+     * @param overlay Whether the message is shown above the hotbar instead of in the chat
      * @param ci CallbackInfo used by SpongePowered
      */
     @Inject(method = "onGameMessage", at = @At("TAIL"))
     public void onOnGameMessage(final Text message, final boolean overlay, final CallbackInfo ci) {
-        ((ForcedNarratorManager) this.client.getNarratorManager()).forceNarrateOnMode(message);
+        METRICS.increment(Counter.RECEIVED);
+        ((ForcedNarratorManager) this.client.getNarratorManager())
+                .forceNarrateOnMode(message, overlay ? NarrationType.GAME : NarrationType.SYSTEM);
     }
 }
@@ -23,23 +23,37 @@
  */
 package com.casewalker.narratechat.mixin;
 
+import com.casewalker.narratechat.backend.NarrationBackends;
+import com.casewalker.narratechat.config.NarrateChatConfig;
 import com.casewalker.narratechat.interfaces.ForcedNarratorManager;
-import com.casewalker.narratechat.util.Util;
+import com.casewalker.narratechat.metrics.NarrationMetrics.Counter;
+import com.casewalker.narratechat.narration.Narration;
+import com.casewalker.narratechat.narration.NarrationDispatcher;
+import com.casewalker.narratechat.narration.NarrationModes;
+import com.casewalker.narratechat.narration.NarrationRoute;
+import com.casewalker.narratechat.narration.NarrationType;
+import com.casewalker.narratechat.util.LazyInit;
 import com.google.common.annotations.VisibleForTesting;
 import com.mojang.text2speech.Narrator;
+import net.minecraft.SharedConstants;
+import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.option.NarratorMode;
 import net.minecraft.client.util.NarratorManager;
 import net.minecraft.text.Text;
 import org.spongepowered.asm.mixin.Final;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.Unique;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 
 import java.util.function.Supplier;
 
+import static com.casewalker.narratechat.NarrateChatMod.HISTORY;
 import static com.casewalker.narratechat.NarrateChatMod.LOGGER;
+import static com.casewalker.narratechat.NarrateChatMod.METRICS;
+import static com.casewalker.narratechat.NarrateChatMod.STARTUP;
 
 /**
  * Mixin targeting the {@link NarratorManager} class to allow users to enable all narrations that pass through the
@@ -54,7 +68,11 @@ import static com.casewalker.narratechat.NarrateChatMod.LOGGER;
  * </ul>
  * Some users believe "Narrates All" is too noisy, while choosing one of the other two options leaves out chat messages
  * which they would like to have narrated. Thus, this mixin enables narration on all messages which come to the
- * {@link NarratorManager} through the chat.
+ * {@link NarratorManager} through the chat, or, in the custom modes of
+ * {@link com.casewalker.narratechat.config.NarrateChatConfig#narrationModes}, on the kinds of messages they route.
+ * <p>
+ * Narrations are never spoken on the client thread, they are handed to a {@link NarrationDispatcher} which speaks them
+ * on its own worker thread.
  *
  * @author Case Walker
  */
@@ -68,52 +86,205 @@ public abstract class NarratorManagerMixin implements ForcedNarratorManager {
     @Shadow
     abstract protected void debugPrintMessage(String var1);
 
+    /**
+     * Dispatcher speaking the narrations, null until {@link #narrationDispatcherInit} has built it.
+     */
+    @Unique
+    private volatile NarrationDispatcher narrationDispatcher;
+
+    /**
+     * Builds the {@link #narrationDispatcher} in the background, since starting a backend may take a while.
+     */
+    @Unique
+    private LazyInit<NarrationDispatcher> narrationDispatcherInit;
+
+    /**
+     * The latest config passed to {@link #applyConfig(NarrateChatConfig)}, which the dispatcher is built with.
+     */
+    @Unique
+    private volatile NarrateChatConfig pendingConfig;
+
+    /**
+     * Routes which a chat message may end up in, tested against the routing mask of the current mode.
+     */
+    @Unique
+    private static final int CHAT_ROUTES = NarrationRoute.typeMask(NarrationType.CHAT);
+
+    /**
+     * The current narrator mode, kept up to date by {@link #onOnModeChange(NarratorMode, CallbackInfo)} so that the
+     * hot path never has to look up the option. Null until first resolved.
+     */
+    @Unique
+    private volatile NarratorMode cachedNarratorMode;
+
+    /**
+     * Routing mask of the {@link #cachedNarratorMode}, see {@link NarrationModes}.
+     */
+    @Unique
+    private volatile int cachedRouting;
+
     @Shadow
     private NarratorMode getNarratorOption() {
         throw new AssertionError("Shadowed method wrapper 'getNarratorOption' should not run");
     }
 
     /**
-     * Wrapper method to make testing easy and provide the answer this mod cares about, whether the current narrator
-     * option is equal to the custom ALL_CHAT mode.
+     * Wrapper method to make testing easy and provide the answer this mod cares about, which messages the current
+     * narrator option narrates. The mask is cached with the mode, so after the first call this is a single field read,
+     * and callers only need one bitwise test against a {@link NarrationRoute} mask.
      *
-     * @return The result of {@link #getNarratorOption()} == ALL_CHAT
+     * @return The routing mask of {@link #getNarratorOption()}, zero if the mode is not one of this mod's
      */
     @VisibleForTesting
-    boolean narratorModeIsAllChat() {
-        return getNarratorOption().equals(Util.allChat());
+    int narrationRouting() {
+        if (cachedNarratorMode == null) {
+            selectNarratorMode(resolveNarratorMode());
+        }
+        return cachedRouting;
     }
 
     /**
-     * Inject custom logic at the end of {@link NarratorManager#NarratorManager} in order to initialize the config.
+     * Cache a narrator mode and its routing mask, and narrate only its routes from now on.
+     *
+     * @param mode The narrator mode
+     */
+    @Unique
+    private void selectNarratorMode(final NarratorMode mode) {
+        final int routing = NarrationModes.routingOf(mode);
+        synchronized (this) {
+            this.cachedRouting = routing;
+            this.cachedNarratorMode = mode;
+            if (this.narrationDispatcher != null) {
+                this.narrationDispatcher.setRouting(routing);
+            }
+        }
+    }
+
+    /**
+     * Get the dispatcher if it is built, and start building it otherwise.
+     *
+     * @return The dispatcher, or null if narrations should go to the vanilla narrator for now
+     */
+    @Unique
+    private NarrationDispatcher readyDispatcher() {
+        final NarrationDispatcher dispatcher = this.narrationDispatcher;
+        if (dispatcher == null && this.narrationDispatcherInit != null) {
+            this.narrationDispatcherInit.start();
+        }
+        return dispatcher;
+    }
+
+    /**
+     * Wrapper method to make testing easy, look up the current narrator option. Options loaded from disk at startup do
+     * not trigger {@link NarratorManager#onModeChange(NarratorMode)}, so the cache is filled from here the first time.
+     *
+     * @return The result of {@link #getNarratorOption()}
+     */
+    @VisibleForTesting
+    NarratorMode resolveNarratorMode() {
+        return getNarratorOption();
+    }
+
+    /**
+     * Inject custom logic at the end of {@link NarratorManager#NarratorManager} in order to prepare the {@link
+     * NarrationDispatcher}. It is only built once the game has started (see {@link #initializeInBackground()}) or when
+     * it is first needed, so the game's startup does not wait for the backend.
      *
      * @param ci {@link CallbackInfo} used by SpongePowered
      */
     @Inject(method = "<init>*", at = @At("RETURN"))
     public void onInit(final CallbackInfo ci) {
-        LOGGER.info("This line is printed by the Narrate Chat Mod mixin!");
+        this.pendingConfig = NarrateChatConfig.get();
+        this.narrationDispatcherInit = new LazyInit<>("narration dispatcher", () -> {
+            final NarrateChatConfig config = this.pendingConfig;
+            final NarrationDispatcher dispatcher = new NarrationDispatcher(
+                    NarrationBackends.create(config, this.narrator), config,
+                    () -> MinecraftClient.getInstance().getSession().getUsername());
+            dispatcher.start();
+            return dispatcher;
+        }, this::onDispatcherReady, STARTUP);
+    }
+
+    /**
+     * Put a newly built dispatcher to use, catching up with mode and config changes made while it was being built.
+     *
+     * @param dispatcher The started dispatcher
+     */
+    @Unique
+    private void onDispatcherReady(final NarrationDispatcher dispatcher) {
+        synchronized (this) {
+            if (this.cachedNarratorMode != null) {
+                dispatcher.setRouting(this.cachedRouting);
+            }
+            this.narrationDispatcher = dispatcher;
+        }
+        if (this.pendingConfig != dispatcher.config()) {
+            applyConfig(this.pendingConfig);
+        }
+        LOGGER.info("Narrate Chat Mod narration dispatcher started");
+    }
+
+    /**
+     * Inject at the head of {@link NarratorManager#onModeChange(NarratorMode)}, which runs whenever the narrator option
+     * changes, whether from the options screen or from the keybind cycling through the modes, to update the cached
+     * mode. Switching to a mode which narrates fewer kinds of messages (e.g. from ALL_CHAT to a vanilla mode) stops the
+     * narration, so the backlog of messages the user just turned off is not read.
+     * <p>
+     * The keybind may land on a placeholder for an unused id, see {@link NarratorModeMixin}, which is skipped by moving
+     * on to the next listed mode.
+     *
+     * @param mode The new narrator mode
+     * @param ci CallbackInfo used by SpongePowered
+     */
+    @Inject(method = "onModeChange", at = @At("HEAD"), cancellable = true)
+    public void onOnModeChange(final NarratorMode mode, final CallbackInfo ci) {
+        if (NarrationModes.isPlaceholder(mode)) {
+            // The keybind steps to the next id, which may be unused; setting the option again announces the next mode
+            MinecraftClient.getInstance().options.getNarrator().setValue(NarrationModes.listedAfter(mode));
+            ci.cancel();
+            return;
+        }
+        final int previousRouting = narrationRouting();
+        selectNarratorMode(mode);
+        if ((previousRouting & ~cachedRouting) != 0) {
+            stopNarration();
+        }
     }
 
     /**
      * Inject a narration override at the head of {@link
      * NarratorManager#narrateChatMessage(Supplier)}. Force it to narrate all chat and system
-     * messages (removing interrupts), and then skip the code of the real method.
+     * messages (removing interrupts) by queueing them on the {@link NarrationDispatcher}, and then skip the code of the
+     * real method.
      *
      * @param messageSupplier Text (supplied) to optionally narrate from the Minecraft chat
      * @param ci CallbackInfo used by SpongePowered
      */
     @Inject(method = "narrateChatMessage", at = @At("HEAD"), cancellable = true)
     public void onNarrateChatMessage(final Supplier<Text> messageSupplier, final CallbackInfo ci) {
+        METRICS.increment(Counter.RECEIVED);
 
-        // If the NarratorMode is anything other than the custom ALL_CHAT, exit without cancelling
-        if (!narratorModeIsAllChat()) {
+        // If the NarratorMode is not one of this mod's modes narrating chat, exit without cancelling
+        if ((narrationRouting() & CHAT_ROUTES) == 0) {
             return;
         }
 
-        // Copied from NarratorManager#narrateChatMessage. TODO Why is there no 'this.narrator.active()' check?
-        final String string = messageSupplier.get().getString();
-        this.debugPrintMessage(string);
-        this.narrator.say(string, false);
+        // Copied from NarratorManager#narrateChatMessage. Like vanilla, there is no 'this.narrator.active()' check: an
+        // inactive narrator ignores what it is asked to say, and speech which should end early is cut off through
+        // stopNarration() and the dispatcher's stale utterance limit instead
+        // The supplier reads game state, so it is resolved here; flattening and filtering happen on other threads
+        final Text message = messageSupplier.get();
+        // Only build the message string for the debug print when it will actually be printed
+        if (SharedConstants.isDevelopment) {
+            this.debugPrintMessage(message.getString());
+        }
+        final NarrationDispatcher dispatcher = readyDispatcher();
+        if (dispatcher == null) {
+            // Until the dispatcher is ready, narrate the way vanilla does
+            this.narrator.say(message.getString(), false);
+        } else {
+            dispatcher.submit(new Narration(() -> message, NarrationType.CHAT, false, System.nanoTime()));
+        }
 
         // If the mixin has performed narration, then cancel the Minecraft call to NarratorManager#narrateChatMessage
         ci.cancel();
@@ -122,23 +293,86 @@ public abstract class NarratorManagerMixin implements ForcedNarratorManager {
     /**
      * Inject a narration override at the head of {@link NarratorManager#narrate(String)}. The real method would always
      * exit if the {@link NarratorMode} was CHAT, and all system messages which this mod cares about are already handled
-     * in {@link NarratorManager#narrateChatMessage(Supplier)}, thus when the ALL_CHAT mode is active, this method
-     * should also exit and force the real method to be cancelled as well.
+     * in {@link NarratorManager#narrateChatMessage(Supplier)}, thus when ALL_CHAT or a custom mode is active, this
+     * method should also exit and force the real method to be cancelled as well.
      *
      * @param text Text to be conditionally narrated
      * @param ci CallbackInfo used by SpongePowered
      */
     @Inject(method = "narrate(Ljava/lang/String;)V", at = @At("HEAD"), cancellable = true)
     public void onNarrate(final String text, final CallbackInfo ci) {
-        if (narratorModeIsAllChat()) {
+        if (narrationRouting() != 0) {
             ci.cancel();
         }
     }
 
     @Override
-    public void forceNarrateOnMode(final Text text) {
-        if (narratorModeIsAllChat()) {
+    public void forceNarrateOnMode(final Text text, final NarrationType type) {
+        if ((narrationRouting() & NarrationRoute.typeMask(type)) == 0) {
+            return;
+        }
+        final NarrationDispatcher dispatcher = readyDispatcher();
+        if (dispatcher == null) {
             this.narrator.say(text.getString(), false);
+        } else {
+            dispatcher.submit(new Narration(() -> text, type, false, System.nanoTime()));
+        }
+    }
+
+    @Override
+    public void stopNarration() {
+        final NarrationDispatcher dispatcher = this.narrationDispatcher;
+        if (dispatcher == null) {
+            this.narrator.clear();
+        } else {
+            dispatcher.cancel();
+        }
+    }
+
+    @Override
+    public void onChatClosed() {
+        final NarrationDispatcher dispatcher = this.narrationDispatcher;
+        final NarrateChatConfig config = dispatcher == null ? this.pendingConfig : dispatcher.config();
+        if (config != null && config.stopOnChatClose) {
+            stopNarration();
+        }
+    }
+
+    @Override
+    public int replayHistory(final int count) {
+        final NarrationDispatcher dispatcher = readyDispatcher();
+        return dispatcher == null ? 0 : dispatcher.replay(HISTORY.recent(count));
+    }
+
+    @Override
+    public void initializeInBackground() {
+        if (this.narrationDispatcherInit != null) {
+            this.narrationDispatcherInit.start();
+        }
+    }
+
+    @Override
+    public void applyConfig(final NarrateChatConfig config) {
+        this.pendingConfig = config;
+        final NarrationDispatcher dispatcher = this.narrationDispatcher;
+        if (dispatcher == null) {
+            // The dispatcher will be built with this config
+            return;
+        }
+        final boolean sameBackend = NarrationBackends.sameBackend(dispatcher.config(), config);
+        dispatcher.reconfigure(config);
+        if (!sameBackend) {
+            // Starting a backend may spawn a process or map the audio cache, which must not stall the client thread.
+            // A later config which wants yet another backend has queued its own switch, so this one is skipped.
+            LazyInit.execute(() -> {
+                if (NarrationBackends.sameBackend(config, this.pendingConfig)) {
+                    dispatcher.setBackend(NarrationBackends.create(config, this.narrator));
+                }
+            });
+        }
+        // The routes of the custom modes may have changed
+        if (this.cachedNarratorMode != null) {
+            selectNarratorMode(this.cachedNarratorMode);
         }
     }
 }
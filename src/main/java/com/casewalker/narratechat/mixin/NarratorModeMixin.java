@@ -24,6 +24,9 @@
 package com.casewalker.narratechat.mixin;
 
 import com.casewalker.modutils.util.NarratorModeMixinHelperParent;
+import com.casewalker.narratechat.config.NarrateChatConfig;
+import com.casewalker.narratechat.config.NarrationModeConfig;
+import com.casewalker.narratechat.narration.NarrationModes;
 import com.casewalker.narratechat.util.Util;
 import net.minecraft.client.option.NarratorMode;
 import org.spongepowered.asm.mixin.Final;
@@ -33,8 +36,21 @@ import org.spongepowered.asm.mixin.Shadow;
 import org.spongepowered.asm.mixin.Unique;
 import org.spongepowered.asm.mixin.gen.Invoker;
 
+import java.util.Arrays;
+
 /**
- * Mixin to add a new {@link NarratorMode}. Utilizing the {@link NarratorModeMixinHelperParent} class internally.
+ * Mixin to add new {@link NarratorMode}s: ALL_CHAT and the custom modes of
+ * {@link NarrateChatConfig#narrationModes}. Utilizing the {@link NarratorModeMixinHelperParent} class internally.
+ * <p>
+ * Minecraft saves the mode by id and looks it up by its index in <code>VALUES</code>, so a mode's id must be its index.
+ * Custom modes are added in order of their configured id, and every other id up to
+ * {@link NarrateChatConfig#MAX_NARRATION_MODE_ID}, e.g. that of a mode which was removed from the config, is filled
+ * with a placeholder which narrates nothing. Since <code>VALUES</code> always has the same length, a saved id never
+ * wraps around to another mode across restarts. The placeholders are only added to <code>VALUES</code>, not to
+ * {@link NarratorMode#values()}, so the narrator button never offers them, and the keybind skips them, see
+ * {@link NarratorManagerMixin#onOnModeChange}.
+ * <p>
+ * The mod initializer loads the config before the game options, and with them this enum, are loaded.
  *
  * @author Case Walker
  */
@@ -86,6 +102,17 @@ public abstract class NarratorModeMixin {
     private static final NarratorMode ALL_CHAT =
             addNarratorMode("ALL_CHAT", Util.ALL_CHAT_ID, "options.narrator.all_chat");
 
+    static {
+        final NarrationModeConfig[] modes = NarrationModes.layout(NarrateChatConfig.get());
+        for (int id = Util.ALL_CHAT_ID + 1; id < modes.length; id++) {
+            if (modes[id] != null) {
+                addNarratorMode("NARRATECHAT_" + id, id, modes[id].name);
+            } else {
+                addPlaceholder(id);
+            }
+        }
+    }
+
     /**
      * Invoke the constructor of the {@link NarratorMode} enum.
      */
@@ -117,4 +144,17 @@ public abstract class NarratorModeMixin {
         field_18183 = (NarratorMode[]) output[1];
         return        (NarratorMode)   output[2];
     }
+
+    /**
+     * Fill an unused id with a mode which Minecraft treats like "off", without listing it in {@link
+     * NarratorMode#values()}.
+     *
+     * @param id The unused id
+     */
+    private static void addPlaceholder(final int id) {
+        final NarratorMode placeholder =
+                invokeInit("NARRATECHAT_UNUSED_" + id, Util.PLACEHOLDER_ORDINALS + id, id, "options.narrator.off");
+        VALUES = Arrays.copyOf(VALUES, VALUES.length + 1);
+        VALUES[VALUES.length - 1] = placeholder;
+    }
 }
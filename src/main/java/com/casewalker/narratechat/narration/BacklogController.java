@@ -0,0 +1,153 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.narration;
+
+import com.casewalker.narratechat.config.NarrateChatConfig;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides how hard the {@link NarrationDispatcher} works to catch up when chat arrives faster than it can be spoken.
+ * <p>
+ * The controller looks at the number of waiting narrations and the estimated time it would take to speak them, and
+ * escalates through the {@link Level}s as the configured thresholds are crossed. To avoid flapping around a threshold,
+ * a level is only left once the backlog has fallen below half of its threshold, and every level is left as soon as
+ * the lanes are empty. The controller keeps no clock of its own, so it behaves the same in simulations.
+ *
+ * @author Case Walker
+ */
+public class BacklogController {
+
+    /**
+     * How far behind the narration is, from least to most drastic countermeasures.
+     */
+    public enum Level {
+
+        /**
+         * Narrate normally.
+         */
+        NORMAL,
+
+        /**
+         * Ask the backend to speak faster.
+         */
+        FAST,
+
+        /**
+         * Also shorten messages to their first few words.
+         */
+        ABBREVIATE,
+
+        /**
+         * Also skip to the newest message of each lane which is not personal.
+         */
+        SKIP
+    }
+
+    private static final Level[] LEVELS = Level.values();
+
+    /**
+     * Backlog, in nanoseconds of estimated speech, at which each level above {@link Level#NORMAL} starts. Zero disables
+     * a level's time threshold.
+     */
+    private final long[] thresholds;
+    private final int skipDepth;
+    private final int abbreviatedWords;
+
+    private Level level = Level.NORMAL;
+
+    /**
+     * @param config Config providing the thresholds
+     */
+    public BacklogController(final NarrateChatConfig config) {
+        this.thresholds = new long[] {
+                TimeUnit.MILLISECONDS.toNanos((long) (config.backlogFastSeconds * 1000)),
+                TimeUnit.MILLISECONDS.toNanos((long) (config.backlogAbbreviateSeconds * 1000)),
+                TimeUnit.MILLISECONDS.toNanos((long) (config.backlogSkipSeconds * 1000))
+        };
+        this.skipDepth = config.backlogSkipDepth;
+        this.abbreviatedWords = config.abbreviatedWords;
+    }
+
+    /**
+     * Update the level for the current backlog.
+     *
+     * @param depth Number of narrations waiting in the lanes
+     * @param backlogNanos Estimated time needed to speak the waiting narrations, including the one being spoken
+     * @return The new level
+     */
+    public Level update(final int depth, final long backlogNanos) {
+        if (depth == 0) {
+            level = Level.NORMAL;
+        } else {
+            final int target = levelFor(depth, backlogNanos, 1);
+            final int hold = Math.min(level.ordinal(), levelFor(depth, backlogNanos, 2));
+            level = LEVELS[Math.max(target, hold)];
+        }
+        return level;
+    }
+
+    public Level level() {
+        return level;
+    }
+
+    /**
+     * Shorten a message to its first few words if the current level calls for it.
+     *
+     * @param text Text to speak
+     * @return The text, or its first words
+     */
+    public String abbreviate(final String text) {
+        if (level.compareTo(Level.ABBREVIATE) < 0) {
+            return text;
+        }
+        int words = 0;
+        boolean inWord = false;
+        for (int i = 0; i < text.length(); i++) {
+            final boolean whitespace = Character.isWhitespace(text.charAt(i));
+            if (whitespace && inWord && ++words == abbreviatedWords) {
+                return text.substring(0, i);
+            }
+            inWord = !whitespace;
+        }
+        return text;
+    }
+
+    /**
+     * @param divisor 1 for the thresholds to reach a level, 2 for the thresholds to stay at it
+     * @return The ordinal of the highest level whose threshold is reached
+     */
+    private int levelFor(final int depth, final long backlogNanos, final int divisor) {
+        // Halved thresholds are kept above zero, which every backlog would reach, so that a level is always left
+        if (skipDepth > 0 && depth >= Math.max(1, skipDepth / divisor)) {
+            return Level.SKIP.ordinal();
+        }
+        for (int i = thresholds.length - 1; i >= 0; i--) {
+            if (thresholds[i] > 0 && backlogNanos >= Math.max(1, thresholds[i] / divisor)) {
+                return i + 1;
+            }
+        }
+        return Level.NORMAL.ordinal();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.narration;
+
+/**
+ * Short-lived cache of recently submitted narrations, used to make sure a message which reaches the narrator through
+ * more than one path (e.g. both {@link net.minecraft.client.util.NarratorManager#narrateChatMessage} and {@link
+ * com.casewalker.narratechat.interfaces.ForcedNarratorManager#forceNarrateOnMode}) is only narrated once.
+ * <p>
+ * The cache is a fixed-size ring of message hashes and timestamps held in primitive arrays, so checking a message
+ * never allocates. Entries older than the window are ignored and eventually overwritten. Instances are not
+ * thread-safe.
+ *
+ * @author Case Walker
+ */
+public class DuplicateFilter {
+
+    private static final int SIZE = 32;
+
+    private final long[] hashes = new long[SIZE];
+    private final long[] times = new long[SIZE];
+    private final long windowNanos;
+    private int next;
+    private int filled;
+
+    /**
+     * @param windowNanos How long a message is remembered, in nanoseconds. Zero or less disables the filter.
+     */
+    public DuplicateFilter(final long windowNanos) {
+        this.windowNanos = windowNanos;
+    }
+
+    /**
+     * Check whether a message was seen within the window, and remember it if it was not.
+     *
+     * @param hash Hash of the message text
+     * @param now Current time, from {@link System#nanoTime()}
+     * @return True if the same message was seen within the window
+     */
+    public boolean isDuplicate(final long hash, final long now) {
+        if (windowNanos <= 0) {
+            return false;
+        }
+        for (int i = 0; i < filled; i++) {
+            if (hashes[i] == hash && now - times[i] <= windowNanos) {
+                return true;
+            }
+        }
+        hashes[next] = hash;
+        times[next] = now;
+        next = (next + 1) % SIZE;
+        filled = Math.min(filled + 1, SIZE);
+        return false;
+    }
+}
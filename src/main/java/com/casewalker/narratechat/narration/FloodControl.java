@@ -0,0 +1,177 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.narration;
+
+import com.casewalker.narratechat.config.NarrateChatConfig;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Flood control for busy chats, applied to every narration before it is queued and again before it is spoken.
+ * <p>
+ * Three mechanisms keep the narration backlog, and with it the delay until the newest message is heard, bounded:
+ * <ul>
+ *     <li>Near-identical messages which arrive while an earlier copy is still waiting to be spoken, within the
+ *     coalescing window, are merged into the waiting narration and spoken once with a repeat count</li>
+ *     <li>Token buckets limit the rate of narrations, both per sender and globally. Messages addressed to the player
+ *     personally (see {@link NarrationPriority#isPersonal()}) skip both limits, and messages without a sender, such
+ *     as system and game messages, skip the per-sender limit</li>
+ *     <li>Narrations which have waited longer than the maximum age are dropped instead of spoken, with a separate and
+ *     usually shorter limit for low priority narrations</li>
+ * </ul>
+ * {@link #admit(Narration, long)} must only be called from one thread at a time (the dispatcher serializes it), while
+ * the other methods are called by the narration worker.
+ *
+ * @author Case Walker
+ */
+public class FloodControl {
+
+    /**
+     * Outcome of offering a narration to the flood control.
+     */
+    public enum Admission {
+        /** The narration should be queued. */
+        ACCEPTED,
+        /** The narration was merged into an identical narration which is already waiting. */
+        MERGED,
+        /** The narration was dropped by a rate limit. */
+        RATE_LIMITED
+    }
+
+    private static final int MAX_TRACKED_SENDERS = 256;
+
+    private final long coalesceWindowNanos;
+    private final long maxAgeNanos;
+    private final long lowPriorityMaxAgeNanos;
+    private final String coalescedFormat;
+    private final double senderBurst;
+    private final double senderRate;
+    private final TokenBucket globalBucket;
+
+    private final Map<Long, Narration> waiting = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> senderBuckets = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, TokenBucket> eldest) {
+            return size() > MAX_TRACKED_SENDERS;
+        }
+    };
+
+    /**
+     * Create flood control with the settings from the given config.
+     *
+     * @param config Config to read the settings from
+     * @param now Current time, from {@link System#nanoTime()}
+     */
+    public FloodControl(final NarrateChatConfig config, final long now) {
+        this.coalesceWindowNanos = TimeUnit.MILLISECONDS.toNanos(config.coalesceWindowMillis);
+        this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(config.maxNarrationAgeMillis);
+        this.lowPriorityMaxAgeNanos = TimeUnit.MILLISECONDS.toNanos(config.lowPriorityMaxAgeMillis);
+        this.coalescedFormat = config.coalescedFormat;
+        this.senderBurst = config.senderBurst;
+        this.senderRate = config.senderRatePerSecond;
+        this.globalBucket = config.globalRatePerSecond > 0
+                ? new TokenBucket(config.globalBurst, config.globalRatePerSecond, now)
+                : null;
+    }
+
+    /**
+     * Decide whether a narration should be queued.
+     *
+     * @param narration Narration to check
+     * @param now Current time, from {@link System#nanoTime()}
+     * @return Whether the narration was accepted, merged or rate limited
+     */
+    public Admission admit(final Narration narration, final long now) {
+        if (coalesceWindowNanos > 0) {
+            final Narration earlier = waiting.get(narration.similarityHash());
+            if (earlier != null && now - earlier.receivedAt() <= coalesceWindowNanos && earlier.merge()) {
+                return Admission.MERGED;
+            }
+        }
+
+        if (!narration.priority().isPersonal()
+                && (!acquireSenderToken(narration.sender(), now)
+                        || (globalBucket != null && !globalBucket.tryAcquire(now)))) {
+            return Admission.RATE_LIMITED;
+        }
+
+        if (coalesceWindowNanos > 0) {
+            waiting.put(narration.similarityHash(), narration);
+        }
+        return Admission.ACCEPTED;
+    }
+
+    /**
+     * @param narration Narration about to be spoken
+     * @param now Current time, from {@link System#nanoTime()}
+     * @return True if the narration waited so long that it should be dropped instead of spoken
+     */
+    public boolean isExpired(final Narration narration, final long now) {
+        final long age = now - narration.receivedAt();
+        return (maxAgeNanos > 0 && age > maxAgeNanos)
+                || (lowPriorityMaxAgeNanos > 0 && !narration.priority().isPersonal() && age > lowPriorityMaxAgeNanos);
+    }
+
+    /**
+     * Claim a narration for speaking and get the text to speak, including the repeat count of merged messages.
+     *
+     * @param narration Narration about to be spoken
+     * @return Text to speak
+     */
+    public String release(final Narration narration) {
+        final int repeats = narration.claim();
+        waiting.remove(narration.similarityHash(), narration);
+        return repeats > 1 ? String.format(coalescedFormat, narration.text(), repeats) : narration.text();
+    }
+
+    /**
+     * Claim a narration which will not be spoken, so that no further messages are merged into it. Every narration which
+     * was accepted must eventually be either released or forgotten.
+     *
+     * @param narration Narration being dropped
+     */
+    public void forget(final Narration narration) {
+        narration.claim();
+        waiting.remove(narration.similarityHash(), narration);
+    }
+
+    /**
+     * Take a token from the sender's bucket. Messages without a sender are not limited per sender, since they have
+     * nothing in common but the lack of a name.
+     */
+    private boolean acquireSenderToken(final String sender, final long now) {
+        if (senderRate <= 0 || sender == null) {
+            return true;
+        }
+        TokenBucket bucket = senderBuckets.get(sender);
+        if (bucket == null) {
+            bucket = new TokenBucket(senderBurst, senderRate, now);
+            senderBuckets.put(sender, bucket);
+        }
+        return bucket.tryAcquire(now);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.narration;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.TreeMap;
+
+/**
+ * Case-insensitive multi-keyword matcher using the Aho-Corasick algorithm.
+ * <p>
+ * All keywords are compiled once into an automaton, so checking a message costs a single pass over its characters no
+ * matter how many keywords there are. The automaton is stored in flat arrays and matching never allocates. Instances
+ * are immutable and thread-safe.
+ *
+ * @author Case Walker
+ */
+public class KeywordMatcher {
+
+    private static final int ROOT = 0;
+
+    /**
+     * Sorted transition characters of every state.
+     */
+    private final char[][] transitionChars;
+
+    /**
+     * Target states matching {@link #transitionChars}.
+     */
+    private final int[][] transitionTargets;
+
+    private final int[] failure;
+    private final boolean[] matches;
+
+    /**
+     * Compile the given keywords. Blank keywords are ignored.
+     *
+     * @param keywords Keywords to match
+     */
+    public KeywordMatcher(final Collection<String> keywords) {
+        final List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        final List<Boolean> terminal = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        terminal.add(false);
+
+        for (String keyword : keywords) {
+            if (keyword == null || keyword.isBlank()) {
+                continue;
+            }
+            int state = ROOT;
+            for (char c : keyword.toCharArray()) {
+                final char lower = Character.toLowerCase(c);
+                Integer next = trie.get(state).get(lower);
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new TreeMap<>());
+                    terminal.add(false);
+                    trie.get(state).put(lower, next);
+                }
+                state = next;
+            }
+            terminal.set(state, true);
+        }
+
+        final int states = trie.size();
+        transitionChars = new char[states][];
+        transitionTargets = new int[states][];
+        failure = new int[states];
+        matches = new boolean[states];
+        for (int state = 0; state < states; state++) {
+            final TreeMap<Character, Integer> children = trie.get(state);
+            transitionChars[state] = new char[children.size()];
+            transitionTargets[state] = new int[children.size()];
+            int i = 0;
+            for (var child : children.entrySet()) {
+                transitionChars[state][i] = child.getKey();
+                transitionTargets[state][i] = child.getValue();
+                i++;
+            }
+            matches[state] = terminal.get(state);
+        }
+
+        // Breadth-first pass to link every state to the longest proper suffix which is also a prefix of some keyword
+        final Queue<Integer> queue = new ArrayDeque<>();
+        for (int child : transitionTargets[ROOT]) {
+            failure[child] = ROOT;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            final int state = queue.poll();
+            for (int i = 0; i < transitionChars[state].length; i++) {
+                final char c = transitionChars[state][i];
+                final int child = transitionTargets[state][i];
+                int fallback = failure[state];
+                while (fallback != ROOT && next(fallback, c) < 0) {
+                    fallback = failure[fallback];
+                }
+                final int target = next(fallback, c);
+                failure[child] = target >= 0 ? target : ROOT;
+                matches[child] |= matches[failure[child]];
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * @return True if no keywords were compiled, in which case nothing ever matches
+     */
+    public boolean isEmpty() {
+        return transitionChars[ROOT].length == 0;
+    }
+
+    /**
+     * Check whether any keyword occurs in the text, ignoring case.
+     *
+     * @param text Text to search
+     * @return True if at least one keyword occurs in the text
+     */
+    public boolean matches(final CharSequence text) {
+        int state = ROOT;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            final char c = Character.toLowerCase(text.charAt(i));
+            int target = next(state, c);
+            while (target < 0 && state != ROOT) {
+                state = failure[state];
+                target = next(state, c);
+            }
+            state = target < 0 ? ROOT : target;
+            if (matches[state]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int next(final int state, final char c) {
+        final int index = Arrays.binarySearch(transitionChars[state], c);
+        return index < 0 ? -1 : transitionTargets[state][index];
+    }
+}
@@ -0,0 +1,365 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.narration;
+
+import com.casewalker.narratechat.config.NarrateChatConfig;
+import com.casewalker.narratechat.util.Util;
+import com.google.common.annotations.VisibleForTesting;
+import net.minecraft.text.Text;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+import static com.casewalker.narratechat.NarrateChatMod.LOGGER;
+
+/**
+ * Detects the language of chat messages, so that each one can be spoken by a voice of its language (see the
+ * <code>languageBackendCommands</code> setting).
+ * <p>
+ * A message is classified by comparing its character trigrams with the trigram profiles of a few languages. The
+ * profiles are built once, the first time a message is classified, from sample text shipped with the mod. They are kept
+ * as log-probabilities in one float array indexed by hashed trigram, so scoring a message only walks its characters.
+ * <p>
+ * Players rarely switch languages, so the language found for a sender is remembered together with a confidence which
+ * decays over time and with every message it is reused for. While the confidence is high, the sender's messages are not
+ * classified at all. Once it has decayed, the next message is classified again, which either confirms the language or
+ * replaces it. Messages too short to tell, like "gg", keep the sender's last known language. Messages without a sender
+ * are Minecraft's own and are spoken with the default voice.
+ * <p>
+ * Used by the preprocessing threads, so the sender cache is synchronized, but classifying runs outside of its lock.
+ *
+ * @author Case Walker
+ */
+final class LanguageDetector {
+
+    /**
+     * Resource holding the sample text, one line per sample, with the language code and the text separated by a tab.
+     */
+    private static final String SAMPLES = "/assets/narratechatmod/languages.txt";
+
+    private static final int BUCKET_BITS = 12;
+    private static final int BUCKETS = 1 << BUCKET_BITS;
+
+    /**
+     * Messages with fewer trigrams than this are too short to classify.
+     */
+    private static final int MIN_TRIGRAMS = 6;
+
+    /**
+     * Lead of the best language over the runner-up, in average log-probability per trigram, at which a classification
+     * counts as certain. Smaller leads give proportionally smaller confidences.
+     */
+    private static final double CERTAIN_LEAD = 0.6;
+
+    /**
+     * Classifications less confident than this do not name a language.
+     */
+    private static final double MIN_CONFIDENCE = 0.15;
+
+    /**
+     * A sender's language is reused without classifying while its decayed confidence is at least this.
+     */
+    private static final double TRUSTED_CONFIDENCE = 0.5;
+
+    /**
+     * Factor by which the confidence in a sender's language decays each time it is reused.
+     */
+    private static final double REUSE_DECAY = 0.9;
+
+    private static final long HALF_LIFE_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    private static final int MAX_SENDERS = 256;
+
+    private final boolean enabled;
+    private final AtomicInteger classifications = new AtomicInteger();
+    private final LinkedHashMap<String, Known> senders = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Known> eldest) {
+            return size() > MAX_SENDERS;
+        }
+    };
+
+    /**
+     * @param config Config saying whether to detect languages
+     */
+    LanguageDetector(final NarrateChatConfig config) {
+        this.enabled = config.languageDetection;
+    }
+
+    /**
+     * @return Whether languages are detected
+     */
+    boolean enabled() {
+        return enabled;
+    }
+
+    /**
+     * @return The number of messages classified so far, rather than given their sender's known language
+     */
+    @VisibleForTesting
+    int classifications() {
+        return classifications.get();
+    }
+
+    /**
+     * Find the language of a narration, from its sender's known language while that is trusted, or by classifying it.
+     *
+     * @param narration Narration to look at
+     * @param now Current time in nanoseconds
+     * @return The language code, e.g. "de", or null if the narration has no sender or its language is unknown
+     */
+    String languageOf(final Narration narration, final long now) {
+        final String sender = narration.sender();
+        if (sender == null) {
+            return null;
+        }
+        synchronized (senders) {
+            final Known known = senders.get(sender);
+            if (known != null) {
+                final double confidence = known.confidenceAt(now);
+                if (confidence >= TRUSTED_CONFIDENCE) {
+                    known.update(known.language, confidence * REUSE_DECAY, now);
+                    return Model.INSTANCE.languages[known.language];
+                }
+            }
+        }
+
+        classifications.incrementAndGet();
+        final Detection detection = classify(textOf(narration));
+        synchronized (senders) {
+            Known known = senders.get(sender);
+            if (detection != null) {
+                if (known == null) {
+                    known = new Known();
+                    known.update(detection.language, detection.confidence, now);
+                    senders.put(sender, known);
+                } else if (known.language == detection.language) {
+                    known.update(known.language, Math.min(1, known.confidenceAt(now) + detection.confidence), now);
+                } else if (detection.confidence >= known.confidenceAt(now)) {
+                    known.update(detection.language, detection.confidence, now);
+                }
+            }
+            return known == null ? null : Model.INSTANCE.languages[known.language];
+        }
+    }
+
+    /**
+     * Classify a text on its own.
+     *
+     * @param text Text to classify
+     * @return The language code, or null if the text is too short or too ambiguous to tell
+     */
+    @VisibleForTesting
+    static String detect(final CharSequence text) {
+        final Detection detection = classify(text);
+        return detection == null ? null : Model.INSTANCE.languages[detection.language];
+    }
+
+    /**
+     * Score a text against every language.
+     *
+     * @param text Text to classify
+     * @return The best language and the confidence in it, or null if the text is too short or too ambiguous to tell
+     */
+    private static Detection classify(final CharSequence text) {
+        final Model model = Model.INSTANCE;
+        if (model.languages.length < 2) {
+            return null;
+        }
+        final double[] scores = new double[model.languages.length];
+        final int trigrams = model.score(text, scores);
+        if (trigrams < MIN_TRIGRAMS) {
+            return null;
+        }
+        int best = 0;
+        double second = Double.NEGATIVE_INFINITY;
+        for (int language = 1; language < scores.length; language++) {
+            if (scores[language] > scores[best]) {
+                second = scores[best];
+                best = language;
+            } else if (scores[language] > second) {
+                second = scores[language];
+            }
+        }
+        final double confidence = Math.min(1, (scores[best] - second) / trigrams / CERTAIN_LEAD);
+        return confidence >= MIN_CONFIDENCE ? new Detection(best, confidence) : null;
+    }
+
+    /**
+     * @return What the sender of a chat message wrote, without their name and the message's decoration
+     */
+    private static CharSequence textOf(final Narration narration) {
+        final Text message = narration.message();
+        final Object content = message == null ? null : Util.messageArgumentOf(message);
+        if (content instanceof Text text) {
+            return text.getString();
+        }
+        return content != null ? String.valueOf(content) : narration.plainText();
+    }
+
+    /**
+     * Walk the character trigrams of a text, lower-cased, with every run of non-letters collapsed into one space and
+     * the text surrounded by spaces, so that the beginnings and ends of words form trigrams of their own.
+     *
+     * @param text Text to walk
+     * @param buckets Receives the hashed bucket of each trigram
+     * @return The number of trigrams
+     */
+    private static int trigrams(final CharSequence text, final IntConsumer buckets) {
+        int count = 0;
+        char first = 0;
+        char second = ' ';
+        for (int i = 0; i <= text.length(); i++) {
+            final char c = i == text.length() || !Character.isLetter(text.charAt(i))
+                    ? ' ' : Character.toLowerCase(text.charAt(i));
+            if (c == ' ' && second == ' ') {
+                continue;
+            }
+            if (first != 0) {
+                final long key = (long) first << 32 | (long) second << 16 | c;
+                buckets.accept((int) (key * 0x9E3779B97F4A7C15L >>> (64 - BUCKET_BITS)));
+                count++;
+            }
+            first = second;
+            second = c;
+        }
+        return count;
+    }
+
+    /**
+     * Result of classifying a text.
+     */
+    private static final class Detection {
+        private final int language;
+        private final double confidence;
+
+        Detection(final int language, final double confidence) {
+            this.language = language;
+            this.confidence = confidence;
+        }
+    }
+
+    /**
+     * Confidence in the language of a sender, as of a point in time.
+     */
+    private static final class Known {
+        private int language;
+        private double confidence;
+        private long at;
+
+        void update(final int language, final double confidence, final long at) {
+            this.language = language;
+            this.confidence = confidence;
+            this.at = at;
+        }
+
+        double confidenceAt(final long now) {
+            return confidence * Math.pow(0.5, (double) Math.max(0, now - at) / HALF_LIFE_NANOS);
+        }
+    }
+
+    /**
+     * Trigram profiles of the languages, loaded the first time a message is classified.
+     */
+    private static final class Model {
+        private static final Model INSTANCE = load();
+
+        private final String[] languages;
+
+        /**
+         * Log-probability of each trigram bucket in each language, the languages of a bucket next to each other.
+         */
+        private final float[] logProbabilities;
+
+        private Model(final String[] languages, final float[] logProbabilities) {
+            this.languages = languages;
+            this.logProbabilities = logProbabilities;
+        }
+
+        /**
+         * Add up the log-probabilities of a text's trigrams in each language.
+         *
+         * @param text Text to score
+         * @param scores Receives the score of each language
+         * @return The number of trigrams
+         */
+        int score(final CharSequence text, final double[] scores) {
+            final int count = languages.length;
+            return trigrams(text, bucket -> {
+                final int offset = bucket * count;
+                for (int language = 0; language < count; language++) {
+                    scores[language] += logProbabilities[offset + language];
+                }
+            });
+        }
+
+        private static Model load() {
+            final Map<String, List<String>> samples = new LinkedHashMap<>();
+            try (InputStream stream = LanguageDetector.class.getResourceAsStream(SAMPLES)) {
+                if (stream == null) {
+                    throw new IOException("Missing resource " + SAMPLES);
+                }
+                final BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    final int tab = line.indexOf('\t');
+                    if (line.startsWith("#") || tab < 0) {
+                        continue;
+                    }
+                    samples.computeIfAbsent(line.substring(0, tab), language -> new ArrayList<>())
+                            .add(line.substring(tab + 1));
+                }
+            } catch (IOException e) {
+                LOGGER.error("Could not load the language samples, languages will not be detected", e);
+            }
+
+            final String[] languages = samples.keySet().toArray(new String[0]);
+            final int[] counts = new int[BUCKETS * languages.length];
+            final float[] logProbabilities = new float[counts.length];
+            for (int language = 0; language < languages.length; language++) {
+                final int index = language;
+                int total = 0;
+                for (String sample : samples.get(languages[language])) {
+                    total += trigrams(sample, bucket -> counts[bucket * languages.length + index]++);
+                }
+                // Add-one smoothing, so trigrams missing from the samples only count against a language
+                final double denominator = total + BUCKETS;
+                for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                    final int slot = bucket * languages.length + language;
+                    logProbabilities[slot] = (float) Math.log((counts[slot] + 1) / denominator);
+                }
+            }
+            return new Model(languages, logProbabilities);
+        }
+    }
+}
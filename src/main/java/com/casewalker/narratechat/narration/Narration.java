@@ -0,0 +1,308 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.narration;
+
+import com.casewalker.narratechat.util.Util;
+import net.minecraft.text.Text;
+import net.minecraft.text.TranslatableTextContent;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * A single message waiting to be narrated.
+ * <p>
+ * The message is kept as the {@link Text} it arrived as. Its hashes are computed from a reused buffer via {@link
+ * NarrationText#flattenToBuffer(Text)}, and the {@link String} to speak is only built by {@link #text()} once the
+ * narration worker commits to speaking it, so messages which are filtered or dropped never produce any strings.
+ * <p>
+ * Near-identical messages which arrive while a narration is still waiting in the queue are merged into it instead of
+ * being queued separately, which is tracked by the narration's repeat count. Once the narration worker {@link #claim()
+ * claims} a narration, no further messages can be merged into it.
+ * <p>
+ * If the user has a {@link NarrationTemplate} for the message's translation key, the filled-in template is spoken
+ * instead of the message. If the template leaves out the sender, the sender is still part of the hashes, so that the
+ * same words from different players are neither dropped as duplicates nor merged.
+ *
+ * @author Case Walker
+ */
+public final class Narration {
+
+    /**
+     * Index of the argument of a chat message which holds its sender, see {@link Util#senderArgumentOf(Text)}.
+     */
+    private static final int SENDER_ARGUMENT = 0;
+
+    private final Supplier<Text> messageSupplier;
+    private final NarrationType type;
+    private final boolean interrupt;
+    private final long receivedAt;
+    private final AtomicInteger repeats = new AtomicInteger(1);
+
+    private Text message;
+    private NarrationTemplate template;
+    private String text;
+    private String sender;
+    private boolean senderResolved;
+    private boolean hashed;
+    private long hash;
+    private long similarityHash;
+    private int length;
+    private NarrationPriority priority = NarrationPriority.CHAT;
+    private boolean replay;
+    private String language;
+
+    /**
+     * Create a narration for a message which has not been built yet. The supplier is called at most once, the first
+     * time the message is needed.
+     *
+     * @param messageSupplier Supplier of the message to speak
+     * @param type Type of the message
+     * @param interrupt Whether speaking this text should interrupt the narrator
+     * @param receivedAt Time the message was received, from {@link System#nanoTime()}
+     */
+    public Narration(
+            final Supplier<Text> messageSupplier,
+            final NarrationType type,
+            final boolean interrupt,
+            final long receivedAt) {
+        this.messageSupplier = messageSupplier;
+        this.type = type;
+        this.interrupt = interrupt;
+        this.receivedAt = receivedAt;
+    }
+
+    /**
+     * Create a narration for a message which is already plain text.
+     *
+     * @param text Text to speak
+     * @param sender Name of the player who sent the message, or null for messages without a sender
+     * @param type Type of the message
+     * @param interrupt Whether speaking this text should interrupt the narrator
+     * @param receivedAt Time the message was received, from {@link System#nanoTime()}
+     */
+    public Narration(
+            final String text,
+            final String sender,
+            final NarrationType type,
+            final boolean interrupt,
+            final long receivedAt) {
+        this.messageSupplier = null;
+        this.type = type;
+        this.text = text;
+        this.sender = sender;
+        this.senderResolved = true;
+        this.interrupt = interrupt;
+        this.receivedAt = receivedAt;
+    }
+
+    /**
+     * @return The message, or null if this narration was created from plain text
+     */
+    public Text message() {
+        if (message == null && messageSupplier != null) {
+            message = messageSupplier.get();
+        }
+        return message;
+    }
+
+    /**
+     * Get the plain text to speak, flattening the message the first time this is called.
+     *
+     * @return The text to speak
+     */
+    public String text() {
+        if (text == null) {
+            text = flatten().toString();
+        }
+        return text;
+    }
+
+    /**
+     * Get the plain text of the message without building a string. Unless {@link #text()} has already been called,
+     * this is this thread's reused buffer from {@link NarrationText#flattenToBuffer(Text)}, which is only valid until
+     * the next flattening on the same thread.
+     *
+     * @return The plain text of the message
+     */
+    public CharSequence plainText() {
+        final CharSequence flattened = text != null ? text : flatten();
+        if (!hashed) {
+            hash = Util.hash(flattened);
+            similarityHash = Util.normalizedHash(flattened);
+            length = flattened.length();
+            if (template != null && !template.uses(SENDER_ARGUMENT) && sender() != null) {
+                // The sender is not part of the spoken text, but the same words from two players are not duplicates
+                final long senderHash = Util.hash(sender()) * 0x9E3779B97F4A7C15L;
+                hash ^= senderHash;
+                similarityHash ^= senderHash;
+            }
+            hashed = true;
+        }
+        return flattened;
+    }
+
+    /**
+     * @return Name of the player who sent the message, or null for messages without a sender
+     */
+    public String sender() {
+        if (!senderResolved) {
+            sender = Util.senderOf(message());
+            senderResolved = true;
+        }
+        return sender;
+    }
+
+    /**
+     * Use the user's template for the message, if there is one. Must be called before the text is first needed.
+     *
+     * @param templates The user's templates
+     * @return False if the template mutes the message
+     */
+    boolean applyTemplate(final NarrationTemplates templates) {
+        if (text != null) {
+            return true;
+        }
+        final NarrationTemplate found = templates.forMessage(message());
+        if (found != null && found.isMuted()) {
+            return false;
+        }
+        template = found;
+        return true;
+    }
+
+    public NarrationType type() {
+        return type;
+    }
+
+    public NarrationPriority priority() {
+        return priority;
+    }
+
+    /**
+     * @param priority Priority lane assigned by the {@link PriorityClassifier}
+     */
+    void setPriority(final NarrationPriority priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * @return Code of the language the message is written in, or null if it is unknown or was not detected
+     */
+    public String language() {
+        return language;
+    }
+
+    /**
+     * @param language Language found by the {@link LanguageDetector}
+     */
+    void setLanguage(final String language) {
+        this.language = language;
+    }
+
+    public boolean interrupt() {
+        return interrupt;
+    }
+
+    /**
+     * @return True if this narration repeats a message from the {@link NarrationHistory}
+     */
+    public boolean isReplay() {
+        return replay;
+    }
+
+    void markReplay() {
+        this.replay = true;
+    }
+
+    public long receivedAt() {
+        return receivedAt;
+    }
+
+    /**
+     * @return The {@link Util#hash(CharSequence) hash} of the text
+     */
+    public long hash() {
+        if (!hashed) {
+            plainText();
+        }
+        return hash;
+    }
+
+    /**
+     * @return The {@link Util#normalizedHash(CharSequence) normalized hash} of the text, equal for near-identical
+     * messages
+     */
+    public long similarityHash() {
+        if (!hashed) {
+            plainText();
+        }
+        return similarityHash;
+    }
+
+    /**
+     * @return The plain text of the message or its template, in this thread's reused buffer
+     */
+    private CharSequence flatten() {
+        if (template != null) {
+            return NarrationText.fillToBuffer(template, ((TranslatableTextContent) message().getContent()).getArgs());
+        }
+        return NarrationText.flattenToBuffer(message());
+    }
+
+    /**
+     * @return The number of characters of the plain text
+     */
+    public int length() {
+        if (!hashed) {
+            plainText();
+        }
+        return length;
+    }
+
+    /**
+     * Merge one more occurrence of this message into the narration.
+     *
+     * @return True if the occurrence was merged, false if the narration has already been claimed for speaking
+     */
+    boolean merge() {
+        int current;
+        do {
+            current = repeats.get();
+            if (current < 0) {
+                return false;
+            }
+        } while (!repeats.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * Claim the narration for speaking, preventing any further merges.
+     *
+     * @return The number of occurrences of this message which were merged into the narration, including itself
+     */
+    int claim() {
+        return Math.max(1, repeats.getAndSet(-1));
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.narration;
+
+import com.casewalker.narratechat.config.NarrateChatConfig;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges consecutive short narrations into a single utterance. Every call to a text-to-speech engine has a fixed cost
+ * (start-up, prosody reset, inter-process round trips), and chat tends to arrive in bursts of short lines, so speaking
+ * a burst as one utterance is both cheaper and sounds more natural.
+ * <p>
+ * The worker holds the first narration of a burst back for at most the batch window, counted from when the message was
+ * received, unless enough text to fill a batch is already waiting. Personal messages are never held back. Batches are
+ * joined with a sentence break unless a message already ends in punctuation.
+ *
+ * @author Case Walker
+ */
+class NarrationBatcher {
+
+    private static final String SENTENCE_BREAK = ". ";
+    private static final String SPACE = " ";
+
+    private final long windowNanos;
+    private final int maxChars;
+
+    /**
+     * @param config Config providing the batch window and size
+     */
+    NarrationBatcher(final NarrateChatConfig config) {
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(config.batchWindowMillis);
+        this.maxChars = config.batchMaxChars;
+    }
+
+    /**
+     * Decide how much longer to wait for more messages before speaking.
+     *
+     * @param head The narration which would be spoken next, or null if there is none
+     * @param waitingChars Number of characters waiting in all lanes
+     * @param now Current time in nanoseconds
+     * @return How long to wait, or zero to speak now
+     */
+    long holdFor(final Narration head, final long waitingChars, final long now) {
+        if (head == null || maxChars <= 0 || windowNanos <= 0 || head.priority().isPersonal()
+                || waitingChars >= maxChars) {
+            return 0;
+        }
+        return Math.max(0, head.receivedAt() + windowNanos - now);
+    }
+
+    /**
+     * @param batchLength Length of the batch so far
+     * @param next Narration which might be added to the batch
+     * @return True if the narration fits into the batch
+     */
+    boolean fits(final int batchLength, final Narration next) {
+        return maxChars > 0 && batchLength + SENTENCE_BREAK.length() + next.length() <= maxChars;
+    }
+
+    /**
+     * Append a message to a batch, separated from the previous message.
+     *
+     * @param batch Batch so far, not empty
+     * @param text Message to append
+     */
+    static void append(final StringBuilder batch, final String text) {
+        final char last = batch.charAt(batch.length() - 1);
+        batch.append(last == '.' || last == '!' || last == '?' || last == ',' || last == ';' || last == ':'
+                ? SPACE : SENTENCE_BREAK);
+        batch.append(text);
+    }
+}
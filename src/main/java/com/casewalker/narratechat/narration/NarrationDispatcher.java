@@ -0,0 +1,734 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.narration;
+
+import com.casewalker.narratechat.backend.NarrationBackend;
+import com.casewalker.narratechat.config.NarrateChatConfig;
+import com.casewalker.narratechat.config.QueueOverflowPolicy;
+import com.casewalker.narratechat.metrics.NarrationMetrics.Counter;
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import static com.casewalker.narratechat.NarrateChatMod.HISTORY;
+import static com.casewalker.narratechat.NarrateChatMod.LOGGER;
+import static com.casewalker.narratechat.NarrateChatMod.METRICS;
+
+/**
+ * Dispatcher which moves calls to {@link NarrationBackend#say(String, boolean)} off of the client thread.
+ * <p>
+ * The mixins only {@link #submit(Narration) submit} narrations. Messages whose translation key the user has muted or
+ * shortened with {@link NarrationTemplates} are dropped or rewritten first. Messages rejected by the user's {@link
+ * NarrationFilter} and messages which were already submitted through another path (see {@link DuplicateFilter}) are
+ * dropped, and the rest pass through {@link FloodControl}, which merges repeated messages and applies rate limits.
+ * Accepted narrations are classified by a {@link PriorityClassifier} and placed on the bounded {@link NarrationQueue}
+ * of their {@link NarrationPriority} lane. When a lane is full, the configured {@link QueueOverflowPolicy} decides
+ * which narrations are discarded.
+ * <p>
+ * A dedicated daemon worker thread takes narrations off of the highest non-empty lane and hands them to the {@link
+ * NarrationBackend}, so slow text-to-speech calls never land on the render thread. Since the backend keeps its own
+ * queue, the worker holds narrations back until the previous one has most likely been spoken, based on an estimated
+ * speaking rate. This keeps the backlog in the lanes, where higher priority messages can skip ahead of it and stale
+ * messages can be dropped. When the backlog still grows, a {@link BacklogController} speeds the backend up, shortens
+ * messages and finally skips ahead to the newest messages, until the backlog has cleared. Bursts of short messages are
+ * spoken as one utterance by the {@link NarrationBatcher}. If enabled, the {@link LanguageDetector} finds the language
+ * of each chat message while it is prepared, and the worker switches the backend to a voice of that language.
+ *
+ * @author Case Walker
+ */
+public class NarrationDispatcher {
+
+    private static final String THREAD_NAME = "Narrate Chat Narrator";
+
+    /**
+     * Upper bound on how long the idle worker sleeps before re-checking the queue, in case a wake-up is missed.
+     */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * How long {@link #stop()} waits for the worker to finish the narration it is handing to the backend.
+     */
+    private static final long STOP_TIMEOUT_MILLIS = 1000;
+
+    private static final NarrationPriority[] PRIORITIES = NarrationPriority.values();
+
+    private final NarrationQueue<Narration>[] lanes;
+    private final Supplier<String> playerName;
+    private final LongSupplier clock;
+
+    private volatile NarrationProfile profile;
+    private volatile boolean voicesSupported;
+    private volatile Thread worker;
+    private volatile boolean running;
+
+    /**
+     * Threads preparing submitted narrations, or null to prepare them on the submitting thread.
+     */
+    private volatile NarrationPipeline pipeline;
+
+    /**
+     * Number of preprocessing threads to start, fixed like the queue capacity.
+     */
+    private final int preprocessingThreads;
+
+    /**
+     * Mask of the {@link NarrationRoute routes} narrated in the current narrator mode.
+     */
+    private volatile int routing = NarrationRoute.ALL;
+
+    /**
+     * Guards the stateful stages of {@link #admit(Narration)}, which may be reached from several preprocessing threads.
+     */
+    private final Object admitLock = new Object();
+
+    /**
+     * Backend which speaks the narrations, only used by the worker once it is running.
+     */
+    private NarrationBackend backend;
+
+    /**
+     * Backend waiting to replace the current one, see {@link #setBackend(NarrationBackend)}.
+     */
+    private final AtomicReference<NarrationBackend> nextBackend = new AtomicReference<>();
+
+    /**
+     * Set by {@link #cancel()}, so that the worker stops the speech and clears the lanes before anything else.
+     */
+    private final AtomicBoolean cancelRequested = new AtomicBoolean();
+
+    /**
+     * Number of characters of the narrations waiting in the lanes.
+     */
+    private final AtomicLong queuedChars = new AtomicLong();
+
+    /**
+     * Time at which the backend is estimated to finish the last narration, only used by the worker.
+     */
+    private long busyUntil;
+
+    /**
+     * Speaking rate the backend speaks at, relative to normal, only used by the worker.
+     */
+    private float rate = 1;
+
+    /**
+     * Speaking rate last asked of the backend, which may not support it, only used by the worker.
+     */
+    private float requestedRate = 1;
+
+    /**
+     * Voice the backend was asked to use, only used by the worker.
+     */
+    private int voice = SpeakerVoices.DEFAULT_VOICE;
+
+    /**
+     * Language the backend was asked to speak, null for its default voice, only used by the worker.
+     */
+    private String language;
+
+    /**
+     * Time the oldest message of the utterance being spoken was received, only used by the worker. Together with {@link
+     * #busyUntil} this tracks the utterance in flight.
+     */
+    private long utteranceReceivedAt;
+
+    /**
+     * Create a dispatcher which is not yet running. Call {@link #start()} to begin narrating on the worker thread.
+     *
+     * @param backend Backend which will speak the submitted narrations
+     * @param config Config providing the queue, filter, flood control and priority settings
+     * @param playerName Supplier of the player's own name, used to detect mentions
+     */
+    public NarrationDispatcher(
+            final NarrationBackend backend,
+            final NarrateChatConfig config,
+            final Supplier<String> playerName) {
+        this(backend, config, playerName, System::nanoTime);
+    }
+
+    /**
+     * Create a dispatcher with a custom clock.
+     *
+     * @param backend Backend which will speak the submitted narrations
+     * @param config Config providing the queue, filter, flood control and priority settings
+     * @param playerName Supplier of the player's own name, used to detect mentions
+     * @param clock Source of the current time in nanoseconds, like {@link System#nanoTime()}
+     */
+    @VisibleForTesting
+    @SuppressWarnings("unchecked")
+    NarrationDispatcher(
+            final NarrationBackend backend,
+            final NarrateChatConfig config,
+            final Supplier<String> playerName,
+            final LongSupplier clock) {
+        this.backend = backend;
+        this.lanes = new NarrationQueue[PRIORITIES.length];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new NarrationQueue<>(config.queueCapacity);
+        }
+        this.preprocessingThreads = config.preprocessingThreads;
+        this.playerName = playerName;
+        this.clock = clock;
+        this.voicesSupported = backend.supportsVoices();
+        this.profile = new NarrationProfile(config, playerName, voicesSupported, clock.getAsLong());
+    }
+
+    /**
+     * Switch to the settings of another config, e.g. the profile of the server the player joined. The new settings
+     * are compiled on the calling thread and swapped in atomically. The queue capacity cannot change while running.
+     * The backlog level starts over at normal, and the worker adjusts the speaking rate to it on its next iteration.
+     *
+     * @param config Config to use from now on, must not be modified afterwards
+     */
+    public synchronized void reconfigure(final NarrateChatConfig config) {
+        profile = new NarrationProfile(config, playerName, voicesSupported, clock.getAsLong());
+    }
+
+    /**
+     * Narrate only the messages of some routes from now on, e.g. because the narrator mode changed. Messages which are
+     * already queued are not affected.
+     *
+     * @param routing Mask of the {@link NarrationRoute routes} to narrate
+     */
+    public void setRouting(final int routing) {
+        this.routing = routing;
+    }
+
+    /**
+     * @return The config the dispatcher currently uses
+     */
+    public NarrateChatConfig config() {
+        return profile.config;
+    }
+
+    /**
+     * Replace the backend. A running worker switches over before speaking its next narration and closes the old
+     * backend, so that a narration is never handed to a closed backend. If the new backend differs in its support for
+     * voices, the settings are compiled again.
+     *
+     * @param replacement New backend
+     */
+    public synchronized void setBackend(final NarrationBackend replacement) {
+        if (replacement.supportsVoices() != voicesSupported) {
+            voicesSupported = replacement.supportsVoices();
+            reconfigure(profile.config);
+        }
+        if (running) {
+            final NarrationBackend unused = nextBackend.getAndSet(replacement);
+            if (unused != null) {
+                unused.close();
+            }
+            LockSupport.unpark(worker);
+        } else {
+            backend.close();
+            backend = replacement;
+        }
+    }
+
+    /**
+     * Start the worker thread and the preprocessing threads. Calling this more than once has no effect.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        if (preprocessingThreads > 0) {
+            pipeline = new NarrationPipeline(preprocessingThreads, this::admit);
+        }
+        METRICS.setQueueDepth(this::pending);
+        final Thread thread = new Thread(this::runWorker, THREAD_NAME);
+        thread.setDaemon(true);
+        worker = thread;
+        thread.start();
+    }
+
+    /**
+     * Stop the worker thread, discard any narrations which have not been spoken yet and close the backend. The backend
+     * is only closed once the worker has stopped, so that it is not used after it was closed.
+     */
+    public synchronized void stop() {
+        running = false;
+        final NarrationPipeline stages = pipeline;
+        pipeline = null;
+        if (stages != null) {
+            stages.stop();
+        }
+        final Thread thread = worker;
+        worker = null;
+        if (thread != null && thread != Thread.currentThread()) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(STOP_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (thread.isAlive()) {
+                LOGGER.warn("Narration worker did not stop within {} ms, closing the backend anyway",
+                        STOP_TIMEOUT_MILLIS);
+            }
+        }
+        for (NarrationQueue<Narration> lane : lanes) {
+            for (Narration dropped = poll(lane); dropped != null; dropped = poll(lane)) {
+                discard(dropped);
+            }
+        }
+        final NarrationBackend unused = nextBackend.getAndSet(null);
+        if (unused != null) {
+            unused.close();
+        }
+        backend.close();
+    }
+
+    /**
+     * Queue a narration to be spoken by the worker thread. This never blocks. Once the dispatcher is started, the
+     * narration is only handed to a preprocessing thread, so the message must already be captured (the supplier must
+     * not touch game state) and the result only says whether it was accepted for preprocessing. Before that, or with
+     * {@code preprocessingThreads} set to zero, it is prepared on the calling thread.
+     *
+     * @param narration Narration to queue
+     * @return True if the narration was queued, false if it was filtered, a duplicate, merged, rate limited or
+     * discarded because its lane was full
+     */
+    public boolean submit(final Narration narration) {
+        final NarrationPipeline stages = pipeline;
+        if (stages == null) {
+            return admit(narration);
+        }
+        if (!stages.offer(narration)) {
+            overflow(narration);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Run a narration through the templates, filters, routing, language detection and flood control, then queue it in
+     * its lane. The stages which only read the profile or lock on their own run in parallel; the stateful ones are
+     * serialized.
+     */
+    private boolean admit(final Narration narration) {
+        final NarrationProfile profile = this.profile;
+        if (!narration.applyTemplate(profile.templates)) {
+            METRICS.increment(Counter.FILTERED);
+            return false;
+        }
+        final CharSequence plainText = narration.plainText();
+        if (!profile.filter.allows(narration.type(), narration.sender(), plainText)) {
+            METRICS.increment(Counter.FILTERED);
+            return false;
+        }
+        narration.setPriority(profile.classifier.classify(narration, plainText));
+        if ((routing & NarrationRoute.of(narration).bit()) == 0) {
+            METRICS.increment(Counter.FILTERED);
+            return false;
+        }
+        if (profile.languages.enabled()) {
+            narration.setLanguage(profile.languages.languageOf(narration, clock.getAsLong()));
+        }
+        synchronized (admitLock) {
+            return enqueue(profile, narration);
+        }
+    }
+
+    private boolean enqueue(final NarrationProfile profile, final Narration narration) {
+        final long now = clock.getAsLong();
+        if (profile.duplicateFilter.isDuplicate(narration.hash(), now)) {
+            METRICS.increment(Counter.DUPLICATE);
+            return false;
+        }
+        switch (profile.floodControl.admit(narration, now)) {
+            case MERGED -> {
+                METRICS.increment(Counter.MERGED);
+                return false;
+            }
+            case RATE_LIMITED -> {
+                METRICS.increment(Counter.RATE_LIMITED);
+                return false;
+            }
+        }
+        return offer(profile, narration);
+    }
+
+    /**
+     * Speak messages from the {@link NarrationHistory} again. They skip the filters and flood control, go ahead of
+     * everything else waiting and interrupt the current narration.
+     *
+     * @param entries Entries to replay, oldest first
+     * @return The number of entries queued
+     */
+    public int replay(final List<NarrationHistory.Entry> entries) {
+        final NarrationProfile profile = this.profile;
+        final long now = clock.getAsLong();
+        int queued = 0;
+        synchronized (admitLock) {
+            for (NarrationHistory.Entry entry : entries) {
+                final Narration narration =
+                        new Narration(entry.text(), entry.sender(), entry.type(), queued == 0, now);
+                narration.markReplay();
+                narration.setPriority(NarrationPriority.MENTION);
+                if (offer(profile, narration)) {
+                    queued++;
+                }
+            }
+        }
+        return queued;
+    }
+
+    /**
+     * Put an admitted narration into its lane, applying the overflow policy, and wake up the worker.
+     */
+    private boolean offer(final NarrationProfile profile, final Narration narration) {
+        final NarrationQueue<Narration> lane = lanes[narration.priority().ordinal()];
+        final boolean accepted = switch (profile.overflowPolicy) {
+            case DROP_NEWEST -> lane.offer(narration);
+            case DROP_OLDEST -> {
+                while (!lane.offer(narration)) {
+                    overflow(poll(lane));
+                }
+                yield true;
+            }
+            case COLLAPSE -> {
+                while (!lane.offer(narration)) {
+                    for (Narration dropped = poll(lane); dropped != null; dropped = poll(lane)) {
+                        overflow(dropped);
+                    }
+                }
+                yield true;
+            }
+        };
+
+        if (accepted) {
+            queuedChars.addAndGet(narration.length());
+        } else {
+            overflow(narration);
+        }
+        final Thread thread = worker;
+        if (accepted && thread != null) {
+            LockSupport.unpark(thread);
+        }
+        return accepted;
+    }
+
+    /**
+     * Speak every narration currently waiting in the lanes on the calling thread, in priority order and without
+     * waiting for the estimated speaking time.
+     *
+     * @return The number of narrations taken off of the lanes
+     */
+    @VisibleForTesting
+    public int drain() {
+        if (cancelRequested.getAndSet(false)) {
+            cancelPending();
+        }
+        int spoken = 0;
+        while (speakNext(PRIORITIES.length, false)) {
+            spoken++;
+        }
+        return spoken;
+    }
+
+    /**
+     * @return The number of narrations waiting to be spoken in all lanes
+     */
+    public int pending() {
+        int pending = 0;
+        for (NarrationQueue<Narration> lane : lanes) {
+            pending += lane.size();
+        }
+        return pending;
+    }
+
+    /**
+     * @return The current level of the {@link BacklogController}
+     */
+    public BacklogController.Level backlogLevel() {
+        return profile.backlogController.level();
+    }
+
+    /**
+     * Perform one iteration of the worker: adjust to the backlog, then speak the next narration unless the backend is
+     * still busy.
+     *
+     * @return How long the worker may sleep before the next iteration, or zero to continue immediately
+     */
+    @VisibleForTesting
+    long step() {
+        final NarrationBackend replacement = nextBackend.getAndSet(null);
+        if (replacement != null) {
+            backend.close();
+            backend = replacement;
+            rate = 1;
+            requestedRate = 1;
+            voice = SpeakerVoices.DEFAULT_VOICE;
+            language = null;
+        }
+        if (cancelRequested.getAndSet(false)) {
+            cancelPending();
+        }
+        final NarrationProfile profile = this.profile;
+        final long now = clock.getAsLong();
+        long busyFor = busyUntil - now;
+        if (busyFor > 0 && profile.staleUtteranceNanos > 0 && now - utteranceReceivedAt > profile.staleUtteranceNanos) {
+            // Nobody wants to hear the end of a message from half a minute ago
+            backend.clear();
+            busyUntil = now;
+            busyFor = 0;
+        }
+        adjustToBacklog(profile, busyFor);
+        if (busyFor > 0) {
+            // While the backend is busy, only personal messages may cut in, and only if they may interrupt, or if they
+            // ask to interrupt, like a replay the player requested
+            final Narration head = lanes[NarrationPriority.MENTION.ordinal()].peek();
+            final boolean mayInterrupt = profile.priorityInterrupts || (head != null && head.interrupt());
+            if (!mayInterrupt || !speakNext(NarrationPriority.WHISPER.ordinal() + 1, true)) {
+                return Math.min(busyFor, IDLE_PARK_NANOS);
+            }
+            return 0;
+        }
+        final long hold = profile.batcher.holdFor(peek(), queuedChars.get(), now);
+        if (hold > 0) {
+            return Math.min(hold, IDLE_PARK_NANOS);
+        }
+        return speakNext(PRIORITIES.length, false) ? 0 : IDLE_PARK_NANOS;
+    }
+
+    /**
+     * @return The narration at the head of the highest non-empty lane, or null if all lanes are empty
+     */
+    private Narration peek() {
+        for (NarrationQueue<Narration> lane : lanes) {
+            final Narration head = lane.peek();
+            if (head != null) {
+                return head;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Update the {@link BacklogController} with the estimated time needed to speak everything which is waiting, and
+     * change the backend's speaking rate when the controller's level calls for it.
+     *
+     * @param profile Current settings
+     * @param busyFor Estimated time until the backend finishes the current narration
+     */
+    private void adjustToBacklog(final NarrationProfile profile, final long busyFor) {
+        final long backlog = (long) (Math.max(0, queuedChars.get()) * profile.nanosPerChar / rate)
+                + Math.max(0, busyFor);
+        final BacklogController.Level previous = profile.backlogController.level();
+        final BacklogController.Level level = profile.backlogController.update(pending(), backlog);
+        if (level != previous) {
+            LOGGER.debug("Narration backlog level changed from {} to {}", previous, level);
+        }
+        // Compared on every step rather than on level changes, since a new profile starts over at the normal level
+        final float wanted = level == BacklogController.Level.NORMAL ? 1 : profile.fastRate;
+        if (wanted != requestedRate) {
+            requestedRate = wanted;
+            try {
+                rate = backend.setRate(wanted) ? wanted : 1;
+            } catch (RuntimeException e) {
+                LOGGER.error("Narration backend failed to change the speaking rate", e);
+            }
+        }
+    }
+
+    /**
+     * Take the next narration off of the highest non-empty lane and speak it, unless it has expired. Further
+     * narrations of the same lane which fit into a batch are spoken along with it.
+     *
+     * @param laneCount Only look at this many of the highest priority lanes
+     * @param interrupt Whether to interrupt the backend
+     * @return True if a narration was taken off of a lane, false if the lanes were empty
+     */
+    private boolean speakNext(final int laneCount, final boolean interrupt) {
+        final NarrationProfile profile = this.profile;
+        Narration narration = null;
+        int lane = 0;
+        for (; lane < laneCount && narration == null; lane++) {
+            narration = poll(lanes[lane]);
+        }
+        if (narration == null) {
+            return false;
+        }
+        if (profile.backlogController.level() == BacklogController.Level.SKIP
+                && !narration.priority().isPersonal()) {
+            for (Narration newer = poll(lanes[lane - 1]); newer != null; newer = poll(lanes[lane - 1])) {
+                METRICS.increment(Counter.SKIPPED);
+                discard(narration);
+                narration = newer;
+            }
+        }
+
+        final long now = clock.getAsLong();
+        if (profile.floodControl.isExpired(narration, now)) {
+            METRICS.increment(Counter.EXPIRED);
+            discard(narration);
+            return true;
+        }
+        try {
+            String text = spokenText(profile, narration);
+            final boolean interrupting = interrupt || narration.interrupt();
+            final int narrationVoice = profile.voices.voiceOf(narration);
+            StringBuilder batch = null;
+            if (!interrupting) {
+                final NarrationQueue<Narration> source = lanes[lane - 1];
+                for (Narration next = source.peek(); next != null
+                        && profile.batcher.fits(batch == null ? text.length() : batch.length(), next)
+                        && profile.voices.sameVoice(narration, next)
+                        && Objects.equals(narration.language(), next.language());
+                        next = source.peek()) {
+                    final Narration taken = poll(source);
+                    if (taken == null) {
+                        break;
+                    }
+                    if (profile.floodControl.isExpired(taken, now)) {
+                        METRICS.increment(Counter.EXPIRED);
+                        discard(taken);
+                        continue;
+                    }
+                    if (batch == null) {
+                        batch = new StringBuilder(text);
+                    }
+                    NarrationBatcher.append(batch, spokenText(profile, taken));
+                    METRICS.recordNarrated(taken.receivedAt(), now);
+                }
+            }
+            if (batch != null) {
+                text = batch.toString();
+            }
+            if (narrationVoice != voice) {
+                backend.setVoice(narrationVoice, profile.voices.count());
+                voice = narrationVoice;
+            }
+            if (!Objects.equals(narration.language(), language)) {
+                backend.setLanguage(narration.language());
+                language = narration.language();
+            }
+            utteranceReceivedAt = narration.receivedAt();
+            backend.say(text, interrupting, batch == null && narration.type() != NarrationType.CHAT);
+            METRICS.recordNarrated(narration.receivedAt(), clock.getAsLong());
+            busyUntil = now + (long) (text.length() * profile.nanosPerChar / rate);
+        } catch (RuntimeException e) {
+            LOGGER.error("Narration backend failed to speak a queued narration", e);
+        }
+        return true;
+    }
+
+    /**
+     * Release a narration from flood control, record it in the {@link NarrationHistory} and shorten it if the backlog
+     * calls for it.
+     *
+     * @param profile Current settings
+     * @param narration Narration about to be spoken
+     * @return The text to speak
+     */
+    private String spokenText(final NarrationProfile profile, final Narration narration) {
+        final String released = profile.floodControl.release(narration);
+        if (!narration.isReplay()) {
+            HISTORY.record(narration.type(), narration.sender(), released, System.currentTimeMillis());
+        }
+        return narration.priority().isPersonal() ? released : profile.backlogController.abbreviate(released);
+    }
+
+    /**
+     * Take a narration off of a lane, keeping count of the waiting characters.
+     *
+     * @param lane Lane to poll
+     * @return The narration, or null if the lane is empty
+     */
+    private Narration poll(final NarrationQueue<Narration> lane) {
+        final Narration narration = lane.poll();
+        if (narration != null) {
+            queuedChars.addAndGet(-narration.length());
+        }
+        return narration;
+    }
+
+    /**
+     * Stop the current speech and drop every waiting narration, e.g. because the player left the server. The worker
+     * does this before speaking anything else.
+     */
+    public void cancel() {
+        cancelRequested.set(true);
+        final Thread thread = worker;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Carry out a {@link #cancel()} on the worker.
+     */
+    private void cancelPending() {
+        for (NarrationQueue<Narration> lane : lanes) {
+            for (Narration dropped = poll(lane); dropped != null; dropped = poll(lane)) {
+                METRICS.increment(Counter.CANCELLED);
+                discard(dropped);
+            }
+        }
+        backend.clear();
+        busyUntil = clock.getAsLong();
+    }
+
+    /**
+     * Drop a narration without speaking it.
+     *
+     * @param narration Narration to drop, may be null
+     */
+    private void discard(final Narration narration) {
+        if (narration != null) {
+            profile.floodControl.forget(narration);
+        }
+    }
+
+    /**
+     * Drop a narration because its lane was full.
+     *
+     * @param narration Narration to drop, may be null
+     */
+    private void overflow(final Narration narration) {
+        if (narration != null) {
+            METRICS.increment(Counter.OVERFLOWED);
+            discard(narration);
+        }
+    }
+
+    private void runWorker() {
+        while (running) {
+            final long park = step();
+            if (park > 0) {
+                LockSupport.parkNanos(this, park);
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.narration;
+
+import com.casewalker.narratechat.config.NarrateChatConfig;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
+
+import static com.casewalker.narratechat.NarrateChatMod.LOGGER;
+
+/**
+ * User-configurable filter deciding which messages are narrated at all.
+ * <p>
+ * The filter checks, in order of cost:
+ * <ul>
+ *     <li>Whether the {@link NarrationType} of the message is enabled</li>
+ *     <li>The sender allow and deny lists</li>
+ *     <li>Muted keywords, all compiled into a single {@link KeywordMatcher}</li>
+ *     <li>Muted regular expressions, compiled into a single combined {@link Pattern} where possible</li>
+ * </ul>
+ * Everything is compiled once when the filter is created. Keywords are matched in a single pass over the text however
+ * many there are. The combined regular expression saves creating and running a matcher per rule, but it is still an
+ * alternation which the regex engine tries branch by branch at every position, so its cost grows with the number of
+ * expressions. Expressions which cannot be isolated in a branch are matched on their own: backreferences would be
+ * renumbered, and inline flags and quotes would change how the following branches are parsed. Instances are immutable
+ * and can be shared between threads.
+ *
+ * @author Case Walker
+ */
+public class NarrationFilter {
+
+    /**
+     * A numbered or named backreference, i.e. <code>\1</code> or <code>\k&lt;name&gt;</code> after an even number of
+     * other backslashes.
+     */
+    private static final Pattern BACKREFERENCE = Pattern.compile("(?<!\\\\)(?:\\\\\\\\)*\\\\(?:[1-9]|k<)");
+
+    /**
+     * Inline flags, i.e. <code>(?x)</code> or <code>(?i-s:</code>, or the start of a quote <code>\Q</code>, after an
+     * even number of other backslashes. Their effect reaches past the end of a branch, e.g. <code>(?x)</code> makes a
+     * <code>#</code> comment out the rest of the alternation.
+     */
+    private static final Pattern SPILLING =
+            Pattern.compile("(?<!\\\\)(?:\\\\\\\\)*(?:\\(\\?[idmsuxU-]+[:)]|\\\\Q)");
+
+    private final boolean[] enabledTypes = new boolean[NarrationType.values().length];
+    private final Set<String> allowedSenders;
+    private final Set<String> deniedSenders;
+    private final KeywordMatcher mutedKeywords;
+    private final Pattern mutedPattern;
+    private final ThreadLocal<Matcher> matchers;
+    private final List<ThreadLocal<Matcher>> separateMatchers = new ArrayList<>();
+
+    /**
+     * Compile a filter from the rules in the given config.
+     *
+     * @param config Config containing the rules
+     */
+    public NarrationFilter(final NarrateChatConfig config) {
+        enabledTypes[NarrationType.CHAT.ordinal()] = config.narrateChat;
+        enabledTypes[NarrationType.SYSTEM.ordinal()] = config.narrateSystem;
+        enabledTypes[NarrationType.GAME.ordinal()] = config.narrateGame;
+        allowedSenders = lowerCase(config.allowedSenders);
+        deniedSenders = lowerCase(config.deniedSenders);
+        mutedKeywords = new KeywordMatcher(config.mutedKeywords);
+        final List<Pattern> separatePatterns = new ArrayList<>();
+        mutedPattern = combine(config.mutedPatterns, separatePatterns);
+        matchers = mutedPattern == null ? null : ThreadLocal.withInitial(() -> mutedPattern.matcher(""));
+        for (Pattern pattern : separatePatterns) {
+            separateMatchers.add(ThreadLocal.withInitial(() -> pattern.matcher("")));
+        }
+    }
+
+    /**
+     * Check whether a message should be narrated.
+     *
+     * @param type Type of the message
+     * @param sender Sender of the message, or null for messages without a sender
+     * @param text Plain text of the message
+     * @return True if the message passes all rules
+     */
+    public boolean allows(final NarrationType type, final String sender, final CharSequence text) {
+        if (!enabledTypes[type.ordinal()]) {
+            return false;
+        }
+        if (sender != null && (!allowedSenders.isEmpty() || !deniedSenders.isEmpty())) {
+            final String key = sender.toLowerCase(Locale.ROOT);
+            if (deniedSenders.contains(key) || (!allowedSenders.isEmpty() && !allowedSenders.contains(key))) {
+                return false;
+            }
+        }
+        if (!mutedKeywords.isEmpty() && mutedKeywords.matches(text)) {
+            return false;
+        }
+        if (mutedPattern != null && matchers.get().reset(text).find()) {
+            return false;
+        }
+        for (int i = 0; i < separateMatchers.size(); i++) {
+            if (separateMatchers.get(i).get().reset(text).find()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Set<String> lowerCase(final List<String> names) {
+        return names.stream()
+                .filter(name -> name != null && !name.isBlank())
+                .map(name -> name.trim().toLowerCase(Locale.ROOT))
+                .collect(Collectors.toCollection(HashSet::new));
+    }
+
+    /**
+     * Combine every valid regular expression into a single case-insensitive alternation, so a message needs only one
+     * matcher. Each expression is compiled on its own first, and only wrapped in a group of its own in the alternation
+     * if nothing in it reaches past that group. Invalid expressions are logged and skipped.
+     *
+     * @param patterns Regular expressions to combine
+     * @param separate Receives the expressions which cannot be combined, compiled on their own
+     * @return The combined pattern, or null if there are no expressions to combine
+     */
+    private static Pattern combine(final List<String> patterns, final List<Pattern> separate) {
+        final StringBuilder combined = new StringBuilder();
+        for (String pattern : patterns) {
+            if (pattern == null || pattern.isEmpty()) {
+                continue;
+            }
+            final Pattern compiled;
+            try {
+                compiled = Pattern.compile(pattern, Pattern.CASE_INSENSITIVE);
+            } catch (PatternSyntaxException e) {
+                LOGGER.warn("Ignoring invalid muted pattern '{}': {}", pattern, e.getDescription());
+                continue;
+            }
+            if (BACKREFERENCE.matcher(pattern).find() || SPILLING.matcher(pattern).find()) {
+                separate.add(compiled);
+                continue;
+            }
+            if (!combined.isEmpty()) {
+                combined.append('|');
+            }
+            combined.append("(?:").append(pattern).append(')');
+        }
+        return combined.isEmpty() ? null : Pattern.compile(combined.toString(), Pattern.CASE_INSENSITIVE);
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.narration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Bounded history of the messages which have been narrated, so that a missed message can be heard again (see the
+ * replay keybinds) or looked up (see <code>/narratechat history</code>).
+ * <p>
+ * Recording never allocates: every entry is a slot in a ring of primitive arrays, and the sender and text of each
+ * entry are copied into a shared circular char arena. When the arena wraps around, the oldest entries whose characters
+ * were overwritten are dropped, so both the number of entries and the memory used are fixed by the configured size,
+ * however long the session runs. Strings are only built when entries are read.
+ * <p>
+ * Narrations are recorded by the narration worker and read from the client thread, so all methods are synchronized.
+ *
+ * @author Case Walker
+ */
+public final class NarrationHistory {
+
+    /**
+     * Characters reserved in the arena per entry. Chat messages are limited to 256 characters, and most are far
+     * shorter.
+     */
+    private static final int CHARS_PER_ENTRY = 128;
+
+    /**
+     * Longest sender name which is kept, longer names are cut off.
+     */
+    private static final int MAX_SENDER_CHARS = 64;
+
+    /**
+     * Longest text which is kept, so that one long message cannot push out many short ones.
+     */
+    private static final int MAX_TEXT_CHARS = 512;
+
+    private static final NarrationType[] TYPES = NarrationType.values();
+
+    private int capacity;
+    private char[] arena = new char[0];
+    private long[] starts = new long[0];
+    private int[] senderLengths = new int[0];
+    private int[] textLengths = new int[0];
+    private byte[] types = new byte[0];
+    private long[] times = new long[0];
+
+    /**
+     * Slot the next entry is written to.
+     */
+    private int head;
+
+    /**
+     * Number of slots which hold an entry, some of which may have been overwritten in the arena.
+     */
+    private int size;
+
+    /**
+     * Total number of characters ever written to the arena. Positions are kept as such totals, so that an entry is
+     * known to be overwritten when it starts more than one arena length before the end.
+     */
+    private long written;
+
+    /**
+     * Resize the history, dropping its entries if the size changed.
+     *
+     * @param entries Maximum number of entries to keep, zero disables the history
+     */
+    public synchronized void configure(final int entries) {
+        if (entries == capacity) {
+            return;
+        }
+        capacity = Math.max(0, entries);
+        arena = new char[capacity * CHARS_PER_ENTRY];
+        starts = new long[capacity];
+        senderLengths = new int[capacity];
+        textLengths = new int[capacity];
+        types = new byte[capacity];
+        times = new long[capacity];
+        head = 0;
+        size = 0;
+        written = 0;
+    }
+
+    /**
+     * Record a narrated message.
+     *
+     * @param type Type of the message
+     * @param sender Name of the player who sent the message, or null for messages without a sender
+     * @param text Text which was narrated
+     * @param timeMillis Time the message was narrated, from {@link System#currentTimeMillis()}
+     */
+    public synchronized void record(
+            final NarrationType type,
+            final CharSequence sender,
+            final CharSequence text,
+            final long timeMillis) {
+        if (capacity == 0) {
+            return;
+        }
+        final int senderLength = sender == null ? 0 : Math.min(sender.length(), MAX_SENDER_CHARS);
+        final int textLength = Math.min(text.length(), Math.min(MAX_TEXT_CHARS, arena.length - senderLength));
+        starts[head] = written;
+        copy(sender, senderLength);
+        copy(text, textLength);
+        senderLengths[head] = sender == null ? -1 : senderLength;
+        textLengths[head] = textLength;
+        types[head] = (byte) type.ordinal();
+        times[head] = timeMillis;
+        head = (head + 1) % capacity;
+        size = Math.min(size + 1, capacity);
+    }
+
+    /**
+     * @return The number of entries currently held
+     */
+    public synchronized int size() {
+        int valid = 0;
+        while (valid < size && isValid(slot(valid))) {
+            valid++;
+        }
+        return valid;
+    }
+
+    /**
+     * Drop every entry.
+     */
+    public synchronized void clear() {
+        size = 0;
+    }
+
+    /**
+     * Get the most recent entries.
+     *
+     * @param count Maximum number of entries to get
+     * @return Up to that many entries, oldest first
+     */
+    public synchronized List<Entry> recent(final int count) {
+        final int found = Math.min(Math.max(0, count), size());
+        final List<Entry> entries = new ArrayList<>(found);
+        for (int age = found - 1; age >= 0; age--) {
+            entries.add(entry(slot(age)));
+        }
+        return entries;
+    }
+
+    /**
+     * Find the most recent entries whose text contains the query, ignoring case.
+     *
+     * @param query Text to look for
+     * @param limit Maximum number of entries to find
+     * @return The matching entries, newest first
+     */
+    public synchronized List<Entry> searchText(final String query, final int limit) {
+        final char[] needle = query.toLowerCase(Locale.ROOT).toCharArray();
+        final List<Entry> found = new ArrayList<>();
+        for (int age = 0; age < size && found.size() < limit; age++) {
+            final int slot = slot(age);
+            if (!isValid(slot)) {
+                break;
+            }
+            if (contains(starts[slot] + Math.max(0, senderLengths[slot]), textLengths[slot], needle)) {
+                found.add(entry(slot));
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Find the most recent entries sent by a player.
+     *
+     * @param sender Name of the player, ignoring case
+     * @param limit Maximum number of entries to find
+     * @return The matching entries, newest first
+     */
+    public synchronized List<Entry> searchSender(final String sender, final int limit) {
+        final List<Entry> found = new ArrayList<>();
+        for (int age = 0; age < size && found.size() < limit; age++) {
+            final int slot = slot(age);
+            if (!isValid(slot)) {
+                break;
+            }
+            if (senderLengths[slot] == sender.length() && regionEqualsIgnoreCase(starts[slot], sender)) {
+                found.add(entry(slot));
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @param age Zero for the newest entry, one for the entry before it and so on
+     * @return The slot holding the entry
+     */
+    private int slot(final int age) {
+        return Math.floorMod(head - 1 - age, capacity);
+    }
+
+    private boolean isValid(final int slot) {
+        return starts[slot] >= written - arena.length;
+    }
+
+    private void copy(final CharSequence chars, final int length) {
+        for (int i = 0; i < length; i++) {
+            arena[(int) (written++ % arena.length)] = chars.charAt(i);
+        }
+    }
+
+    private char charAt(final long position) {
+        return arena[(int) (position % arena.length)];
+    }
+
+    private boolean contains(final long start, final int length, final char[] needle) {
+        for (int offset = 0; offset + needle.length <= length; offset++) {
+            int matched = 0;
+            while (matched < needle.length
+                    && Character.toLowerCase(charAt(start + offset + matched)) == needle[matched]) {
+                matched++;
+            }
+            if (matched == needle.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean regionEqualsIgnoreCase(final long start, final String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.toLowerCase(charAt(start + i)) != Character.toLowerCase(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String string(final long start, final int length) {
+        final char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = charAt(start + i);
+        }
+        return new String(chars);
+    }
+
+    private Entry entry(final int slot) {
+        final int senderLength = senderLengths[slot];
+        return new Entry(
+                times[slot],
+                TYPES[types[slot]],
+                senderLength < 0 ? null : string(starts[slot], senderLength),
+                string(starts[slot] + Math.max(0, senderLength), textLengths[slot]));
+    }
+
+    /**
+     * A message read from the history.
+     */
+    public static final class Entry {
+
+        private final long timeMillis;
+        private final NarrationType type;
+        private final String sender;
+        private final String text;
+
+        Entry(final long timeMillis, final NarrationType type, final String sender, final String text) {
+            this.timeMillis = timeMillis;
+            this.type = type;
+            this.sender = sender;
+            this.text = text;
+        }
+
+        /**
+         * @return Time the message was narrated, from {@link System#currentTimeMillis()}
+         */
+        public long timeMillis() {
+            return timeMillis;
+        }
+
+        /**
+         * @return Type of the message
+         */
+        public NarrationType type() {
+            return type;
+        }
+
+        /**
+         * @return Name of the player who sent the message, or null for messages without a sender
+         */
+        public String sender() {
+            return sender;
+        }
+
+        /**
+         * @return Text which was narrated
+         */
+        public String text() {
+            return text;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.narration;
+
+import com.casewalker.narratechat.config.NarrateChatConfig;
+import com.casewalker.narratechat.config.NarrationModeConfig;
+import com.casewalker.narratechat.util.Util;
+import net.minecraft.client.option.NarratorMode;
+
+/**
+ * Routing masks of the narrator modes handled by this mod, looked up by mode id: ALL_CHAT routes everything, each
+ * {@link NarrateChatConfig#narrationModes custom mode} routes its configured {@link NarrationRoute routes}, and the
+ * vanilla modes route nothing, leaving narration to Minecraft.
+ * <p>
+ * The masks are compiled once per config, so that looking up the mask of a mode is a single array read.
+ * <p>
+ * Every id above ALL_CHAT up to {@link NarrateChatConfig#MAX_NARRATION_MODE_ID} is taken, by a custom mode or else by
+ * a placeholder which narrates nothing, see {@link #layout(NarrateChatConfig)}.
+ *
+ * @author Case Walker
+ */
+public final class NarrationModes {
+
+    private static volatile int[] routingById = new int[0];
+
+    private NarrationModes() {}
+
+    /**
+     * Compile the routing masks of the custom modes of a config.
+     *
+     * @param config Config providing the custom modes
+     */
+    public static void configure(final NarrateChatConfig config) {
+        final int[] routing = new int[NarrateChatConfig.MAX_NARRATION_MODE_ID + 1];
+        for (NarrationModeConfig mode : config.narrationModes) {
+            routing[mode.id] = NarrationRoute.mask(mode.routes);
+        }
+        routingById = routing;
+    }
+
+    /**
+     * Lay out the ids of the narrator modes added after ALL_CHAT. Minecraft looks a saved id up modulo the number of
+     * modes, so every id up to {@link NarrateChatConfig#MAX_NARRATION_MODE_ID} is taken, even above the highest
+     * configured mode. A mode removed from the config thus leaves a placeholder behind, rather than shrinking the list
+     * so that its id wraps around to some other mode.
+     *
+     * @param config Config providing the custom modes
+     * @return The custom mode of each id, null where a placeholder goes, and null for ALL_CHAT and the vanilla ids
+     */
+    public static NarrationModeConfig[] layout(final NarrateChatConfig config) {
+        final NarrationModeConfig[] modes = new NarrationModeConfig[NarrateChatConfig.MAX_NARRATION_MODE_ID + 1];
+        for (NarrationModeConfig mode : config.narrationModes) {
+            modes[mode.id] = mode;
+        }
+        return modes;
+    }
+
+    /**
+     * @param mode The narrator mode, may be null
+     * @return Whether the mode is a placeholder for an unused id
+     */
+    public static boolean isPlaceholder(final NarratorMode mode) {
+        return mode != null && mode.ordinal() >= Util.PLACEHOLDER_ORDINALS;
+    }
+
+    /**
+     * Find the listed mode which follows an id when cycling through the modes, skipping the placeholders.
+     *
+     * @param mode The narrator mode to start from
+     * @return The listed mode with the next higher id, or the first mode after the last one
+     */
+    public static NarratorMode listedAfter(final NarratorMode mode) {
+        final NarratorMode[] listed = NarratorMode.values();
+        NarratorMode next = listed[0];
+        for (NarratorMode candidate : listed) {
+            if (candidate.getId() > mode.getId()
+                    && (next.getId() <= mode.getId() || candidate.getId() < next.getId())) {
+                next = candidate;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Get the routing mask of a narrator mode.
+     *
+     * @param mode The narrator mode, may be null
+     * @return The mask of the routes the mode narrates, zero if the mode is not handled by this mod
+     */
+    public static int routingOf(final NarratorMode mode) {
+        if (mode == null) {
+            return 0;
+        }
+        // Recognized by its id like the custom modes, ids are unique among the modes
+        final int id = mode.getId();
+        if (id == Util.ALL_CHAT_ID) {
+            return NarrationRoute.ALL;
+        }
+        final int[] routing = routingById;
+        return id > Util.ALL_CHAT_ID && id < routing.length ? routing[id] : 0;
+    }
+}
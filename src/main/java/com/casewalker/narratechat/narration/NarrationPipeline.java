@@ -0,0 +1,149 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.narration;
+
+import com.casewalker.narratechat.util.Util;
+import net.minecraft.text.Text;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Predicate;
+
+import static com.casewalker.narratechat.NarrateChatMod.LOGGER;
+
+/**
+ * Moves the work which depends on a message's content (templates, flattening, filters, classification) off of the
+ * client thread. The client thread only picks a stripe for the message and queues it, which takes the same time no
+ * matter how many filters the user has. Each stripe is a lock-free {@link NarrationQueue} drained by its own daemon
+ * thread.
+ * <p>
+ * A message's stripe is chosen by its sender, so all messages of one player are handled in the order they arrived,
+ * while different players are handled in parallel. Messages without a sender share the first stripe.
+ *
+ * @author Case Walker
+ */
+final class NarrationPipeline {
+
+    private static final String THREAD_NAME = "Narrate Chat Preprocessor ";
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * Number of messages each stripe holds. Only reached if the stripe's thread stalls, since the stages are fast.
+     */
+    private static final int STRIPE_CAPACITY = 1024;
+
+    private final NarrationQueue<Narration>[] stripes;
+    private final Thread[] threads;
+    private final Predicate<Narration> stage;
+    private volatile boolean running = true;
+
+    /**
+     * Start the pipeline's threads.
+     *
+     * @param threadCount Number of stripes and threads
+     * @param stage Work to do for each message, called on the stripe's thread
+     */
+    @SuppressWarnings("unchecked")
+    NarrationPipeline(final int threadCount, final Predicate<Narration> stage) {
+        this.stage = stage;
+        this.stripes = new NarrationQueue[threadCount];
+        this.threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            stripes[i] = new NarrationQueue<>(STRIPE_CAPACITY);
+            final NarrationQueue<Narration> stripe = stripes[i];
+            threads[i] = new Thread(() -> run(stripe), THREAD_NAME + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+    }
+
+    /**
+     * Hand a message to the pipeline. This never blocks.
+     *
+     * @param narration Narration to process
+     * @return False if the message's stripe is full
+     */
+    boolean offer(final Narration narration) {
+        final int stripe = stripes.length == 1 ? 0 : stripeOf(narration);
+        if (!stripes[stripe].offer(narration)) {
+            return false;
+        }
+        LockSupport.unpark(threads[stripe]);
+        return true;
+    }
+
+    /**
+     * @return Number of messages waiting to be processed
+     */
+    int pending() {
+        int pending = 0;
+        for (NarrationQueue<Narration> stripe : stripes) {
+            pending += stripe.size();
+        }
+        return pending;
+    }
+
+    /**
+     * Stop the threads and drop the messages they have not processed yet.
+     */
+    void stop() {
+        running = false;
+        for (int i = 0; i < threads.length; i++) {
+            LockSupport.unpark(threads[i]);
+            stripes[i].clear();
+        }
+    }
+
+    /**
+     * Pick the stripe of a message from its sender's name, hashed from the reused flattening buffer so that the client
+     * thread builds no strings.
+     */
+    private int stripeOf(final Narration narration) {
+        final Text message = narration.message();
+        final CharSequence sender;
+        if (message == null) {
+            sender = narration.sender();
+        } else {
+            final Object argument = Util.senderArgumentOf(message);
+            sender = argument instanceof Text senderText ? NarrationText.flattenToBuffer(senderText)
+                    : argument == null ? null : argument.toString();
+        }
+        return sender == null ? 0 : (int) Math.floorMod(Util.hash(sender), (long) stripes.length);
+    }
+
+    private void run(final NarrationQueue<Narration> stripe) {
+        while (running) {
+            final Narration narration = stripe.poll();
+            if (narration == null) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                continue;
+            }
+            try {
+                stage.test(narration);
+            } catch (RuntimeException e) {
+                LOGGER.error("Could not prepare a message for narration", e);
+            }
+        }
+    }
+}
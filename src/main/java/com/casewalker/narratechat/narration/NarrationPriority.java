@@ -0,0 +1,61 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.narration;
+
+/**
+ * Priority lanes for narrations, from highest to lowest. Narrations in a higher lane are always spoken before any
+ * narration in a lower lane.
+ *
+ * @author Case Walker
+ */
+public enum NarrationPriority {
+
+    /**
+     * Messages mentioning the player by name.
+     */
+    MENTION,
+
+    /**
+     * Private messages sent to the player.
+     */
+    WHISPER,
+
+    /**
+     * Important system messages, e.g. server announcements and deaths.
+     */
+    ALERT,
+
+    /**
+     * Everything else.
+     */
+    CHAT;
+
+    /**
+     * @return True if messages of this priority are addressed to the player personally. Such messages may interrupt
+     * the narrator, are not subject to the global rate limit and are not trimmed as low priority messages
+     */
+    public boolean isPersonal() {
+        return this == MENTION || this == WHISPER;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.narration;
+
+import com.casewalker.narratechat.config.NarrateChatConfig;
+import com.casewalker.narratechat.config.QueueOverflowPolicy;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Snapshot of everything the {@link NarrationDispatcher} derives from a config: compiled filters and templates, the
+ * flood control, the priority and language classifiers and the backlog and batching settings. A snapshot is built once
+ * per config, off of the hot path, and never changes its settings afterwards, so the dispatcher can swap in a new one
+ * with a single volatile write and read it without locking.
+ * <p>
+ * The flood control, backlog controller and language detector keep state (token buckets, the current backlog level,
+ * the senders' languages), which starts over with each snapshot.
+ *
+ * @author Case Walker
+ */
+final class NarrationProfile {
+
+    final NarrateChatConfig config;
+    final QueueOverflowPolicy overflowPolicy;
+    final NarrationTemplates templates;
+    final NarrationFilter filter;
+    final DuplicateFilter duplicateFilter;
+    final FloodControl floodControl;
+    final PriorityClassifier classifier;
+    final boolean priorityInterrupts;
+    final BacklogController backlogController;
+    final NarrationBatcher batcher;
+    final SpeakerVoices voices;
+    final LanguageDetector languages;
+    final float fastRate;
+    final double nanosPerChar;
+    final long staleUtteranceNanos;
+
+    /**
+     * @param config Config to take a snapshot of, must not be modified afterwards
+     * @param playerName Supplier of the player's own name, used to detect mentions
+     * @param voicesSupported Whether the backend can speak with several voices
+     * @param now Current time in nanoseconds
+     */
+    NarrationProfile(
+            final NarrateChatConfig config,
+            final Supplier<String> playerName,
+            final boolean voicesSupported,
+            final long now) {
+        this.config = config;
+        this.overflowPolicy = config.queueOverflowPolicy;
+        this.voices = new SpeakerVoices(config, voicesSupported);
+        this.languages = new LanguageDetector(config);
+        this.templates = new NarrationTemplates(config, voices.enabled());
+        this.filter = new NarrationFilter(config);
+        this.duplicateFilter = new DuplicateFilter(TimeUnit.MILLISECONDS.toNanos(config.duplicateWindowMillis));
+        this.floodControl = new FloodControl(config, now);
+        this.classifier = new PriorityClassifier(config, playerName);
+        this.priorityInterrupts = config.priorityInterrupts;
+        this.backlogController = new BacklogController(config);
+        this.batcher = new NarrationBatcher(config);
+        this.fastRate = config.backlogFastRate;
+        this.nanosPerChar = config.speechCharsPerSecond > 0 ? 1e9 / config.speechCharsPerSecond : 0;
+        this.staleUtteranceNanos = TimeUnit.MILLISECONDS.toNanos(config.staleUtteranceMillis);
+    }
+}
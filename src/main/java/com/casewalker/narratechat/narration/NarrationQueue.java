@@ -0,0 +1,169 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.narration;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, lock-free, multi-producer multi-consumer queue used to hand narrations from the client thread to the
+ * narration worker.
+ * <p>
+ * This is an array-based queue where every slot carries a sequence number which tells producers and consumers whether
+ * the slot is free to be written or ready to be read. Neither side ever blocks or allocates, which keeps the cost of
+ * enqueueing a chat message on the client thread constant. Multiple consumers are supported because a producer may need
+ * to discard the oldest element itself when the queue is full.
+ *
+ * @param <E> Type of the queued elements
+ * @author Case Walker
+ */
+public class NarrationQueue<E> {
+
+    private final int mask;
+    private final AtomicReferenceArray<E> buffer;
+    private final AtomicLongArray sequences;
+    private final AtomicLong enqueuePosition = new AtomicLong();
+    private final AtomicLong dequeuePosition = new AtomicLong();
+
+    /**
+     * Create a queue which holds at least the given number of elements. The real capacity is rounded up to the next
+     * power of two.
+     *
+     * @param capacity Minimum number of elements the queue can hold
+     */
+    public NarrationQueue(final int capacity) {
+        final int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.mask = size - 1;
+        this.buffer = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Add an element to the tail of the queue, if there is room.
+     *
+     * @param element Element to add, must not be null
+     * @return True if the element was added, false if the queue was full
+     */
+    public boolean offer(final E element) {
+        long position = enqueuePosition.get();
+        while (true) {
+            final int index = (int) (position & mask);
+            final long difference = sequences.get(index) - position;
+
+            if (difference == 0) {
+                if (enqueuePosition.compareAndSet(position, position + 1)) {
+                    buffer.set(index, element);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = enqueuePosition.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = enqueuePosition.get();
+            }
+        }
+    }
+
+    /**
+     * Remove and return the element at the head of the queue.
+     *
+     * @return The oldest element, or null if the queue is empty
+     */
+    public E poll() {
+        long position = dequeuePosition.get();
+        while (true) {
+            final int index = (int) (position & mask);
+            final long difference = sequences.get(index) - (position + 1);
+
+            if (difference == 0) {
+                if (dequeuePosition.compareAndSet(position, position + 1)) {
+                    final E element = buffer.get(index);
+                    buffer.set(index, null);
+                    sequences.set(index, position + mask + 1);
+                    return element;
+                }
+                position = dequeuePosition.get();
+            } else if (difference < 0) {
+                return null;
+            } else {
+                position = dequeuePosition.get();
+            }
+        }
+    }
+
+    /**
+     * Look at the element at the head of the queue without removing it. Another consumer may remove the element at any
+     * time, so the result is only a hint.
+     *
+     * @return The oldest element, or null if the queue is empty
+     */
+    public E peek() {
+        final long position = dequeuePosition.get();
+        final int index = (int) (position & mask);
+        return sequences.get(index) == position + 1 ? buffer.get(index) : null;
+    }
+
+    /**
+     * Remove every element currently in the queue.
+     *
+     * @return The number of elements removed
+     */
+    public int clear() {
+        int removed = 0;
+        while (poll() != null) {
+            removed++;
+        }
+        return removed;
+    }
+
+    /**
+     * Get an estimate of the number of elements in the queue. The value is exact when no other thread is modifying the
+     * queue.
+     *
+     * @return Approximate number of elements in the queue
+     */
+    public int size() {
+        final long size = enqueuePosition.get() - dequeuePosition.get();
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    /**
+     * @return True if the queue currently appears to be empty
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return The maximum number of elements the queue can hold
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+}
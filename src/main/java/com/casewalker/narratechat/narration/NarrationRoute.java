@@ -0,0 +1,137 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.narration;
+
+import com.casewalker.narratechat.util.Util;
+
+import java.util.List;
+import java.util.Locale;
+
+import static com.casewalker.narratechat.NarrateChatMod.LOGGER;
+
+/**
+ * Categories of messages which a narration mode can choose to narrate. Each route is one bit of a routing mask, so
+ * that checking whether the current mode narrates a message is a single bitwise test.
+ * <p>
+ * Whether a message mentions the player or is a whisper is only known once it has been classified, which happens off
+ * of the client thread. The mixins therefore first test the {@link #typeMask(NarrationType) routes a type may end up
+ * in}, and the {@link NarrationDispatcher} tests the exact route after classification.
+ *
+ * @author Case Walker
+ */
+public enum NarrationRoute {
+
+    /** Chat messages of players which are none of the below. */
+    CHAT,
+    /** Team chat messages. */
+    TEAM,
+    /** Messages mentioning the player by name. */
+    MENTION,
+    /** Private messages sent to the player. */
+    WHISPER,
+    /** Important system messages, see {@link NarrationPriority#ALERT}. */
+    ALERT,
+    /** Other system messages shown in the chat. */
+    SYSTEM,
+    /** Game info messages shown above the hotbar. */
+    GAME;
+
+    /**
+     * Routing mask of every route, used by the ALL_CHAT mode.
+     */
+    public static final int ALL = (1 << values().length) - 1;
+
+    private static final String TEAM_KEY_PREFIX = "chat.type.team.";
+
+    private static final int[] TYPE_MASKS = new int[NarrationType.values().length];
+
+    static {
+        TYPE_MASKS[NarrationType.CHAT.ordinal()] = CHAT.bit() | TEAM.bit() | MENTION.bit() | WHISPER.bit();
+        TYPE_MASKS[NarrationType.SYSTEM.ordinal()] = SYSTEM.bit() | MENTION.bit() | WHISPER.bit() | ALERT.bit();
+        TYPE_MASKS[NarrationType.GAME.ordinal()] = GAME.bit() | MENTION.bit() | WHISPER.bit() | ALERT.bit();
+    }
+
+    /**
+     * @return The bit of this route in a routing mask
+     */
+    public int bit() {
+        return 1 << ordinal();
+    }
+
+    /**
+     * Get the routes which a message of some type can end up in, depending on its classification.
+     *
+     * @param type Type of the message
+     * @return Routing mask of the possible routes
+     */
+    public static int typeMask(final NarrationType type) {
+        return TYPE_MASKS[type.ordinal()];
+    }
+
+    /**
+     * Get the route of a classified narration.
+     *
+     * @param narration Narration whose priority has been assigned
+     * @return The route of the narration
+     */
+    public static NarrationRoute of(final Narration narration) {
+        switch (narration.priority()) {
+            case MENTION -> {
+                return MENTION;
+            }
+            case WHISPER -> {
+                return WHISPER;
+            }
+            case ALERT -> {
+                return ALERT;
+            }
+        }
+        return switch (narration.type()) {
+            case SYSTEM -> SYSTEM;
+            case GAME -> GAME;
+            case CHAT -> {
+                final String key = narration.message() == null ? null : Util.translationKeyOf(narration.message());
+                yield key != null && key.startsWith(TEAM_KEY_PREFIX) ? TEAM : CHAT;
+            }
+        };
+    }
+
+    /**
+     * Compile route names, e.g. from the config, into a routing mask. Unknown names are logged and ignored.
+     *
+     * @param names Names of the routes, ignoring case
+     * @return The routing mask
+     */
+    public static int mask(final List<String> names) {
+        int mask = 0;
+        for (String name : names) {
+            try {
+                mask |= valueOf(String.valueOf(name).trim().toUpperCase(Locale.ROOT)).bit();
+            } catch (IllegalArgumentException e) {
+                LOGGER.warn("Ignoring unknown narration route '{}'", name);
+            }
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.narration;
+
+import net.minecraft.text.StringVisitable;
+import net.minecraft.text.Text;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A short phrase spoken instead of a translatable message, compiled once from the same syntax as Minecraft's language
+ * files: <code>%s</code> is the next argument, <code>%2$s</code> the second argument and <code>%%</code> a percent
+ * sign. An empty template mutes the message.
+ *
+ * @author Case Walker
+ */
+final class NarrationTemplate {
+
+    /**
+     * Literal text before each argument, plus the literal text after the last argument.
+     */
+    private final String[] literals;
+
+    /**
+     * Index of the argument following each literal.
+     */
+    private final int[] arguments;
+
+    private NarrationTemplate(final String[] literals, final int[] arguments) {
+        this.literals = literals;
+        this.arguments = arguments;
+    }
+
+    /**
+     * Compile a template.
+     *
+     * @param template Template in the syntax of Minecraft's language files
+     * @return The compiled template
+     * @throws IllegalArgumentException If the template contains an unsupported format specifier
+     */
+    static NarrationTemplate compile(final String template) {
+        final List<String> literals = new ArrayList<>();
+        final List<Integer> arguments = new ArrayList<>();
+        final StringBuilder literal = new StringBuilder();
+        int next = 0;
+        for (int i = 0; i < template.length(); i++) {
+            final char c = template.charAt(i);
+            if (c != '%') {
+                literal.append(c);
+                continue;
+            }
+            int end = i + 1;
+            while (end < template.length() && Character.isDigit(template.charAt(end))) {
+                end++;
+            }
+            if (end < template.length() && template.charAt(end) == '%' && end == i + 1) {
+                literal.append('%');
+                i = end;
+            } else if (end < template.length() && template.charAt(end) == 's' && end == i + 1) {
+                literals.add(literal.toString());
+                arguments.add(next++);
+                literal.setLength(0);
+                i = end;
+            } else if (end + 1 < template.length() && end > i + 1
+                    && template.charAt(end) == '$' && template.charAt(end + 1) == 's') {
+                literals.add(literal.toString());
+                arguments.add(Integer.parseInt(template, i + 1, end, 10) - 1);
+                literal.setLength(0);
+                i = end + 1;
+            } else {
+                throw new IllegalArgumentException("Unsupported format specifier at index " + i + " of: " + template);
+            }
+        }
+        literals.add(literal.toString());
+        return new NarrationTemplate(
+                literals.toArray(new String[0]),
+                arguments.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    /**
+     * @return True if messages with this template are not narrated at all
+     */
+    boolean isMuted() {
+        return arguments.length == 0 && literals[0].isEmpty();
+    }
+
+    /**
+     * @param argument Index of an argument of the message
+     * @return True if the phrase includes the argument
+     */
+    boolean uses(final int argument) {
+        for (int used : arguments) {
+            if (used == argument) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Visit the phrase, with the arguments of the message filled in. Missing arguments are left out.
+     *
+     * @param visitor Visitor receiving the phrase
+     * @param args Arguments of the translatable message
+     */
+    void fill(final StringVisitable.Visitor<?> visitor, final Object[] args) {
+        for (int i = 0; i < arguments.length; i++) {
+            visitor.accept(literals[i]);
+            final int index = arguments[i];
+            if (index >= 0 && index < args.length) {
+                if (args[index] instanceof Text text) {
+                    text.visit(visitor);
+                } else {
+                    visitor.accept(String.valueOf(args[index]));
+                }
+            }
+        }
+        visitor.accept(literals[arguments.length]);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.narration;
+
+import com.casewalker.narratechat.config.NarrateChatConfig;
+import net.minecraft.text.Text;
+import net.minecraft.text.TranslatableTextContent;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.casewalker.narratechat.NarrateChatMod.LOGGER;
+
+/**
+ * The user's {@link NarrationTemplate}s by translation key. Matching a message on its key is a single hash lookup,
+ * much cheaper than matching patterns against the flattened message, and the phrases are usually shorter than the
+ * full message, which keeps the narrator's backlog down.
+ *
+ * @author Case Walker
+ */
+public class NarrationTemplates {
+
+    /**
+     * Translation key of the chat messages given to the narrator, "%s says %s".
+     */
+    private static final String CHAT_KEY = "chat.type.text.narrate";
+
+    /**
+     * Template leaving out who says a chat message, for when players can be told apart by their voices.
+     */
+    private static final String CHAT_WITHOUT_SENDER = "%2$s";
+
+    private final Map<String, NarrationTemplate> templates = new HashMap<>();
+
+    /**
+     * @param config Config providing the templates, invalid templates are logged and ignored
+     */
+    public NarrationTemplates(final NarrateChatConfig config) {
+        this(config, false);
+    }
+
+    /**
+     * @param config Config providing the templates, invalid templates are logged and ignored
+     * @param omitSenders Whether chat messages are spoken without their sender unless the user has a template for them
+     */
+    public NarrationTemplates(final NarrateChatConfig config, final boolean omitSenders) {
+        if (omitSenders) {
+            templates.put(CHAT_KEY, NarrationTemplate.compile(CHAT_WITHOUT_SENDER));
+        }
+        config.narrationTemplates.forEach((key, template) -> {
+            try {
+                templates.put(key, NarrationTemplate.compile(template));
+            } catch (IllegalArgumentException e) {
+                LOGGER.warn("Ignoring invalid narration template for '{}': {}", key, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Find the template for a message.
+     *
+     * @param message Message to narrate
+     * @return The template of the message's translation key, or null if the message is not translatable or has no
+     * template
+     */
+    NarrationTemplate forMessage(final Text message) {
+        if (templates.isEmpty() || !(message.getContent() instanceof TranslatableTextContent translatable)) {
+            return null;
+        }
+        return templates.get(translatable.getKey());
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.narration;
+
+import net.minecraft.text.StringVisitable;
+import net.minecraft.text.Text;
+import net.minecraft.util.Formatting;
+
+import java.util.Optional;
+
+/**
+ * Flattens {@link Text} trees into the plain text which is spoken by the narrator.
+ * <p>
+ * Unlike {@link Text#getString()}, flattening reuses a thread-local {@link StringBuilder} and visits the tree with a
+ * reused visitor, so checking a message (e.g. hashing it) allocates nothing, and a {@link String} is only built once
+ * the message is actually about to be spoken. Legacy formatting codes (e.g. "§c") are stripped and URLs are replaced
+ * with the word "link" in the same pass.
+ *
+ * @author Case Walker
+ */
+public final class NarrationText {
+
+    private static final String URL_REPLACEMENT = "link";
+    private static final String[] URL_PREFIXES = { "http://", "https://", "www." };
+
+    private static final ThreadLocal<Flattener> FLATTENER = ThreadLocal.withInitial(Flattener::new);
+
+    private NarrationText() {}
+
+    /**
+     * Flatten a text into a new string.
+     *
+     * @param text Text to flatten
+     * @return The plain text to speak
+     */
+    public static String flatten(final Text text) {
+        return flattenToBuffer(text).toString();
+    }
+
+    /**
+     * Flatten a text into this thread's reused buffer. The returned buffer is only valid until the next call to any
+     * method of this class on the same thread, and must not be modified.
+     *
+     * @param text Text to flatten
+     * @return The plain text to speak, in a reused buffer
+     */
+    public static CharSequence flattenToBuffer(final Text text) {
+        final Flattener flattener = FLATTENER.get().reset();
+        text.visit(flattener);
+        return flattener.builder;
+    }
+
+    /**
+     * Fill a template with the arguments of a message into this thread's reused buffer, with the same guarantees as
+     * {@link #flattenToBuffer(Text)}.
+     *
+     * @param template Template of the message
+     * @param args Arguments of the translatable message
+     * @return The plain text to speak, in a reused buffer
+     */
+    static CharSequence fillToBuffer(final NarrationTemplate template, final Object[] args) {
+        final Flattener flattener = FLATTENER.get().reset();
+        template.fill(flattener, args);
+        return flattener.builder;
+    }
+
+    /**
+     * Strip formatting codes and URLs from plain text.
+     *
+     * @param text Text to clean up
+     * @return The plain text to speak
+     */
+    public static String strip(final CharSequence text) {
+        final Flattener flattener = FLATTENER.get().reset();
+        for (int i = 0, length = text.length(); i < length; i++) {
+            flattener.append(text.charAt(i));
+        }
+        return flattener.builder.toString();
+    }
+
+    /**
+     * Reusable visitor which appends every visited segment to its buffer, character by character, dropping formatting
+     * codes and URLs on the way.
+     */
+    private static final class Flattener implements StringVisitable.Visitor<Object> {
+        private final StringBuilder builder = new StringBuilder(256);
+        private boolean inFormattingCode;
+        private boolean inUrl;
+        private int wordStart;
+
+        private Flattener reset() {
+            builder.setLength(0);
+            inFormattingCode = false;
+            inUrl = false;
+            wordStart = 0;
+            return this;
+        }
+
+        @Override
+        public Optional<Object> accept(final String segment) {
+            for (int i = 0, length = segment.length(); i < length; i++) {
+                append(segment.charAt(i));
+            }
+            return Optional.empty();
+        }
+
+        private void append(final char c) {
+            if (inFormattingCode) {
+                inFormattingCode = false;
+                return;
+            }
+            if (c == Formatting.FORMATTING_CODE_PREFIX) {
+                inFormattingCode = true;
+                return;
+            }
+
+            final boolean whitespace = Character.isWhitespace(c);
+            if (inUrl) {
+                if (!whitespace) {
+                    return;
+                }
+                inUrl = false;
+            }
+
+            builder.append(c);
+            if (whitespace) {
+                wordStart = builder.length();
+            } else if (wordIsUrlPrefix()) {
+                builder.setLength(wordStart);
+                builder.append(URL_REPLACEMENT);
+                inUrl = true;
+            }
+        }
+
+        /**
+         * @return True if the current word is exactly one of the {@link #URL_PREFIXES}, ignoring case
+         */
+        private boolean wordIsUrlPrefix() {
+            final int wordLength = builder.length() - wordStart;
+            for (String prefix : URL_PREFIXES) {
+                if (prefix.length() == wordLength && regionMatches(prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean regionMatches(final String prefix) {
+            for (int i = 0; i < prefix.length(); i++) {
+                if (Character.toLowerCase(builder.charAt(wordStart + i)) != prefix.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.narration;
+
+import com.casewalker.narratechat.config.NarrateChatConfig;
+import com.casewalker.narratechat.util.Util;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Assigns a {@link NarrationPriority} to each narration, using only checks which are cheap enough to run on the client
+ * thread for every message: the translation key of the message and a case-insensitive search for the player's name,
+ * as a whole word, in the already flattened text. Only messages from other players count as mentions; messages without
+ * a sender, such as the player's own join or advancement, are not.
+ *
+ * @author Case Walker
+ */
+public class PriorityClassifier {
+
+    private final Supplier<String> playerName;
+    private final List<String> whisperKeys;
+    private final List<String> alertKeys;
+
+    /**
+     * @param config Config providing the translation key prefixes of whispers and alerts
+     * @param playerName Supplier of the player's own name, which may return null while not logged in
+     */
+    public PriorityClassifier(final NarrateChatConfig config, final Supplier<String> playerName) {
+        this.playerName = playerName;
+        this.whisperKeys = List.copyOf(config.whisperKeys);
+        this.alertKeys = List.copyOf(config.alertKeys);
+    }
+
+    /**
+     * Determine the priority of a narration.
+     *
+     * @param narration Narration to classify
+     * @param plainText Plain text of the narration
+     * @return The priority lane for the narration
+     */
+    public NarrationPriority classify(final Narration narration, final CharSequence plainText) {
+        final String key = narration.message() == null ? null : Util.translationKeyOf(narration.message());
+        if (key != null && startsWithAny(key, whisperKeys)) {
+            return NarrationPriority.WHISPER;
+        }
+
+        final String name = playerName.get();
+        final String sender = narration.sender();
+        if (name != null && !name.isEmpty() && sender != null && !name.equalsIgnoreCase(sender)
+                && Util.containsWordIgnoreCase(plainText, name)) {
+            return NarrationPriority.MENTION;
+        }
+
+        if (key != null && narration.type() != NarrationType.CHAT && startsWithAny(key, alertKeys)) {
+            return NarrationPriority.ALERT;
+        }
+        return NarrationPriority.CHAT;
+    }
+
+    private static boolean startsWithAny(final String key, final List<String> prefixes) {
+        for (String prefix : prefixes) {
+            if (key.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.narration;
+
+import com.casewalker.narratechat.config.NarrateChatConfig;
+import com.casewalker.narratechat.util.Util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Assigns each player who chats one of the backend's voices. A player's preferred voice comes from a stable hash of
+ * their name, so they keep it across messages and restarts; only when a player who spoke more recently already holds
+ * that voice is the next free one taken. The map from players to voices is bounded by the number of voices, so the
+ * most recent speakers always sound different and the map never grows with the server's population.
+ * <p>
+ * Only used by the narration worker, so it needs no synchronization.
+ *
+ * @author Case Walker
+ */
+final class SpeakerVoices {
+
+    /**
+     * Voice of messages without a sender, e.g. system messages.
+     */
+    static final int DEFAULT_VOICE = 0;
+
+    private final int voices;
+    private final boolean[] taken;
+    private final LinkedHashMap<String, Integer> assigned = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * @param config Config providing the number of voices
+     * @param supported Whether the backend supports voices
+     */
+    SpeakerVoices(final NarrateChatConfig config, final boolean supported) {
+        this.voices = config.speakerVoices && supported ? config.speakerVoiceCount : 0;
+        this.taken = new boolean[voices + 1];
+    }
+
+    /**
+     * @return Whether players are given their own voices
+     */
+    boolean enabled() {
+        return voices > 0;
+    }
+
+    /**
+     * @return Number of players' voices
+     */
+    int count() {
+        return voices;
+    }
+
+    /**
+     * @param narration Narration about to be spoken
+     * @return The voice to speak it with, {@link #DEFAULT_VOICE} for messages without a sender
+     */
+    int voiceOf(final Narration narration) {
+        final String sender = narration.sender();
+        if (voices == 0 || sender == null) {
+            return DEFAULT_VOICE;
+        }
+        final Integer known = assigned.get(sender);
+        if (known != null) {
+            return known;
+        }
+        if (assigned.size() == voices) {
+            final Iterator<Map.Entry<String, Integer>> eldest = assigned.entrySet().iterator();
+            taken[eldest.next().getValue()] = false;
+            eldest.remove();
+        }
+        int voice = 1 + (int) Math.floorMod(Util.hash(sender), (long) voices);
+        while (taken[voice]) {
+            voice = voice == voices ? 1 : voice + 1;
+        }
+        taken[voice] = true;
+        assigned.put(sender, voice);
+        return voice;
+    }
+
+    /**
+     * @param a A narration
+     * @param b Another narration
+     * @return Whether both narrations are spoken with the same voice, so they can be batched
+     */
+    boolean sameVoice(final Narration a, final Narration b) {
+        return voices == 0 || Objects.equals(a.sender(), b.sender());
+    }
+}
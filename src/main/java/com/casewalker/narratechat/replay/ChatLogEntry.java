@@ -0,0 +1,84 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.replay;
+
+import com.casewalker.narratechat.narration.NarrationType;
+import net.minecraft.text.Text;
+
+/**
+ * A chat message read from a Minecraft log file by the {@link ChatLogReader}.
+ *
+ * @author Case Walker
+ */
+public final class ChatLogEntry {
+
+    private final long offsetMillis;
+    private final NarrationType type;
+    private final String sender;
+    private final String message;
+
+    ChatLogEntry(final long offsetMillis, final NarrationType type, final String sender, final String message) {
+        this.offsetMillis = offsetMillis;
+        this.type = type;
+        this.sender = sender;
+        this.message = message;
+    }
+
+    /**
+     * @return Time of the message in milliseconds since the first message of the log
+     */
+    public long offsetMillis() {
+        return offsetMillis;
+    }
+
+    /**
+     * @return {@link NarrationType#CHAT} for messages players sent, {@link NarrationType#SYSTEM} for everything else
+     */
+    public NarrationType type() {
+        return type;
+    }
+
+    /**
+     * @return Name of the player who sent the message, or null for system messages
+     */
+    public String sender() {
+        return sender;
+    }
+
+    /**
+     * @return The message as logged, without the player name for chat messages
+     */
+    public String message() {
+        return message;
+    }
+
+    /**
+     * @return The message as Minecraft would have shown it, decorated the way vanilla narrates chat for chat messages
+     */
+    public Text toText() {
+        return sender == null
+                ? Text.literal(message)
+                : Text.translatable("chat.type.text.narrate", Text.literal(sender), Text.literal(message));
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.replay;
+
+import com.casewalker.narratechat.interfaces.ForcedNarratorManager;
+import com.casewalker.narratechat.narration.NarrationType;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streaming reader of the chat in Minecraft's log files, <code>logs/latest.log</code> and the gzipped archives next to
+ * it. Only lines logged by the chat, such as
+ * <pre>
+ * [12:34:56] [Render thread/INFO]: [CHAT] &lt;Steve&gt; hello
+ * [12:34:57] [Render thread/INFO]: [System] [CHAT] Alex joined the game
+ * </pre>
+ * are turned into {@link ChatLogEntry entries}; all other lines are skipped without being decoded.
+ * <p>
+ * Plain logs are memory-mapped one window at a time and gzipped logs are decompressed through a fixed buffer, so even
+ * logs of several hundred megabytes are read in constant memory. Lines longer than {@link #MAX_LINE_BYTES} are skipped.
+ *
+ * @author Case Walker
+ */
+public class ChatLogReader implements Closeable {
+
+    /**
+     * Longest line which is parsed, longer lines cannot be chat.
+     */
+    static final int MAX_LINE_BYTES = 1 << 16;
+
+    /**
+     * Size of the part of a plain log mapped into memory at once.
+     */
+    private static final int WINDOW_BYTES = 16 << 20;
+
+    private static final byte[] CHAT_MARKER = "[CHAT] ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SYSTEM_MARKER = "[System] ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] THREAD_END = "]: ".getBytes(StandardCharsets.US_ASCII);
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000;
+
+    private final FileChannel channel;
+    private final InputStream gzip;
+    private final byte[] line = new byte[MAX_LINE_BYTES];
+    private ByteBuffer buffer;
+    private long windowStart;
+    private boolean endOfInput;
+    private long firstMillis = -1;
+    private long lastMillis;
+    private long dayOffset;
+
+    /**
+     * Open a log file, which is read as gzip if its name ends with <code>.gz</code>.
+     *
+     * @param file Log file to read
+     * @throws IOException If the file cannot be opened
+     */
+    public ChatLogReader(final Path file) throws IOException {
+        if (file.getFileName().toString().endsWith(".gz")) {
+            this.channel = null;
+            this.gzip = new GZIPInputStream(Files.newInputStream(file), 1 << 16);
+            this.buffer = ByteBuffer.allocate(MAX_LINE_BYTES * 2).limit(0);
+        } else {
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            this.gzip = null;
+            this.buffer = ByteBuffer.allocate(0);
+        }
+    }
+
+    /**
+     * Feed every chat message of a log to the same entry point other mods and the {@code MessageHandlerMixin} use,
+     * without waiting between messages.
+     *
+     * @param file Log file to replay
+     * @param narratorManager Narrator manager to hand the messages to
+     * @return The number of messages replayed
+     * @throws IOException If the log cannot be read
+     */
+    public static long replay(final Path file, final ForcedNarratorManager narratorManager) throws IOException {
+        long count = 0;
+        try (ChatLogReader reader = new ChatLogReader(file)) {
+            for (ChatLogEntry entry = reader.next(); entry != null; entry = reader.next()) {
+                narratorManager.forceNarrateOnMode(entry.toText(), entry.type());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return The next chat message of the log, or null at its end
+     * @throws IOException If the log cannot be read
+     */
+    public ChatLogEntry next() throws IOException {
+        while (true) {
+            final int length = nextLine();
+            if (length < 0) {
+                return null;
+            }
+            final ChatLogEntry entry = parse(length);
+            if (entry != null) {
+                return entry;
+            }
+        }
+    }
+
+    /**
+     * Copy the next line, without its line break, into {@link #line}.
+     *
+     * @return The length of the line, or -1 at the end of the log
+     */
+    private int nextLine() throws IOException {
+        boolean skipping = false;
+        while (true) {
+            final int start = buffer.position();
+            final int end = indexOf(buffer, (byte) '\n', start, buffer.limit());
+            if (end >= 0) {
+                buffer.position(end + 1);
+                if (skipping || end - start > MAX_LINE_BYTES) {
+                    skipping = false;
+                    continue;
+                }
+                buffer.get(start, line, 0, end - start);
+                return end - start;
+            }
+            if (buffer.remaining() > MAX_LINE_BYTES) {
+                // The line does not fit, drop what was read of it and skip to its end
+                buffer.position(buffer.limit());
+                skipping = true;
+            }
+            if (!refill()) {
+                final int length = buffer.remaining();
+                if (length == 0 || skipping) {
+                    return -1;
+                }
+                buffer.get(line, 0, length);
+                return length;
+            }
+        }
+    }
+
+    /**
+     * Make more of the log available, keeping the unfinished line at the current position.
+     *
+     * @return False if the end of the log was reached
+     */
+    private boolean refill() throws IOException {
+        if (endOfInput) {
+            return false;
+        }
+        if (channel != null) {
+            windowStart += buffer.position();
+            final long size = channel.size();
+            final long remaining = size - windowStart;
+            if (remaining <= buffer.remaining()) {
+                endOfInput = true;
+                return false;
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(WINDOW_BYTES, remaining));
+            endOfInput = windowStart + buffer.limit() == size;
+            return true;
+        }
+        buffer.compact();
+        final int read = gzip.read(buffer.array(), buffer.position(), buffer.remaining());
+        if (read < 0) {
+            endOfInput = true;
+            buffer.flip();
+            return false;
+        }
+        buffer.position(buffer.position() + read);
+        buffer.flip();
+        return true;
+    }
+
+    /**
+     * Turn a line into an entry if it was logged by the chat.
+     */
+    private ChatLogEntry parse(final int length) {
+        // "[HH:mm:ss] [thread/LEVEL]: [CHAT] message"
+        if (length < 10 || line[0] != '[' || line[3] != ':' || line[6] != ':' || line[9] != ']') {
+            return null;
+        }
+        final int hours = digits(1);
+        final int minutes = digits(4);
+        final int seconds = digits(7);
+        if (hours < 0 || minutes < 0 || seconds < 0) {
+            return null;
+        }
+        final int threadEnd = indexOf(line, THREAD_END, 10, length);
+        if (threadEnd < 0) {
+            return null;
+        }
+        int start = threadEnd + THREAD_END.length;
+        boolean system = false;
+        if (startsWith(line, SYSTEM_MARKER, start, length)) {
+            system = true;
+            start += SYSTEM_MARKER.length;
+        }
+        final int chat = indexOf(line, CHAT_MARKER, start, length);
+        if (chat < 0) {
+            return null;
+        }
+        // Other tags, e.g. "[Not Secure]", may come before the chat marker
+        start = chat + CHAT_MARKER.length;
+
+        final long millis = ((hours * 60L + minutes) * 60 + seconds) * 1000;
+        if (firstMillis < 0) {
+            firstMillis = millis;
+        } else if (millis < lastMillis) {
+            dayOffset += MILLIS_PER_DAY;
+        }
+        lastMillis = millis;
+        final long offsetMillis = millis + dayOffset - firstMillis;
+
+        // Player chat is logged as "<name> message"
+        if (!system && start < length && line[start] == '<') {
+            final int nameEnd = indexOf(line, (byte) '>', start + 1, length);
+            if (nameEnd > start + 1 && nameEnd + 1 < length && line[nameEnd + 1] == ' ') {
+                return new ChatLogEntry(offsetMillis, NarrationType.CHAT,
+                        new String(line, start + 1, nameEnd - start - 1, StandardCharsets.UTF_8),
+                        new String(line, nameEnd + 2, trimmedEnd(length) - nameEnd - 2, StandardCharsets.UTF_8));
+            }
+        }
+        return new ChatLogEntry(offsetMillis, NarrationType.SYSTEM, null,
+                new String(line, start, trimmedEnd(length) - start, StandardCharsets.UTF_8));
+    }
+
+    private int digits(final int at) {
+        final int tens = line[at] - '0';
+        final int ones = line[at + 1] - '0';
+        return tens < 0 || tens > 9 || ones < 0 || ones > 9 ? -1 : tens * 10 + ones;
+    }
+
+    /**
+     * Leave out the carriage return of Windows line breaks.
+     */
+    private int trimmedEnd(final int length) {
+        return length > 0 && line[length - 1] == '\r' ? length - 1 : length;
+    }
+
+    private static int indexOf(final ByteBuffer buffer, final byte b, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(final byte[] bytes, final byte b, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(final byte[] bytes, final byte[] pattern, final int from, final int to) {
+        for (int i = from; i <= to - pattern.length; i++) {
+            if (startsWith(bytes, pattern, i, to)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(final byte[] bytes, final byte[] pattern, final int at, final int to) {
+        if (to - at < pattern.length) {
+            return false;
+        }
+        for (int i = 0; i < pattern.length; i++) {
+            if (bytes[at + i] != pattern[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+        if (gzip != null) {
+            gzip.close();
+        }
+    }
+}
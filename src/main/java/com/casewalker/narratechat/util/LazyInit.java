@@ -0,0 +1,134 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.util;
+
+import com.casewalker.narratechat.metrics.StartupTimings;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static com.casewalker.narratechat.NarrateChatMod.LOGGER;
+
+/**
+ * A component which is expensive to set up (e.g. because it starts processes or threads, or compiles the filters) and
+ * is therefore built on a background thread instead of during the game's startup. Building starts at the first call
+ * to {@link #start()}, either once the game has started or when the component is first needed, whichever is first.
+ * Until then, and if building fails, {@link #getNow()} returns null and callers fall back to doing without it.
+ * <p>
+ * All components are built one after another on a single daemon thread, and the time each takes is recorded in the
+ * {@link StartupTimings}.
+ *
+ * @param <T> Type of the component
+ * @author Case Walker
+ */
+public final class LazyInit<T> {
+
+    private static final String THREAD_NAME = "Narrate Chat Initializer";
+
+    /**
+     * Holder which creates the thread the first time a component is built.
+     */
+    private static final class ExecutorHolder {
+        private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(task -> {
+            final Thread thread = new Thread(task, THREAD_NAME);
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    private final String name;
+    private final Supplier<T> factory;
+    private final Consumer<T> onReady;
+    private final StartupTimings timings;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile T value;
+
+    /**
+     * @param name Name of the component, used in the startup report
+     * @param factory Builds the component, called on the background thread
+     * @param onReady Called on the background thread once the component is built, before {@link #getNow()} returns it
+     * @param timings Where the time taken is recorded
+     */
+    public LazyInit(
+            final String name,
+            final Supplier<T> factory,
+            final Consumer<T> onReady,
+            final StartupTimings timings) {
+        this.name = name;
+        this.factory = factory;
+        this.onReady = onReady;
+        this.timings = timings;
+    }
+
+    /**
+     * Start building the component in the background. Calling this more than once has no effect, so it is cheap
+     * enough to call on every use.
+     */
+    public void start() {
+        if (value == null && started.compareAndSet(false, true)) {
+            timings.started();
+            ExecutorHolder.EXECUTOR.execute(this::build);
+        }
+    }
+
+    /**
+     * Run some other slow work on the thread the components are built on, after everything already waiting there, so
+     * that it neither stalls the client thread nor overtakes a component it depends on.
+     *
+     * @param task Work to run
+     */
+    public static void execute(final Runnable task) {
+        ExecutorHolder.EXECUTOR.execute(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LOGGER.error("Background task failed", e);
+            }
+        });
+    }
+
+    /**
+     * @return The component, or null if it is not built yet
+     */
+    public T getNow() {
+        return value;
+    }
+
+    private void build() {
+        final long start = System.nanoTime();
+        try {
+            final T built = factory.get();
+            onReady.accept(built);
+            value = built;
+        } catch (RuntimeException e) {
+            LOGGER.error("Could not initialize the {}, continuing without it", name, e);
+        } finally {
+            timings.record(name, System.nanoTime() - start, true);
+        }
+    }
+}
@@ -24,6 +24,8 @@
 package com.casewalker.narratechat.util;
 
 import net.minecraft.client.option.NarratorMode;
+import net.minecraft.text.Text;
+import net.minecraft.text.TranslatableTextContent;
 
 /**
  * Utilities and constants for this mod.
@@ -38,11 +40,146 @@ public class Util {
     public static final int ALL_CHAT_ID = 4;
 
     /**
-     * Get the ALL_CHAT mode defined in {@link com.casewalker.narratechat.mixin.NarratorModeMixin}.
+     * Ordinals of the placeholders for unused mode ids start here, well clear of the ordinals of the listed modes.
+     */
+    public static final int PLACEHOLDER_ORDINALS = 1000;
+
+    /**
+     * Holder which looks up the ALL_CHAT mode on first use. Loading {@link NarratorMode} runs the static initializer
+     * of the mixin which adds the mode, so the lookup is always performed after the mode exists.
+     */
+    private static final class AllChatHolder {
+        private static final NarratorMode ALL_CHAT = NarratorMode.byId(ALL_CHAT_ID);
+    }
+
+    /**
+     * Get the ALL_CHAT mode defined in {@link com.casewalker.narratechat.mixin.NarratorModeMixin}. The mode is looked
+     * up once and then cached.
      *
      * @return The ALL_CHAT narrator mode
      */
     public static NarratorMode allChat() {
-        return NarratorMode.byId(ALL_CHAT_ID);
+        return AllChatHolder.ALL_CHAT;
+    }
+
+    /**
+     * Get the name of the player who sent a chat message, if the message is a decorated chat message such as
+     * "chat.type.text.narrate" whose first argument is the sender.
+     *
+     * @param text Text of the message
+     * @return The sender's name, or null if the message has no sender (e.g. a system message)
+     */
+    public static String senderOf(final Text text) {
+        final Object sender = senderArgumentOf(text);
+        if (sender == null) {
+            return null;
+        }
+        return sender instanceof Text senderText ? senderText.getString() : String.valueOf(sender);
+    }
+
+    /**
+     * Get the argument of a decorated chat message which holds its sender, without flattening it.
+     *
+     * @param text Text of the message
+     * @return The sender argument, usually a {@link Text}, or null if the message has no sender
+     */
+    public static Object senderArgumentOf(final Text text) {
+        if (text.getContent() instanceof TranslatableTextContent translatable
+                && translatable.getKey().startsWith("chat.type.")
+                && translatable.getArgs().length >= 2) {
+            return translatable.getArgs()[0];
+        }
+        return null;
+    }
+
+    /**
+     * Get the argument of a decorated chat message which holds what the sender wrote, without flattening it.
+     *
+     * @param text Text of the message
+     * @return The content argument, usually a {@link Text}, or null if the message has no sender
+     */
+    public static Object messageArgumentOf(final Text text) {
+        if (text.getContent() instanceof TranslatableTextContent translatable
+                && translatable.getKey().startsWith("chat.type.")
+                && translatable.getArgs().length >= 2) {
+            return translatable.getArgs()[1];
+        }
+        return null;
+    }
+
+    /**
+     * Get the translation key of a message, without flattening it.
+     *
+     * @param text Text of the message
+     * @return The translation key, or null if the message is not translatable
+     */
+    public static String translationKeyOf(final Text text) {
+        return text.getContent() instanceof TranslatableTextContent translatable ? translatable.getKey() : null;
+    }
+
+    /**
+     * Check whether some text contains a word, ignoring case, without allocating. The word only counts where it is not
+     * part of a longer word, i.e. where it is not next to a letter, digit or underscore, the characters of player
+     * names.
+     *
+     * @param text Text to search
+     * @param word Word to search for
+     * @return True if the word occurs in the text
+     */
+    public static boolean containsWordIgnoreCase(final CharSequence text, final String word) {
+        final int last = text.length() - word.length();
+        outer:
+        for (int start = 0; start <= last; start++) {
+            if (start > 0 && isWordChar(text.charAt(start - 1))
+                    || start < last && isWordChar(text.charAt(start + word.length()))) {
+                continue;
+            }
+            for (int i = 0; i < word.length(); i++) {
+                if (Character.toLowerCase(text.charAt(start + i)) != Character.toLowerCase(word.charAt(i))) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isWordChar(final char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    /**
+     * Compute a 64-bit FNV-1a hash of some text. No intermediate strings are allocated.
+     *
+     * @param text Text to hash
+     * @return The hash of the text
+     */
+    public static long hash(final CharSequence text) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Compute a 64-bit FNV-1a hash of the letters and digits of some text, ignoring case, whitespace and punctuation.
+     * Messages which only differ in those respects (e.g. "Hello!" and "hello") are considered near-identical and hash
+     * to the same value. No intermediate strings are allocated.
+     *
+     * @param text Text to hash
+     * @return The normalized hash of the text
+     */
+    public static long normalizedHash(final CharSequence text) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            final char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                hash ^= Character.toLowerCase(c);
+                hash *= 0x100000001b3L;
+            }
+        }
+        return hash;
     }
 }
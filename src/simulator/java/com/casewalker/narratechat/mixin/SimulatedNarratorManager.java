@@ -0,0 +1,94 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.mixin;
+
+import com.casewalker.narratechat.metrics.NarrationMetrics.Counter;
+import com.casewalker.narratechat.narration.NarrationDispatcher;
+import com.casewalker.narratechat.narration.NarrationRoute;
+import com.casewalker.narratechat.narration.NarrationType;
+import com.mojang.text2speech.Narrator;
+import net.minecraft.text.Text;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+import java.lang.reflect.Field;
+
+import static com.casewalker.narratechat.NarrateChatMod.METRICS;
+
+/**
+ * Concrete implementation of the {@link NarratorManagerMixin} abstract class for the simulator, which always runs in
+ * the ALL_CHAT mode. Mixins are not applied outside of the game, so the simulator calls the mixin's methods on this
+ * plain subclass, the same way the tests and benchmarks do.
+ *
+ * @author Case Walker
+ */
+public class SimulatedNarratorManager extends NarratorManagerMixin {
+
+    /**
+     * @param narrator Narrator standing in for Minecraft's own
+     * @param dispatcher Dispatcher the mixin hands its narrations to
+     */
+    public SimulatedNarratorManager(final Narrator narrator, final NarrationDispatcher dispatcher) {
+        setField("narrator", narrator);
+        setField("narrationDispatcher", dispatcher);
+    }
+
+    /**
+     * Deliver a message through the entry point Minecraft would use for it. Chat messages arrive through {@link
+     * NarratorManagerMixin#onNarrateChatMessage}, system and game messages are passed on to {@link
+     * #forceNarrateOnMode} the same way as {@link MessageHandlerMixin#onOnGameMessage}, which cannot run without a
+     * Minecraft client.
+     *
+     * @param message The message
+     * @param type Kind of message
+     */
+    public void deliver(final Text message, final NarrationType type) {
+        if (type == NarrationType.CHAT) {
+            onNarrateChatMessage(() -> message, new CallbackInfo("narrateChatMessage", true));
+        } else {
+            METRICS.increment(Counter.RECEIVED);
+            forceNarrateOnMode(message, type);
+        }
+    }
+
+    @Override
+    protected void debugPrintMessage(final String message) {}
+
+    /**
+     * The ALL_CHAT mode only exists once the mixins are applied, so its routing is used directly.
+     */
+    @Override
+    int narrationRouting() {
+        return NarrationRoute.ALL;
+    }
+
+    private void setField(final String name, final Object value) {
+        try {
+            final Field field = NarratorManagerMixin.class.getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(this, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not set up the simulated narrator manager", e);
+        }
+    }
+}
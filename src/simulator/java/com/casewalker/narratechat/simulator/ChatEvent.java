@@ -0,0 +1,75 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.simulator;
+
+import com.casewalker.narratechat.narration.NarrationType;
+import net.minecraft.text.Text;
+
+/**
+ * A message arriving at the client during a simulation.
+ *
+ * @author Case Walker
+ */
+public final class ChatEvent {
+
+    private final long offsetNanos;
+    private final NarrationType type;
+    private final Text message;
+
+    /**
+     * @param offsetNanos Time the message arrives, relative to the start of the trace
+     * @param type Kind of message, which decides the mixin entry point it arrives through
+     * @param message The message as Minecraft would show it
+     */
+    public ChatEvent(final long offsetNanos, final NarrationType type, final Text message) {
+        this.offsetNanos = offsetNanos;
+        this.type = type;
+        this.message = message;
+    }
+
+    /**
+     * Create the event of a player's chat message, decorated the way vanilla narrates chat.
+     *
+     * @param offsetNanos Time the message arrives, relative to the start of the trace
+     * @param sender Name of the player
+     * @param body What the player wrote
+     * @return The event
+     */
+    public static ChatEvent chat(final long offsetNanos, final String sender, final String body) {
+        return new ChatEvent(offsetNanos, NarrationType.CHAT,
+                Text.translatable("chat.type.text.narrate", Text.literal(sender), Text.literal(body)));
+    }
+
+    public long offsetNanos() {
+        return offsetNanos;
+    }
+
+    public NarrationType type() {
+        return type;
+    }
+
+    public Text message() {
+        return message;
+    }
+}
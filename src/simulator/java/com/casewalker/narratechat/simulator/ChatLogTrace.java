@@ -0,0 +1,71 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.simulator;
+
+import com.casewalker.narratechat.replay.ChatLogEntry;
+import com.casewalker.narratechat.replay.ChatLogReader;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays the chat of a Minecraft log file, <code>latest.log</code> or a gzipped archive, with its original timing.
+ *
+ * @author Case Walker
+ */
+public class ChatLogTrace implements ChatTrace {
+
+    private final ChatLogReader reader;
+
+    /**
+     * @param file Log file to replay
+     * @throws IOException If the file cannot be opened
+     */
+    public ChatLogTrace(final Path file) throws IOException {
+        this.reader = new ChatLogReader(file);
+    }
+
+    /**
+     * @param file A trace file
+     * @return Whether the file is a Minecraft log rather than a {@link TraceFile}
+     */
+    public static boolean isLog(final Path file) {
+        final String name = file.getFileName().toString();
+        return name.endsWith(".log") || name.endsWith(".log.gz");
+    }
+
+    @Override
+    public ChatEvent next() throws IOException {
+        final ChatLogEntry entry = reader.next();
+        return entry == null
+                ? null
+                : new ChatEvent(TimeUnit.MILLISECONDS.toNanos(entry.offsetMillis()), entry.type(), entry.toText());
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.simulator;
+
+import com.casewalker.narratechat.backend.MinecraftNarrationBackend;
+import com.casewalker.narratechat.config.NarrateChatConfig;
+import com.casewalker.narratechat.metrics.LatencyHistogram;
+import com.casewalker.narratechat.metrics.NarrationMetrics.Counter;
+import com.casewalker.narratechat.mixin.SimulatedNarratorManager;
+import com.casewalker.narratechat.narration.NarrationDispatcher;
+import com.mojang.text2speech.Narrator;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.casewalker.narratechat.NarrateChatMod.METRICS;
+
+/**
+ * Headless load test of the narration pipeline. Replays a recorded or synthetic chat trace in real time through the
+ * mixin entry points into a {@link NarrationDispatcher} speaking to a recording stub {@link Narrator}, then reports how
+ * many messages were narrated or dropped, the latency from arrival to narration and the allocation rate.
+ * <p>
+ * Run with <code>./gradlew simulate</code>, passing options with <code>-Psimulator="..."</code>:
+ * <pre>
+ * --trace FILE           replay a Minecraft log (latest.log or *.log.gz) or a {@link TraceFile} instead of synthetic
+ *                        chat
+ * --rate N               synthetic messages per second (default 5)
+ * --duration SECONDS     length of the synthetic trace (default 60)
+ * --senders N            synthetic players chatting (default 20)
+ * --system-share F       share of synthetic system messages (default 0.1)
+ * --seed N               seed of the synthetic trace (default 1)
+ * --config DIR           directory containing narratechatmod.json (default: built-in defaults)
+ * --server ADDRESS       apply the server profile for this address
+ * --speed F              replay F times faster than real time (default 1)
+ * </pre>
+ * With <code>--speed</code> every rate and time window in the config is scaled by the same factor, and the reported
+ * latencies are scaled back, so a long log can be replayed quickly with approximately the same outcome.
+ *
+ * @author Case Walker
+ */
+public class NarrationSimulator {
+
+    private static final long SETTLE_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final NarrateChatConfig config;
+    private final double speed;
+    private final RecordingNarrator narrator = new RecordingNarrator();
+
+    /**
+     * @param config Config to simulate, already scaled to the replay speed
+     * @param speed How many times faster than real time the trace is replayed
+     */
+    public NarrationSimulator(final NarrateChatConfig config, final double speed) {
+        this.config = config;
+        this.speed = speed;
+    }
+
+    public static void main(final String[] args) throws IOException {
+        Path trace = null;
+        Path configDir = null;
+        String server = null;
+        double rate = 5;
+        double duration = 60;
+        int senders = 20;
+        double systemShare = 0.1;
+        long seed = 1;
+        double speed = 1;
+        for (int i = 0; i < args.length; i++) {
+            final String option = args[i];
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            final String value = args[++i];
+            switch (option) {
+                case "--trace" -> trace = Path.of(value);
+                case "--config" -> configDir = Path.of(value);
+                case "--server" -> server = value;
+                case "--rate" -> rate = Double.parseDouble(value);
+                case "--duration" -> duration = Double.parseDouble(value);
+                case "--senders" -> senders = Integer.parseInt(value);
+                case "--system-share" -> systemShare = Double.parseDouble(value);
+                case "--seed" -> seed = Long.parseLong(value);
+                case "--speed" -> speed = Double.parseDouble(value);
+                default -> throw new IllegalArgumentException("Unknown option " + option);
+            }
+        }
+
+        NarrateChatConfig config = configDir == null ? new NarrateChatConfig() : NarrateChatConfig.load(configDir);
+        config = config.forServer(server);
+        try (ChatTrace chat = trace == null
+                ? new SyntheticTrace(rate, duration, senders, systemShare, seed)
+                : ChatLogTrace.isLog(trace) ? new ChatLogTrace(trace) : new TraceFile(trace)) {
+            final NarrationSimulator simulator = new NarrationSimulator(scaled(config, speed), speed);
+            System.out.println(simulator.run(chat));
+        }
+    }
+
+    /**
+     * Replay a trace and wait until everything it produced has been narrated or dropped.
+     *
+     * @param trace Trace to replay
+     * @return The report of the run
+     * @throws IOException If the trace cannot be read
+     */
+    public String run(final ChatTrace trace) throws IOException {
+        final NarrationDispatcher dispatcher =
+                new NarrationDispatcher(new MinecraftNarrationBackend(narrator), config, () -> "Simulator");
+        final SimulatedNarratorManager manager = new SimulatedNarratorManager(narrator, dispatcher);
+        final com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        METRICS.configure(true, 0);
+        METRICS.reset();
+        dispatcher.start();
+
+        long clientThreadBytes = 0;
+        long messages = 0;
+        final long allocatedBefore = allocatedBytes(threads);
+        final long start = System.nanoTime();
+        final long allocated;
+        try {
+            for (ChatEvent event = trace.next(); event != null; event = trace.next()) {
+                final long due = start + (long) (event.offsetNanos() / speed);
+                for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+                    LockSupport.parkNanos(wait);
+                }
+                final long threadBytes = threads.getCurrentThreadAllocatedBytes();
+                manager.deliver(event.message(), event.type());
+                clientThreadBytes += threads.getCurrentThreadAllocatedBytes() - threadBytes;
+                messages++;
+            }
+            while (dispatcher.pending() > 0) {
+                LockSupport.parkNanos(SETTLE_NANOS);
+            }
+            LockSupport.parkNanos(SETTLE_NANOS);
+            // Measured while the worker is still alive, the counts of finished threads are lost
+            allocated = allocatedBytes(threads) - allocatedBefore;
+        } finally {
+            dispatcher.stop();
+        }
+        final double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        return report(messages, elapsedSeconds, allocated, clientThreadBytes);
+    }
+
+    private String report(
+            final long messages,
+            final double elapsedSeconds,
+            final long allocated,
+            final long clientThreadBytes) {
+        final long dropped = METRICS.get(Counter.FILTERED) + METRICS.get(Counter.DUPLICATE)
+                + METRICS.get(Counter.RATE_LIMITED) + METRICS.get(Counter.OVERFLOWED)
+                + METRICS.get(Counter.EXPIRED) + METRICS.get(Counter.SKIPPED) + METRICS.get(Counter.CANCELLED);
+        final LatencyHistogram latency = METRICS.latencyMicros();
+        final StringBuilder report = new StringBuilder();
+        report.append(String.format("Replayed %d messages in %.1f s (%.1fx real time)%n",
+                messages, elapsedSeconds, speed));
+        report.append(String.format("Narrated %d in %d utterances (%d chars), dropped %d, merged %d%n",
+                METRICS.get(Counter.NARRATED), narrator.utterances.sum(), narrator.chars.sum(), dropped,
+                METRICS.get(Counter.MERGED)));
+        for (Counter counter : Counter.values()) {
+            report.append(String.format("  %-12s %d%n", counter.name().toLowerCase(), METRICS.get(counter)));
+        }
+        report.append(String.format("Latency ms p50=%.1f p90=%.1f p99=%.1f max=%.1f%n",
+                realMillis(latency.percentile(50)), realMillis(latency.percentile(90)),
+                realMillis(latency.percentile(99)), realMillis(latency.max())));
+        report.append(String.format("Allocated %.1f MB/s in total, %d bytes per message on the client thread",
+                allocated / elapsedSeconds / (1 << 20), messages == 0 ? 0 : clientThreadBytes / messages));
+        return report.toString();
+    }
+
+    /**
+     * @return Bytes allocated so far by all live threads
+     */
+    private static long allocatedBytes(final com.sun.management.ThreadMXBean threads) {
+        long total = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            total += Math.max(0, bytes);
+        }
+        return total;
+    }
+
+    /**
+     * Convert a latency measured at the replay speed back to real time.
+     */
+    private double realMillis(final long micros) {
+        return micros * speed / 1000d;
+    }
+
+    /**
+     * Scale every rate and time window of a config to a replay speed, so that replaying faster keeps the outcome.
+     *
+     * @param config Config to scale, which is not modified
+     * @param speed How many times faster than real time the trace is replayed
+     * @return The scaled config
+     */
+    static NarrateChatConfig scaled(final NarrateChatConfig config, final double speed) {
+        final NarrateChatConfig scaled = config.copy();
+        scaled.duplicateWindowMillis = scaleMillis(config.duplicateWindowMillis, speed);
+        scaled.coalesceWindowMillis = scaleMillis(config.coalesceWindowMillis, speed);
+        scaled.maxNarrationAgeMillis = scaleMillis(config.maxNarrationAgeMillis, speed);
+        scaled.lowPriorityMaxAgeMillis = scaleMillis(config.lowPriorityMaxAgeMillis, speed);
+        scaled.batchWindowMillis = scaleMillis(config.batchWindowMillis, speed);
+        scaled.speechCharsPerSecond = config.speechCharsPerSecond * speed;
+        scaled.backlogFastSeconds = config.backlogFastSeconds / speed;
+        scaled.backlogAbbreviateSeconds = config.backlogAbbreviateSeconds / speed;
+        scaled.backlogSkipSeconds = config.backlogSkipSeconds / speed;
+        scaled.globalRatePerSecond = config.globalRatePerSecond * speed;
+        scaled.senderRatePerSecond = config.senderRatePerSecond * speed;
+        return scaled;
+    }
+
+    private static long scaleMillis(final long millis, final double speed) {
+        return millis <= 0 ? millis : Math.max(1, Math.round(millis / speed));
+    }
+
+    /**
+     * Narrator which only counts what it is asked to say.
+     */
+    private static class RecordingNarrator implements Narrator {
+        private final LongAdder utterances = new LongAdder();
+        private final LongAdder chars = new LongAdder();
+
+        public void say(final String msg, final boolean interrupt) {
+            utterances.increment();
+            chars.add(msg.length());
+        }
+        public void clear() {}
+        public boolean active() { return true; }
+        public void destroy() {}
+    }
+}
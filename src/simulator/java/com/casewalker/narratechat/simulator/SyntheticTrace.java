@@ -0,0 +1,104 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.simulator;
+
+import com.casewalker.narratechat.narration.NarrationType;
+import net.minecraft.text.Text;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Synthetic chat: players sending messages at a steady average rate with random (Poisson) gaps, mixed with join and
+ * leave notices and repeated announcements, which exercise the templates, duplicate filter and coalescing.
+ *
+ * @author Case Walker
+ */
+public class SyntheticTrace implements ChatTrace {
+
+    private static final String[] WORDS = {
+            "hello", "anyone", "want", "to", "trade", "diamonds", "for", "iron", "where", "is", "the", "spawn", "lol",
+            "gg", "nice", "build", "who", "killed", "that", "creeper", "come", "to", "my", "base", "at", "the",
+            "nether", "portal", "need", "help", "with", "farm", "brb", "thanks", "ok", "sure", "no", "way"
+    };
+
+    private final SplittableRandom random;
+    private final double meanGapNanos;
+    private final long durationNanos;
+    private final int senders;
+    private final double systemShare;
+    private long offsetNanos;
+
+    /**
+     * @param messagesPerSecond Average arrival rate of all messages
+     * @param durationSeconds Length of the trace
+     * @param senders Number of distinct players chatting
+     * @param systemShare Share of the messages which are system messages, between 0 and 1
+     * @param seed Seed of the random generator, so runs can be repeated
+     */
+    public SyntheticTrace(
+            final double messagesPerSecond,
+            final double durationSeconds,
+            final int senders,
+            final double systemShare,
+            final long seed) {
+        this.random = new SplittableRandom(seed);
+        this.meanGapNanos = TimeUnit.SECONDS.toNanos(1) / messagesPerSecond;
+        this.durationNanos = (long) (durationSeconds * TimeUnit.SECONDS.toNanos(1));
+        this.senders = Math.max(1, senders);
+        this.systemShare = systemShare;
+    }
+
+    @Override
+    public ChatEvent next() {
+        offsetNanos += (long) (-Math.log(1 - random.nextDouble()) * meanGapNanos);
+        if (offsetNanos > durationNanos) {
+            return null;
+        }
+        final String player = "Player" + random.nextInt(senders);
+        if (random.nextDouble() >= systemShare) {
+            return ChatEvent.chat(offsetNanos, player, sentence());
+        }
+        return switch (random.nextInt(3)) {
+            case 0 -> new ChatEvent(offsetNanos, NarrationType.SYSTEM,
+                    Text.translatable("multiplayer.player.joined", Text.literal(player)));
+            case 1 -> new ChatEvent(offsetNanos, NarrationType.SYSTEM,
+                    Text.translatable("multiplayer.player.left", Text.literal(player)));
+            default -> new ChatEvent(offsetNanos, NarrationType.SYSTEM,
+                    Text.literal("[Server] Vote for us to get a free crate key!"));
+        };
+    }
+
+    private String sentence() {
+        final int words = 1 + random.nextInt(12);
+        final StringBuilder sentence = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                sentence.append(' ');
+            }
+            sentence.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sentence.toString();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.simulator;
+
+import com.casewalker.narratechat.narration.NarrationType;
+import net.minecraft.text.Text;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A recorded trace in a simple tab-separated format, one message per line:
+ * <pre>
+ * millis	type	sender	text
+ * </pre>
+ * where <code>millis</code> is the arrival time from the start of the trace, <code>type</code> is <code>chat</code>,
+ * <code>system</code> or <code>game</code>, and <code>sender</code> is only used for chat. Empty lines and lines
+ * starting with <code>#</code> are skipped.
+ *
+ * @author Case Walker
+ */
+public class TraceFile implements ChatTrace {
+
+    private final BufferedReader reader;
+    private final Path file;
+    private int lineNumber;
+
+    /**
+     * @param file File to read
+     * @throws IOException If the file cannot be opened
+     */
+    public TraceFile(final Path file) throws IOException {
+        this.reader = Files.newBufferedReader(file);
+        this.file = file;
+    }
+
+    @Override
+    public ChatEvent next() throws IOException {
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            lineNumber++;
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            final String[] fields = line.split("\t", 4);
+            if (fields.length < 4) {
+                throw new IOException(file + ":" + lineNumber + ": expected 4 tab-separated fields");
+            }
+            final long offsetNanos;
+            final NarrationType type;
+            try {
+                offsetNanos = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(fields[0].trim()));
+                type = NarrationType.valueOf(fields[1].trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IOException(file + ":" + lineNumber + ": " + e.getMessage(), e);
+            }
+            return type == NarrationType.CHAT
+                    ? ChatEvent.chat(offsetNanos, fields[2], fields[3])
+                    : new ChatEvent(offsetNanos, type, Text.literal(fields[3]));
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
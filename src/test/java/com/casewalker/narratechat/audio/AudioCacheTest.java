@@ -0,0 +1,110 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.audio;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test functionality within the {@link AudioCache}.
+ *
+ * @author Case Walker
+ */
+public class AudioCacheTest {
+
+    private static final int CAPACITY = 4096;
+    private static final long VOICE = 42;
+
+    private Path file;
+
+    @BeforeEach
+    void createFile() throws IOException {
+        file = Files.createTempFile("audio-cache", ".bin");
+    }
+
+    @AfterEach
+    void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    @DisplayName("Clips are found by normalized text and survive reopening the file")
+    void testPersistence() throws IOException {
+        final AudioClip clip = clip(100, (byte) 7);
+        try (AudioCache cache = new AudioCache(file, CAPACITY, VOICE)) {
+            assertTrue(cache.put("Steve  joined the game", clip), "A small clip should be cached");
+            assertNotNull(cache.get("steve joined the game "), "Case and spacing should not matter");
+        }
+        try (AudioCache cache = new AudioCache(file, CAPACITY, VOICE)) {
+            final AudioClip read = cache.get("Steve joined the game");
+            assertNotNull(read, "The clip should be read back from the file");
+            assertEquals(22050, read.sampleRate(), "The sample rate should be kept");
+            assertArrayEquals(clip.pcm(), read.pcm(), "The samples should be kept");
+        }
+        try (AudioCache cache = new AudioCache(file, CAPACITY, VOICE + 1)) {
+            assertNull(cache.get("Steve joined the game"), "Clips of another voice should be discarded");
+        }
+    }
+
+    @Test
+    @DisplayName("The oldest clips are evicted once the cache is full, unless they are used")
+    void testEviction() throws IOException {
+        try (AudioCache cache = new AudioCache(file, CAPACITY, VOICE)) {
+            assertFalse(cache.put("huge", clip(CAPACITY, (byte) 1)), "Clips larger than half the cache are refused");
+            for (int i = 0; i < 40; i++) {
+                assertTrue(cache.put("message " + i, clip(200, (byte) i)), "Clip " + i + " should be cached");
+                assertNotNull(cache.get("message 0"), "A clip which keeps being used should stay cached");
+            }
+            assertNull(cache.get("message 1"), "An unused old clip should be evicted");
+            assertNotNull(cache.get("message 39"), "The newest clip should be cached");
+            assertTrue(cache.size() * 200 < CAPACITY, "The cache should not hold more than its capacity");
+        }
+        try (AudioCache cache = new AudioCache(file, CAPACITY, VOICE)) {
+            final AudioClip read = cache.get("message 39");
+            assertNotNull(read, "Clips should be read back after the ring wrapped around");
+            assertEquals(39, read.pcm()[0], "The newest copy should be read back");
+            assertNotNull(cache.get("message 0"), "The promoted clip should be read back");
+        }
+    }
+
+    private static AudioClip clip(final int length, final byte value) {
+        final byte[] pcm = new byte[length];
+        Arrays.fill(pcm, value);
+        return new AudioClip(22050, 1, pcm);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.backend;
+
+import com.casewalker.narratechat.config.NarrateChatConfig;
+import com.mojang.text2speech.Narrator;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Test the selection of the {@link NarrationBackend} in {@link NarrationBackends}.
+ *
+ * @author Case Walker
+ */
+public class NarrationBackendsTest {
+
+    private final DummyNarrator narrator = new DummyNarrator();
+    private final NarrationBackend custom = new MinecraftNarrationBackend(narrator);
+
+    private final List<NarrationBackendProvider> providers = List.of(
+            MinecraftNarrationBackend.PROVIDER,
+            provider("custom", custom),
+            provider("broken", null));
+
+    @Test
+    @DisplayName("The backend is chosen by its id, ignoring case")
+    void testChoose() {
+        final NarrateChatConfig config = new NarrateChatConfig();
+        config.narrationBackend = "Custom";
+
+        assertSame(custom, NarrationBackends.create(config, narrator, providers), "The named backend should be used");
+    }
+
+    @Test
+    @DisplayName("Minecraft's narrator is used for unknown or failing backends")
+    void testFallback() {
+        final NarrateChatConfig config = new NarrateChatConfig();
+        config.narrationBackend = "unknown";
+        final NarrationBackend unknown = NarrationBackends.create(config, narrator, providers);
+        config.narrationBackend = "broken";
+        final NarrationBackend broken = NarrationBackends.create(config, narrator, providers);
+
+        assertInstanceOf(MinecraftNarrationBackend.class, unknown, "Unknown backends should fall back");
+        assertInstanceOf(MinecraftNarrationBackend.class, broken, "Failing backends should fall back");
+        broken.say("hello", false);
+        assertEquals(List.of("hello"), narrator.thingsSaid, "The fallback should speak through Minecraft's narrator");
+    }
+
+    /**
+     * Create a provider which returns the given backend, or fails if it is null.
+     */
+    private static NarrationBackendProvider provider(final String id, final NarrationBackend backend) {
+        return new NarrationBackendProvider() {
+            @Override
+            public String id() {
+                return id;
+            }
+
+            @Override
+            public NarrationBackend create(final NarrateChatConfig config, final Narrator minecraftNarrator)
+                    throws Exception {
+                if (backend == null) {
+                    throw new Exception("Engine not installed");
+                }
+                return backend;
+            }
+        };
+    }
+
+    /**
+     * Narrator which records what it is told to say.
+     */
+    private static class DummyNarrator implements Narrator {
+        public final List<String> thingsSaid = new ArrayList<>();
+
+        public void say(String msg, boolean interrupt) { thingsSaid.add(msg); }
+        public void clear() {}
+        public boolean active() { return true; }
+        public void destroy() {}
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.backend;
+
+import com.casewalker.narratechat.audio.AudioClip;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the splitting of long narrations by the {@link SpeechChunker} and the joining of their audio.
+ *
+ * @author Case Walker
+ */
+public class SpeechChunkerTest {
+
+    @Test
+    @DisplayName("Long narrations are split after sentences, then clauses, then words")
+    void testSplit() {
+        assertEquals(List.of("Short message. Not split."), SpeechChunker.split("Short message. Not split.", 120),
+                "Text which fits into a chunk should not be split");
+        assertEquals(List.of("The first sentence is here.", "And the second one is right behind it."),
+                SpeechChunker.split("The first sentence is here. And the second one is right behind it.", 50),
+                "Long text should be split after the first sentence");
+        assertEquals(List.of("Hi. This sentence is longer.", "Another one follows."),
+                SpeechChunker.split("Hi. This sentence is longer. Another one follows.", 30),
+                "Short sentences should not be chunks of their own");
+        assertEquals(List.of("one long sentence without an end,", "which goes on and on"),
+                SpeechChunker.split("one long sentence without an end, which goes on and on", 40),
+                "Sentences which are too long should be split after a clause");
+        assertEquals(List.of("no punctuation at all in this", "long line of chat"),
+                SpeechChunker.split("no punctuation at all in this long line of chat", 30),
+                "Clauses which are too long should be split between words");
+        assertEquals(List.of("Version 1.20 is out, get it."),
+                SpeechChunker.split("Version 1.20 is out, get it.", 0), "A limit of zero should not split");
+        assertEquals(List.of(), SpeechChunker.split(" \t", 120), "Blank text should have no chunks");
+
+        final String text = "word ".repeat(200);
+        for (String chunk : SpeechChunker.split(text, 50)) {
+            assertTrue(chunk.length() <= 50, "No chunk should be longer than the limit");
+        }
+    }
+
+    @Test
+    @DisplayName("The audio of the chunks is joined for the cache only if the formats match")
+    void testJoin() {
+        final AudioClip joined = AudioClip.join(List.of(new AudioClip(22050, 1, new byte[]{1, 2}),
+                new AudioClip(22050, 1, new byte[]{3, 4})));
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, joined.pcm(), "The samples should play back to back");
+        assertNull(AudioClip.join(List.of(new AudioClip(22050, 1, new byte[2]), new AudioClip(16000, 1, new byte[2]))),
+                "Clips of different formats should not be joined");
+    }
+}
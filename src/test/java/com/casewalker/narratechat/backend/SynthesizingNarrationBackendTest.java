@@ -0,0 +1,168 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.backend;
+
+import com.casewalker.narratechat.audio.AudioClip;
+import com.casewalker.narratechat.audio.AudioPlayer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.powermock.reflect.Whitebox;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test that the {@link SynthesizingNarrationBackend} synthesizes off of the narration worker and can be cleared while
+ * the engine is busy.
+ *
+ * @author Case Walker
+ */
+public class SynthesizingNarrationBackendTest {
+
+    @Test
+    @DisplayName("Clearing while a chunk is synthesized drops the rest of the narration without waiting for the engine")
+    void testClearWhileSynthesizing() throws InterruptedException {
+        final SlowEngine engine = new SlowEngine();
+        final RecordingPlayer player = new RecordingPlayer();
+        final SynthesizingNarrationBackend backend =
+                new SynthesizingNarrationBackend(engine, Map.of(), 50, null, player, 0.5f);
+        try {
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                backend.say("The first sentence is here. And the second one is right behind it.", false, false);
+                assertTrue(engine.writing.tryAcquire(5, TimeUnit.SECONDS), "The engine should get the first chunk");
+                backend.setVoice(1, 2);
+                backend.setLanguage("de");
+                backend.clear();
+                assertTrue(backend.active(), "The backend should stay available");
+                backend.say("Next message", false, false);
+            }, "Nothing should wait for the engine to finish the chunk");
+
+            engine.finished.release(2);
+            assertTrue(player.played.await(5, TimeUnit.SECONDS), "The next message should be played");
+            assertEquals(List.of("The first sentence is here.", "Next message"), engine.written,
+                    "The cleared narration's second chunk should not be synthesized");
+            assertEquals(List.of(0.5f), player.pitches,
+                    "Only the next message should be played, in the voice set after the clear");
+        } finally {
+            backend.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Closing kills an engine which never answers, which releases the synthesis thread")
+    void testCloseUnansweredEngine() throws InterruptedException {
+        final EngineProcess engine = new EngineProcess(List.of("sleep", "60"), true);
+        final SynthesizingNarrationBackend backend =
+                new SynthesizingNarrationBackend(engine, Map.of(), 0, null, new RecordingPlayer(), 0);
+        final Thread synthesis = Whitebox.getInternalState(backend, "thread");
+
+        backend.say("Is anybody there?", false, false);
+        Thread.sleep(200);
+        assertTrue(synthesis.isAlive(), "The synthesis thread should wait for the engine");
+        backend.close();
+        synthesis.join(5000);
+
+        assertFalse(synthesis.isAlive(), "The synthesis thread should stop once the engine is killed");
+        assertFalse(engine.ensureStarted(), "A closed engine should not be started again");
+    }
+
+    /**
+     * Engine which writes silence for each line, once the test lets it finish.
+     */
+    private static class SlowEngine extends EngineProcess {
+        private final List<String> written = Collections.synchronizedList(new ArrayList<>());
+        private final Semaphore writing = new Semaphore(0);
+        private final Semaphore finished = new Semaphore(0);
+
+        SlowEngine() {
+            super(List.of("slow-engine"), true);
+        }
+
+        @Override
+        void start() {}
+
+        @Override
+        boolean ensureStarted() {
+            return true;
+        }
+
+        @Override
+        boolean writeLine(final String text) {
+            written.add(text);
+            writing.release();
+            return true;
+        }
+
+        @Override
+        String readLine() {
+            finished.acquireUninterruptibly();
+            final AudioFormat format = new AudioFormat(16000, 16, 1, true, false);
+            try {
+                final Path file = Files.createTempFile("narratechat", ".wav");
+                AudioSystem.write(new AudioInputStream(new ByteArrayInputStream(new byte[320]), format, 160),
+                        AudioFileFormat.Type.WAVE, file.toFile());
+                return file.toString();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        void stop() {}
+    }
+
+    /**
+     * Player which records the pitch of each clip instead of playing it.
+     */
+    private static class RecordingPlayer extends AudioPlayer {
+        private final List<Float> pitches = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch played = new CountDownLatch(1);
+
+        @Override
+        public void play(final AudioClip clip, final float pitch, final long requestedAt) {
+            pitches.add(pitch);
+            played.countDown();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.config;
+
+import com.casewalker.narratechat.narration.NarrationRoute;
+import com.casewalker.narratechat.narration.NarrationTemplates;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the per-server profiles of the {@link NarrateChatConfig} and their reloading by {@link ServerProfiles}.
+ *
+ * @author Case Walker
+ */
+public class NarrateChatConfigTest {
+
+    private static final String CONFIG = """
+            {
+              "globalRatePerSecond": 2.0,
+              "narrateGame": true,
+              "serverProfiles": {
+                "MC.Example.com": { "globalRatePerSecond": 5.0, "narrateGame": false },
+                "test.example.com:25566": { "narrationBackend": "process" }
+              }
+            }
+            """;
+
+    @Test
+    @DisplayName("A server's profile overrides only the settings it names")
+    void testProfileOverrides() throws IOException {
+        final NarrateChatConfig base = load(CONFIG);
+        final NarrateChatConfig effective = base.forServer("mc.example.com");
+
+        assertEquals(5.0, effective.globalRatePerSecond, "The profile should override the rate limit");
+        assertEquals(false, effective.narrateGame, "The profile should override the game message filter");
+        assertEquals(base.queueCapacity, effective.queueCapacity, "Other settings should be kept");
+        assertTrue(effective.serverProfiles.isEmpty(), "The effective config should not carry the profiles");
+        assertEquals(2.0, base.globalRatePerSecond, "The base config should not change");
+    }
+
+    @Test
+    @DisplayName("Server addresses match case-insensitively, with or without their port")
+    void testAddressMatching() throws IOException {
+        final NarrateChatConfig base = load(CONFIG);
+
+        assertEquals(5.0, base.forServer("mc.example.com:25565").globalRatePerSecond,
+                "A profile without a port should match any port");
+        assertEquals("process", base.forServer("TEST.example.com:25566").narrationBackend,
+                "A profile with a port should match that port");
+        assertSame(base, base.forServer("test.example.com"), "A profile with a port should not match other ports");
+        assertSame(base, base.forServer(null), "Singleplayer should use the base config");
+    }
+
+    @Test
+    @DisplayName("Reloading the file applies the new settings for the current server")
+    void testReload() throws IOException {
+        final Path dir = Files.createTempDirectory("narratechat");
+        try {
+            Files.writeString(dir.resolve(NarrateChatConfig.FILE_NAME), CONFIG);
+            NarrateChatConfig.load(dir);
+            final List<NarrateChatConfig> applied = new ArrayList<>();
+            final ServerProfiles profiles = new ServerProfiles(dir, applied::add);
+
+            profiles.join("mc.example.com");
+            Files.writeString(dir.resolve(NarrateChatConfig.FILE_NAME), CONFIG.replace("5.0", "7.0"));
+            profiles.reload();
+            profiles.leave();
+
+            assertEquals(3, applied.size(), "Each change should apply a new config");
+            assertEquals(5.0, applied.get(0).globalRatePerSecond, "Joining should apply the server's profile");
+            assertEquals(7.0, applied.get(1).globalRatePerSecond, "Reloading should apply the edited profile");
+            assertEquals(2.0, applied.get(2).globalRatePerSecond, "Leaving should go back to the base settings");
+        } finally {
+            Files.deleteIfExists(dir.resolve(NarrateChatConfig.FILE_NAME));
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    @DisplayName("Reloading a file which cannot be parsed keeps the previous settings")
+    void testReloadInvalid() throws IOException {
+        final Path dir = Files.createTempDirectory("narratechat");
+        try {
+            Files.writeString(dir.resolve(NarrateChatConfig.FILE_NAME), CONFIG);
+            final NarrateChatConfig loaded = NarrateChatConfig.load(dir);
+            final List<NarrateChatConfig> applied = new ArrayList<>();
+            final ServerProfiles profiles = new ServerProfiles(dir, applied::add);
+
+            Files.writeString(dir.resolve(NarrateChatConfig.FILE_NAME), CONFIG.substring(0, CONFIG.length() / 2));
+            profiles.reload();
+            Files.writeString(dir.resolve(NarrateChatConfig.FILE_NAME), "");
+            profiles.reload();
+
+            assertTrue(applied.isEmpty(), "A half-written or empty file should not be applied");
+            assertSame(loaded, NarrateChatConfig.get(), "The previous config should stay active");
+        } finally {
+            Files.deleteIfExists(dir.resolve(NarrateChatConfig.FILE_NAME));
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    @DisplayName("Custom narration modes are sorted by id, and invalid or duplicate ids are dropped")
+    void testNarrationModes() throws IOException {
+        final NarrateChatConfig config = load("""
+                {
+                  "narrationModes": [
+                    { "id": 9, "name": "Team", "routes": ["team", "MENTION"] },
+                    { "id": 2, "name": "Clashes with vanilla", "routes": ["CHAT"] },
+                    { "id": 6, "name": "Whispers", "routes": ["WHISPER"] },
+                    { "id": 9, "name": "Duplicate", "routes": [] }
+                  ]
+                }
+                """);
+
+        assertEquals(List.of("Whispers", "Team"), config.narrationModes.stream().map(mode -> mode.name).toList(),
+                "Only valid modes should be kept, in order of their id");
+        assertEquals(NarrationRoute.TEAM.bit() | NarrationRoute.MENTION.bit(),
+                NarrationRoute.mask(config.narrationModes.get(1).routes), "Route names should ignore case");
+    }
+
+    @Test
+    @DisplayName("Narration templates without a key or text are dropped rather than breaking the dispatcher")
+    void testNullNarrationTemplates() throws IOException {
+        final NarrateChatConfig config = load("""
+                {
+                  "narrationTemplates": { "some.key": null, "multiplayer.player.left": "%s is gone" }
+                }
+                """);
+
+        assertEquals(Map.of("multiplayer.player.left", "%s is gone"), config.narrationTemplates,
+                "Only the template with text should be kept");
+        assertNotNull(new NarrationTemplates(config), "The remaining templates should compile");
+    }
+
+    private static NarrateChatConfig load(final String json) throws IOException {
+        final Path dir = Files.createTempDirectory("narratechat");
+        try {
+            Files.writeString(dir.resolve(NarrateChatConfig.FILE_NAME), json);
+            return NarrateChatConfig.load(dir);
+        } finally {
+            Files.deleteIfExists(dir.resolve(NarrateChatConfig.FILE_NAME));
+            Files.delete(dir);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.metrics;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test functionality within the {@link LatencyHistogram} and {@link NarrationMetrics}.
+ *
+ * @author Case Walker
+ */
+public class NarrationMetricsTest {
+
+    @Test
+    @DisplayName("Histogram percentiles are accurate to within one sub-bucket")
+    void testHistogramPercentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 10_000; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(10_000, histogram.count(), "Every value should be counted");
+        assertEquals(10_000, histogram.max(), "The max should be exact");
+        final long p50 = histogram.percentile(50);
+        final long p99 = histogram.percentile(99);
+        assertTrue(p50 >= 5_000 && p50 <= 5_000 * 17 / 16, "p50 should be close to 5000 but was " + p50);
+        assertTrue(p99 >= 9_900 && p99 <= 9_900 * 17 / 16, "p99 should be close to 9900 but was " + p99);
+
+        histogram.reset();
+        assertEquals(0, histogram.count(), "Reset should clear all buckets");
+        assertEquals(0, histogram.percentile(50), "An empty histogram should report zero");
+    }
+
+    @Test
+    @DisplayName("Nothing is recorded while metrics are disabled")
+    void testDisabled() {
+        final NarrationMetrics metrics = new NarrationMetrics();
+        metrics.increment(NarrationMetrics.Counter.RECEIVED);
+        assertEquals(0, metrics.get(NarrationMetrics.Counter.RECEIVED), "Disabled metrics should not count");
+
+        metrics.configure(true, 0);
+        metrics.increment(NarrationMetrics.Counter.RECEIVED);
+        metrics.recordNarrated(0, 5_000_000);
+        assertEquals(1, metrics.get(NarrationMetrics.Counter.RECEIVED), "Enabled metrics should count");
+        assertEquals(1, metrics.get(NarrationMetrics.Counter.NARRATED), "Narrations should be counted");
+        assertTrue(metrics.summary().contains("received=1"), "The summary should include the counters");
+    }
+}
@@ -23,7 +23,16 @@
  */
 package com.casewalker.narratechat.mixin;
 
+import com.casewalker.narratechat.NarrateChatMod;
+import com.casewalker.narratechat.backend.MinecraftNarrationBackend;
+import com.casewalker.narratechat.config.NarrateChatConfig;
+import com.casewalker.narratechat.config.NarrationModeConfig;
+import com.casewalker.narratechat.narration.NarrationDispatcher;
+import com.casewalker.narratechat.narration.NarrationModes;
+import com.casewalker.narratechat.narration.NarrationRoute;
+import com.casewalker.narratechat.util.Util;
 import com.mojang.text2speech.Narrator;
+import net.minecraft.client.option.NarratorMode;
 import net.minecraft.text.Text;
 import net.minecraft.util.Pair;
 import org.junit.jupiter.api.BeforeAll;
@@ -32,12 +41,16 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.powermock.reflect.Whitebox;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import sun.misc.Unsafe;
 
+import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -49,6 +62,7 @@ public class NarratorManagerMixinTest {
 
     private static final NarratorManagerMixinTestImpl narratorManagerMixin = new NarratorManagerMixinTestImpl();
     private static final DummyNarrator narrator = new DummyNarrator();
+    private static NarrationDispatcher dispatcher;
 
     @BeforeAll
     static void setTheNarrator() {
@@ -60,6 +74,13 @@ public class NarratorManagerMixinTest {
         narratorManagerMixin.isAllChat = false;
         narrator.active = false;
         narrator.clear();
+
+        final NarrateChatConfig config = new NarrateChatConfig();
+        config.globalRatePerSecond = 0;
+        config.senderRatePerSecond = 0;
+        config.batchMaxChars = 0;
+        dispatcher = new NarrationDispatcher(new MinecraftNarrationBackend(narrator), config, () -> "Player");
+        Whitebox.setInternalState(narratorManagerMixin, "narrationDispatcher", dispatcher);
     }
 
     @Test
@@ -69,6 +90,7 @@ public class NarratorManagerMixinTest {
         narrator.active = true;
 
         narratorManagerMixin.onNarrateChatMessage(() -> Text.of("text2"), new CallbackInfo("test", true));
+        dispatcher.drain();
 
         assertTrue(narrator.thingsSaid.isEmpty(),
                 "Narrator should not get any narrations if the narrator mode is wrong. Received: " +
@@ -82,6 +104,7 @@ public class NarratorManagerMixinTest {
         narrator.active = false;
 
         narratorManagerMixin.onNarrateChatMessage(() -> Text.of("text2"), new CallbackInfo("test", true));
+        dispatcher.drain();
 
         assertEquals(1, narrator.thingsSaid.size(), "Narrator should have received 1 narration");
     }
@@ -95,6 +118,7 @@ public class NarratorManagerMixinTest {
         CallbackInfo ci = new CallbackInfo("test", true);
 
         narratorManagerMixin.onNarrateChatMessage(() -> Text.of("text"), ci);
+        dispatcher.drain();
 
         assertEquals(1, narrator.thingsSaid.size(), "Narrator should have received 1 narration");
         assertFalse(narrator.thingsSaid.get(0).getRight(), "Interrupt should be false for chat message");
@@ -110,6 +134,7 @@ public class NarratorManagerMixinTest {
         CallbackInfo ci = new CallbackInfo("test", true);
 
         narratorManagerMixin.onNarrateChatMessage(() -> Text.of("text"), ci);
+        dispatcher.drain();
 
         assertEquals(1, narrator.thingsSaid.size(), "Narrator should have received 1 narration");
         assertFalse(narrator.thingsSaid.get(0).getRight(), "Interrupt should be false even for a system message");
@@ -144,6 +169,7 @@ public class NarratorManagerMixinTest {
         narratorManagerMixin.isAllChat = false;
 
         narratorManagerMixin.forceNarrateOnMode(Text.of("force test 1"));
+        dispatcher.drain();
 
         assertTrue(narrator.thingsSaid.isEmpty(),
                 "Narrator should not get any narrations when narration mode is wrong. Received: " +
@@ -156,17 +182,146 @@ public class NarratorManagerMixinTest {
         narratorManagerMixin.isAllChat = true;
 
         narratorManagerMixin.forceNarrateOnMode(Text.of("force test 2"));
+        dispatcher.drain();
 
         assertEquals(1, narrator.thingsSaid.size(), "Narrator should have received 1 narration");
     }
 
+    @Test
+    @DisplayName("A message reaching both narration paths is only narrated once")
+    void testDuplicateAcrossPaths() {
+        narratorManagerMixin.isAllChat = true;
+
+        narratorManagerMixin.forceNarrateOnMode(Text.of("double"));
+        narratorManagerMixin.onNarrateChatMessage(() -> Text.of("double"), new CallbackInfo("test", true));
+        dispatcher.drain();
+
+        assertEquals(1, narrator.thingsSaid.size(), "Narrator should have received 1 narration");
+    }
+
+    @Test
+    @DisplayName("The cached narrator mode stays correct while cycling through all modes (narrationRouting)")
+    void testCachedModeCycling() {
+        final NarratorMode allChat = standIn(Util.ALL_CHAT_ID);
+        final NarratorMode whispers = standIn(Util.ALL_CHAT_ID + 1);
+        final NarrationModeConfig whisperMode = new NarrationModeConfig();
+        whisperMode.id = Util.ALL_CHAT_ID + 1;
+        whisperMode.name = "Whispers";
+        whisperMode.routes = List.of("WHISPER");
+        final NarrateChatConfig config = new NarrateChatConfig();
+        config.narrationModes = List.of(whisperMode);
+        NarrationModes.configure(config);
+        try {
+            final CachedModeTestImpl manager = new CachedModeTestImpl();
+            manager.resolvedMode = allChat;
+            Whitebox.setInternalState(manager, "narrationDispatcher", dispatcher);
+
+            assertEquals(NarrationRoute.ALL, manager.narrationRouting(),
+                    "Mode should be resolved from the options the first time");
+            assertEquals(NarrationRoute.ALL, manager.narrationRouting(), "Cached mode should still be ALL_CHAT");
+            assertEquals(1, manager.resolveCount, "Mode should only be resolved from the options once");
+
+            // Cycle twice through every mode the way the narrator keybind does, including ALL_CHAT and a custom mode
+            final List<NarratorMode> modes = new ArrayList<>(List.of(NarratorMode.values()));
+            modes.add(allChat);
+            modes.add(whispers);
+            for (int i = 0; i < modes.size() * 2; i++) {
+                final NarratorMode mode = modes.get(i % modes.size());
+                final int expected = mode == allChat ? NarrationRoute.ALL
+                        : mode == whispers ? NarrationRoute.WHISPER.bit() : 0;
+                manager.onOnModeChange(mode, new CallbackInfo("test", false));
+                assertEquals(expected, manager.narrationRouting(),
+                        "Cached check should match the mode just selected: " + mode.getId());
+            }
+            assertEquals(1, manager.resolveCount, "Mode changes should not resolve the mode from the options again");
+        } finally {
+            NarrationModes.configure(new NarrateChatConfig());
+        }
+    }
+
+    @Test
+    @DisplayName("Switching away from ALL_CHAT drops the waiting narrations (onOnModeChange)")
+    void testModeChangeStopsNarration() {
+        final CachedModeTestImpl manager = new CachedModeTestImpl();
+        manager.resolvedMode = standIn(Util.ALL_CHAT_ID);
+        Whitebox.setInternalState(manager, "narrator", narrator);
+        Whitebox.setInternalState(manager, "narrationDispatcher", dispatcher);
+
+        manager.onNarrateChatMessage(() -> Text.of("stale"), new CallbackInfo("test", true));
+        assertEquals(1, dispatcher.pending(), "The message should be waiting while in ALL_CHAT");
+        manager.onOnModeChange(NarratorMode.CHAT, new CallbackInfo("test", false));
+        dispatcher.drain();
+
+        assertTrue(narrator.thingsSaid.isEmpty(), "Nothing should be narrated after leaving ALL_CHAT");
+        assertEquals(0, dispatcher.pending(), "The waiting narration should be dropped");
+    }
+
+    @Test
+    @DisplayName("Narrations go to the vanilla narrator until the dispatcher is built in the background (onInit)")
+    void testLazyDispatcher() throws InterruptedException {
+        final NarratorManagerMixinTestImpl manager = new NarratorManagerMixinTestImpl();
+        manager.isAllChat = true;
+        Whitebox.setInternalState(manager, "narrator", narrator);
+        manager.onInit(new CallbackInfo("test", false));
+        assertNull(Whitebox.getInternalState(manager, "narrationDispatcher"),
+                "The dispatcher should not be built during the game's startup");
+
+        final CallbackInfo ci = new CallbackInfo("test", true);
+        manager.onNarrateChatMessage(() -> Text.of("early"), ci);
+        assertEquals(List.of("early"), narrator.thingsSaid.stream().map(Pair::getLeft).toList(),
+                "The vanilla narrator should speak while the dispatcher is not ready");
+        assertTrue(ci.isCancelled(), "The vanilla method should still be cancelled");
+
+        NarrationDispatcher built = null;
+        for (int i = 0; i < 500 && built == null; i++) {
+            Thread.sleep(10);
+            built = Whitebox.getInternalState(manager, "narrationDispatcher");
+        }
+        assertNotNull(built, "The first use should have started building the dispatcher");
+        built.stop();
+        assertTrue(NarrateChatMod.STARTUP.report().contains("narration dispatcher"),
+                "Building the dispatcher should be part of the startup report");
+    }
+
+    /**
+     * Create a stand-in for a narrator mode added by {@link NarratorModeMixin}, which is not applied in unit tests.
+     * Only its id is set, which is all the mod looks at.
+     *
+     * @param id Id of the mode
+     * @return A new mode which is not among {@link NarratorMode#values()}
+     */
+    private static NarratorMode standIn(final int id) {
+        try {
+            final Field theUnsafe = Unsafe.class.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            final Unsafe unsafe = (Unsafe) theUnsafe.get(null);
+            final NarratorMode mode = (NarratorMode) unsafe.allocateInstance(NarratorMode.class);
+            final Field idField = NarratorMode.class.getDeclaredField("id");
+            idField.setAccessible(true);
+            idField.setInt(mode, id);
+            return mode;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not create a stand-in narrator mode", e);
+        }
+    }
+
     /**
      * Concrete implementation for the {@link NarratorManagerMixin} abstract class.
      */
     public static class NarratorManagerMixinTestImpl extends NarratorManagerMixin {
         public void debugPrintMessage(String var1) {}
         public boolean isAllChat;
-        boolean narratorModeIsAllChat() { return isAllChat; }
+        int narrationRouting() { return isAllChat ? NarrationRoute.ALL : 0; }
+    }
+
+    /**
+     * Concrete implementation for the {@link NarratorManagerMixin} abstract class which keeps the real mode cache.
+     */
+    public static class CachedModeTestImpl extends NarratorManagerMixin {
+        public void debugPrintMessage(String var1) {}
+        public NarratorMode resolvedMode;
+        public int resolveCount;
+        NarratorMode resolveNarratorMode() { resolveCount++; return resolvedMode; }
     }
 
     /**
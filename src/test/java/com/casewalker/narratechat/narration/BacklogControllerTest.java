@@ -0,0 +1,220 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.narration;
+
+import com.casewalker.narratechat.backend.MinecraftNarrationBackend;
+import com.casewalker.narratechat.backend.NarrationBackend;
+import com.casewalker.narratechat.config.NarrateChatConfig;
+import com.casewalker.narratechat.narration.BacklogController.Level;
+import com.mojang.text2speech.Narrator;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the {@link BacklogController}, on its own and in a deterministic simulation of the {@link NarrationDispatcher}
+ * worker driven by synthetic chat at different rates.
+ *
+ * @author Case Walker
+ */
+public class BacklogControllerTest {
+
+    private static final long TICK = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Twelve words and 60 characters, about four seconds of speech at 15 characters per second.
+     */
+    private static final String MESSAGE = "one two three four five six seven eight nine ten eleven %03d";
+
+    private long now;
+
+    @Test
+    @DisplayName("Levels escalate at their thresholds and only drop below half of them")
+    void testHysteresis() {
+        final BacklogController controller = new BacklogController(config());
+
+        assertEquals(Level.NORMAL, controller.update(1, 9 * SECOND), "Below the first threshold is normal");
+        assertEquals(Level.FAST, controller.update(2, 10 * SECOND), "The first threshold should speed up");
+        assertEquals(Level.ABBREVIATE, controller.update(3, 25 * SECOND), "The second threshold should abbreviate");
+        assertEquals(Level.ABBREVIATE, controller.update(3, 11 * SECOND), "Half of the threshold should hold");
+        assertEquals(Level.FAST, controller.update(2, 9 * SECOND), "Below half should step down");
+        assertEquals(Level.SKIP, controller.update(32, SECOND), "A deep queue should skip regardless of time");
+        assertEquals(Level.NORMAL, controller.update(0, 0), "An empty queue should be normal");
+        assertEquals("a b", new BacklogController(config()).abbreviate("a b"), "Normal should not abbreviate");
+    }
+
+    @Test
+    @DisplayName("A small skip depth still lets the narrator stop skipping while messages wait")
+    void testSmallSkipDepth() {
+        final NarrateChatConfig config = config();
+        config.backlogSkipDepth = 1;
+        final BacklogController controller = new BacklogController(config.copy());
+
+        assertEquals(Level.SKIP, controller.update(4, 0), "The smallest skip depth should skip");
+        assertEquals(Level.SKIP, controller.update(2, 0), "Half of the skip depth should hold");
+        assertEquals(Level.NORMAL, controller.update(1, 0), "Skipping should stop below half of the skip depth");
+    }
+
+    @Test
+    @DisplayName("Slow chat never leaves the normal level")
+    void testSlowChat() {
+        final RecordingNarrator narrator = new RecordingNarrator();
+        final NarrationDispatcher dispatcher = dispatcher(narrator);
+
+        final Set<Level> levels = simulate(dispatcher, 60, 5 * SECOND, 0);
+
+        assertEquals(EnumSet.of(Level.NORMAL), levels, "Chat slower than speech should never build a backlog");
+        assertEquals(60, narrator.thingsSaid.size(), "Every message should be spoken");
+        assertEquals(MESSAGE.formatted(0), narrator.thingsSaid.get(0), "Messages should not be shortened");
+    }
+
+    @Test
+    @DisplayName("A flood escalates through every level, catches up, and returns to normal once it stops")
+    void testFlood() {
+        final RecordingNarrator narrator = new RecordingNarrator();
+        final NarrationDispatcher dispatcher = dispatcher(narrator);
+
+        // One four-second message every second for a minute, then two quiet minutes
+        final Set<Level> levels = simulate(dispatcher, 60, SECOND, 120);
+
+        assertEquals(EnumSet.allOf(Level.class), levels, "The flood should pass through every level");
+        assertEquals(Level.NORMAL, dispatcher.backlogLevel(), "The level should be normal once the backlog cleared");
+        assertEquals(0, dispatcher.pending(), "The backlog should be cleared");
+        assertTrue(narrator.thingsSaid.size() < 60, "Some messages should have been skipped");
+        assertTrue(narrator.thingsSaid.stream().anyMatch(text -> text.split(" ").length == 8),
+                "Some messages should have been abbreviated");
+        assertEquals(MESSAGE.formatted(59), narrator.thingsSaid.get(narrator.thingsSaid.size() - 1),
+                "The newest message should be spoken in full once the backlog has cleared");
+    }
+
+    @Test
+    @DisplayName("A new config while speaking fast goes back to the normal rate, and its own fast rate is used")
+    void testReconfigureWhileFast() {
+        final RateBackend backend = new RateBackend();
+        final NarrationDispatcher dispatcher = new NarrationDispatcher(backend, config(), () -> "Player", () -> now);
+
+        for (int i = 0; i < 4; i++) {
+            dispatcher.submit(new Narration(MESSAGE.formatted(i), "Alex", NarrationType.CHAT, false, now));
+        }
+        dispatcher.step();
+        assertEquals(List.of(1.5f), backend.rates, "A backlog should speed up the backend");
+
+        // Like leaving a flooded server, which stops the narration and switches to the base config
+        dispatcher.cancel();
+        final NarrateChatConfig reloaded = config();
+        reloaded.backlogFastRate = 2;
+        dispatcher.reconfigure(reloaded);
+        dispatcher.step();
+        assertEquals(List.of(1.5f, 1f), backend.rates, "The normal rate should be restored with the new config");
+
+        for (int i = 4; i < 8; i++) {
+            dispatcher.submit(new Narration(MESSAGE.formatted(i), "Alex", NarrationType.CHAT, false, now));
+        }
+        dispatcher.step();
+        assertEquals(List.of(1.5f, 1f, 2f), backend.rates, "The reloaded fast rate should be used");
+    }
+
+    /**
+     * Submit messages at a fixed interval while running the worker one tick at a time.
+     *
+     * @param messages Number of messages to submit
+     * @param interval Time between messages
+     * @param quietSeconds Time to keep running the worker after the last message
+     * @return Every level the dispatcher passed through
+     */
+    private Set<Level> simulate(
+            final NarrationDispatcher dispatcher,
+            final int messages,
+            final long interval,
+            final int quietSeconds) {
+        final Set<Level> levels = EnumSet.noneOf(Level.class);
+        final long end = now + messages * interval + quietSeconds * SECOND;
+        long nextMessage = now;
+        int sent = 0;
+        while (now < end) {
+            if (sent < messages && now >= nextMessage) {
+                dispatcher.submit(new Narration(MESSAGE.formatted(sent++), "Alex", NarrationType.CHAT, false, now));
+                nextMessage += interval;
+            }
+            while (dispatcher.step() == 0) {
+                levels.add(dispatcher.backlogLevel());
+            }
+            levels.add(dispatcher.backlogLevel());
+            now += TICK;
+        }
+        return levels;
+    }
+
+    private NarrationDispatcher dispatcher(final Narrator narrator) {
+        return new NarrationDispatcher(new MinecraftNarrationBackend(narrator), config(), () -> "Player", () -> now);
+    }
+
+    /**
+     * Create a config with the default backlog thresholds and nothing else which drops messages.
+     */
+    private static NarrateChatConfig config() {
+        final NarrateChatConfig config = new NarrateChatConfig();
+        config.queueCapacity = 256;
+        config.maxNarrationAgeMillis = 0;
+        config.lowPriorityMaxAgeMillis = 0;
+        config.globalRatePerSecond = 0;
+        config.senderRatePerSecond = 0;
+        config.batchMaxChars = 0;
+        return config;
+    }
+
+    /**
+     * Backend which supports any speaking rate and records the rates it is asked to use.
+     */
+    private static class RateBackend implements NarrationBackend {
+        public final List<Float> rates = new ArrayList<>();
+
+        public void say(final String text, final boolean interrupt) {}
+        public boolean setRate(final float rate) { rates.add(rate); return true; }
+        public void clear() {}
+        public boolean active() { return true; }
+        public void close() {}
+    }
+
+    /**
+     * Narrator which records what it is told to say.
+     */
+    private static class RecordingNarrator implements Narrator {
+        public final List<String> thingsSaid = new ArrayList<>();
+
+        public void say(String msg, boolean interrupt) { thingsSaid.add(msg); }
+        public void clear() {}
+        public boolean active() { return true; }
+        public void destroy() {}
+    }
+}
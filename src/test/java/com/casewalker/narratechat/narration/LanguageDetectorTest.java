@@ -0,0 +1,130 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.narration;
+
+import com.casewalker.narratechat.backend.NarrationBackend;
+import com.casewalker.narratechat.config.NarrateChatConfig;
+import net.minecraft.text.Text;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Test the detection of chat languages by the {@link LanguageDetector} and their use by the {@link
+ * NarrationDispatcher}.
+ *
+ * @author Case Walker
+ */
+public class LanguageDetectorTest {
+
+    @Test
+    @DisplayName("Messages are classified by their trigrams, short ones not at all")
+    void testDetect() {
+        assertEquals("en", LanguageDetector.detect("does anybody know where the nearest stronghold is"),
+                "English should be detected");
+        assertEquals("de", LanguageDetector.detect("ich brauche noch ein paar diamanten für meine spitzhacke"),
+                "German should be detected");
+        assertEquals("fr", LanguageDetector.detect("quelqu'un a des diamants à vendre? je paie bien"),
+                "French should be detected");
+        assertEquals("es", LanguageDetector.detect("¿dónde está la fortaleza más cercana?"),
+                "Spanish should be detected");
+        assertEquals("nl", LanguageDetector.detect("waar is de dichtstbijzijnde vesting"), "Dutch should be detected");
+        assertNull(LanguageDetector.detect("gg"), "Messages this short should not be classified");
+        assertNull(LanguageDetector.detect("12345 !!!"), "Messages without letters should not be classified");
+    }
+
+    @Test
+    @DisplayName("A sender's language is reused until the confidence in it has decayed")
+    void testSenderCache() {
+        final LanguageDetector detector = new LanguageDetector(config());
+        assertEquals("de", detector.languageOf(chat("Steve", "ich brauche noch ein paar diamanten"), 0),
+                "The first message should be classified");
+        assertEquals("de", detector.languageOf(chat("Steve", "gg"), 1),
+                "Short messages should take the sender's language");
+        assertEquals("de", detector.languageOf(chat("Steve", "where is the nearest stronghold"), 2),
+                "A trusted language should be reused without classifying");
+        assertEquals(1, detector.classifications(), "Only the first message should have been classified");
+
+        final long later = TimeUnit.HOURS.toNanos(1);
+        assertEquals("en", detector.languageOf(chat("Steve", "where is the nearest stronghold"), later),
+                "Once the confidence has decayed, a message in another language should replace the language");
+        assertEquals(2, detector.classifications(), "The message after the decay should have been classified");
+
+        assertNull(detector.languageOf(chat("Alex", "gg"), later), "A new sender's short message has no language");
+        assertNull(detector.languageOf(new Narration("Alex joined the game", null, NarrationType.GAME, false, later),
+                later), "Messages without a sender should not be given a language");
+    }
+
+    @Test
+    @DisplayName("The backend switches languages between senders, and batches do not mix languages")
+    void testDispatcher() {
+        final LanguageBackend backend = new LanguageBackend();
+        final NarrateChatConfig config = config();
+        config.globalRatePerSecond = 0;
+        config.senderRatePerSecond = 0;
+        final NarrationDispatcher dispatcher = new NarrationDispatcher(backend, config, () -> "Player", () -> 0);
+
+        for (String[] message : new String[][]{
+                {"Steve", "ich brauche noch ein paar diamanten"},
+                {"Steve", "wer hat eine spitzhacke für mich"},
+                {"Alex", "quelqu'un a des diamants à vendre?"}}) {
+            dispatcher.submit(new Narration(message[1], message[0], NarrationType.CHAT, false, 0));
+        }
+        dispatcher.drain();
+
+        assertEquals(List.of("de", "fr"), backend.languagesSet, "The language should be switched for each sender");
+        assertEquals(2, backend.thingsSaid.size(), "Only the messages in the same language should be batched");
+    }
+
+    private static NarrateChatConfig config() {
+        final NarrateChatConfig config = new NarrateChatConfig();
+        config.languageDetection = true;
+        return config;
+    }
+
+    private static Narration chat(final String sender, final String message) {
+        return new Narration(() -> Text.translatable("chat.type.text.narrate", Text.literal(sender),
+                Text.literal(message)), NarrationType.CHAT, false, 0);
+    }
+
+    /**
+     * Backend which records what it is asked to do.
+     */
+    private static class LanguageBackend implements NarrationBackend {
+        private final List<String> thingsSaid = new ArrayList<>();
+        private final List<String> languagesSet = new ArrayList<>();
+
+        public void say(final String text, final boolean interrupt) { thingsSaid.add(text); }
+        public void setLanguage(final String language) { languagesSet.add(language); }
+        public void clear() {}
+        public boolean active() { return true; }
+        public void close() {}
+    }
+}
@@ -0,0 +1,497 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.narration;
+
+import com.casewalker.narratechat.backend.MinecraftNarrationBackend;
+import com.casewalker.narratechat.backend.NarrationBackend;
+import com.casewalker.narratechat.config.NarrateChatConfig;
+import com.casewalker.narratechat.config.QueueOverflowPolicy;
+import com.mojang.text2speech.Narrator;
+import net.minecraft.text.Text;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test functionality within the {@link NarrationDispatcher}, its {@link NarrationQueue} and its {@link FloodControl}.
+ *
+ * @author Case Walker
+ */
+public class NarrationDispatcherTest {
+
+    private long now = 0;
+
+    @Test
+    @DisplayName("The queue rounds its capacity up to a power of two and keeps FIFO order")
+    void testQueueOrderAndCapacity() {
+        final NarrationQueue<String> queue = new NarrationQueue<>(3);
+
+        assertEquals(4, queue.capacity(), "Capacity should be rounded up to the next power of two");
+        for (String s : List.of("a", "b", "c", "d")) {
+            assertTrue(queue.offer(s), "Queue should accept elements up to its capacity");
+        }
+        assertFalse(queue.offer("e"), "Queue should reject elements when full");
+        assertEquals(4, queue.size(), "Queue should report its size");
+        assertEquals("a", queue.poll(), "Queue should be FIFO");
+        assertTrue(queue.offer("e"), "Queue should accept elements again after a poll");
+        assertEquals(4, queue.clear(), "Clear should report the number of removed elements");
+        assertNull(queue.poll(), "Queue should be empty after a clear");
+    }
+
+    @Test
+    @DisplayName("DROP_OLDEST discards the oldest narrations when the queue is full")
+    void testDropOldest() {
+        final RecordingNarrator narrator = new RecordingNarrator();
+        final NarrationDispatcher dispatcher = dispatcher(narrator, config(2, QueueOverflowPolicy.DROP_OLDEST));
+
+        submitAll(dispatcher, "1", "2", "3", "4");
+        dispatcher.drain();
+
+        assertEquals(List.of("3", "4"), narrator.thingsSaid, "Only the two newest narrations should be spoken");
+    }
+
+    @Test
+    @DisplayName("DROP_NEWEST discards new narrations when the queue is full")
+    void testDropNewest() {
+        final RecordingNarrator narrator = new RecordingNarrator();
+        final NarrationDispatcher dispatcher = dispatcher(narrator, config(2, QueueOverflowPolicy.DROP_NEWEST));
+
+        submitAll(dispatcher, "1", "2", "3", "4");
+        dispatcher.drain();
+
+        assertEquals(List.of("1", "2"), narrator.thingsSaid, "Only the two oldest narrations should be spoken");
+    }
+
+    @Test
+    @DisplayName("COLLAPSE discards the whole backlog when the queue is full")
+    void testCollapse() {
+        final RecordingNarrator narrator = new RecordingNarrator();
+        final NarrationDispatcher dispatcher = dispatcher(narrator, config(2, QueueOverflowPolicy.COLLAPSE));
+
+        submitAll(dispatcher, "1", "2", "3");
+        dispatcher.drain();
+
+        assertEquals(List.of("3"), narrator.thingsSaid, "Only the newest narration should be spoken");
+    }
+
+    @Test
+    @DisplayName("The worker thread speaks submitted narrations")
+    void testWorkerThread() throws InterruptedException {
+        final RecordingNarrator narrator = new RecordingNarrator();
+        final NarrationDispatcher dispatcher = dispatcher(narrator, config(8, QueueOverflowPolicy.DROP_OLDEST));
+        dispatcher.start();
+
+        try {
+            submitAll(dispatcher, "worker");
+            for (int i = 0; i < 200 && narrator.thingsSaid.isEmpty(); i++) {
+                Thread.sleep(5);
+            }
+        } finally {
+            dispatcher.stop();
+        }
+
+        assertEquals(List.of("worker"), narrator.thingsSaid, "Worker should have spoken the narration");
+    }
+
+    @Test
+    @DisplayName("Stopping waits for the worker to finish with the backend before closing it")
+    void testStopJoinsWorker() throws InterruptedException {
+        final List<String> events = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch saying = new CountDownLatch(1);
+        final NarrationBackend backend = new NarrationBackend() {
+            public void say(final String text, final boolean interrupt) {
+                events.add("say");
+                saying.countDown();
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(200));
+                events.add("said");
+            }
+            public void clear() {}
+            public boolean active() { return true; }
+            public void close() { events.add("close"); }
+        };
+        final NarrationDispatcher dispatcher = new NarrationDispatcher(
+                backend, config(8, QueueOverflowPolicy.DROP_OLDEST), () -> "Player", () -> now);
+        dispatcher.start();
+
+        submitAll(dispatcher, "slow");
+        assertTrue(saying.await(5, TimeUnit.SECONDS), "The worker should start speaking");
+        dispatcher.stop();
+
+        assertEquals(List.of("say", "said", "close"), events, "The backend should only be closed after it was used");
+    }
+
+    @Test
+    @DisplayName("Preprocessing threads keep the messages of each sender in order")
+    void testPreprocessingOrder() throws InterruptedException {
+        final RecordingNarrator narrator = new RecordingNarrator();
+        final NarrateChatConfig config = config(64, QueueOverflowPolicy.DROP_NEWEST);
+        config.preprocessingThreads = 3;
+        config.speechCharsPerSecond = 0;
+        config.backlogSkipDepth = 1000;
+        final NarrationDispatcher dispatcher = dispatcher(narrator, config);
+        dispatcher.start();
+
+        final String[] senders = { "Alice", "Bob", "Carol", "Dave" };
+        try {
+            for (int i = 0; i < 10; i++) {
+                for (String sender : senders) {
+                    assertTrue(dispatcher.submit(new Narration(sender + " " + i, sender, NarrationType.CHAT, false, 0)),
+                            "Submitting should not block or drop messages");
+                }
+            }
+            for (int i = 0; i < 400 && narrator.thingsSaid.size() < 40; i++) {
+                Thread.sleep(5);
+            }
+        } finally {
+            dispatcher.stop();
+        }
+
+        assertEquals(40, narrator.thingsSaid.size(), "Every message should have been spoken");
+        for (String sender : senders) {
+            final List<String> spoken = narrator.thingsSaid.stream().filter(said -> said.startsWith(sender)).toList();
+            for (int i = 0; i < spoken.size(); i++) {
+                assertEquals(sender + " " + i, spoken.get(i), "Messages of " + sender + " should be spoken in order");
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Only messages of the routes of the current narrator mode are narrated")
+    void testRouting() {
+        final RecordingNarrator narrator = new RecordingNarrator();
+        final NarrationDispatcher dispatcher = dispatcher(narrator, config(8, QueueOverflowPolicy.DROP_OLDEST));
+        dispatcher.setRouting(NarrationRoute.MENTION.bit() | NarrationRoute.SYSTEM.bit());
+
+        dispatcher.submit(new Narration("Steve says hello everyone", "Steve", NarrationType.CHAT, false, now));
+        dispatcher.submit(new Narration("Steve says hi Player", "Steve", NarrationType.CHAT, false, now));
+        dispatcher.submit(new Narration("Alex joined the game", null, NarrationType.SYSTEM, false, now));
+        dispatcher.submit(new Narration("Now in the Nether", null, NarrationType.GAME, false, now));
+        dispatcher.drain();
+
+        assertEquals(List.of("Steve says hi Player", "Alex joined the game"), narrator.thingsSaid,
+                "Only mentions and system messages should be narrated");
+    }
+
+    @Test
+    @DisplayName("Near-identical narrations waiting in the queue are merged into one utterance")
+    void testCoalescing() {
+        final RecordingNarrator narrator = new RecordingNarrator();
+        final NarrationDispatcher dispatcher = dispatcher(narrator, config(8, QueueOverflowPolicy.DROP_OLDEST));
+
+        submitAll(dispatcher, "Steve says hello", "Steve says Hello!", "Alex says hi", "steve says hello");
+        dispatcher.drain();
+        now += TimeUnit.SECONDS.toNanos(1);
+        submitAll(dispatcher, "Steve says hello");
+        dispatcher.drain();
+
+        assertEquals(List.of("Steve says hello, 3 times", "Alex says hi", "Steve says hello"), narrator.thingsSaid,
+                "Repeats should be merged only while the first copy is waiting");
+    }
+
+    @Test
+    @DisplayName("Narrations are not merged after the coalescing window has passed")
+    void testCoalescingWindow() {
+        final RecordingNarrator narrator = new RecordingNarrator();
+        final NarrationDispatcher dispatcher = dispatcher(narrator, config(8, QueueOverflowPolicy.DROP_OLDEST));
+
+        submitAll(dispatcher, "hello");
+        now += TimeUnit.SECONDS.toNanos(6);
+        submitAll(dispatcher, "hello");
+        dispatcher.drain();
+
+        assertEquals(List.of("hello", "hello"), narrator.thingsSaid, "Late repeats should be narrated separately");
+    }
+
+    @Test
+    @DisplayName("A message submitted twice in quick succession is only narrated once")
+    void testDuplicates() {
+        final RecordingNarrator narrator = new RecordingNarrator();
+        final NarrationDispatcher dispatcher = dispatcher(narrator, config(8, QueueOverflowPolicy.DROP_OLDEST));
+
+        submitAll(dispatcher, "twice");
+        dispatcher.drain();
+        submitAll(dispatcher, "twice");
+        now += TimeUnit.SECONDS.toNanos(1);
+        submitAll(dispatcher, "twice");
+        dispatcher.drain();
+
+        assertEquals(List.of("twice", "twice"), narrator.thingsSaid,
+                "Only the copy submitted after the duplicate window should be narrated again");
+    }
+
+    @Test
+    @DisplayName("Token buckets limit narrations per sender and globally")
+    void testRateLimits() {
+        final RecordingNarrator narrator = new RecordingNarrator();
+        final NarrateChatConfig config = config(64, QueueOverflowPolicy.DROP_OLDEST);
+        config.senderBurst = 2;
+        config.senderRatePerSecond = 1;
+        config.globalBurst = 3;
+        config.globalRatePerSecond = 2;
+        final NarrationDispatcher dispatcher = dispatcher(narrator, config);
+
+        for (int i = 0; i < 4; i++) {
+            dispatcher.submit(new Narration("steve " + i, "Steve", NarrationType.CHAT, false, now));
+        }
+        dispatcher.submit(new Narration("alex 0", "Alex", NarrationType.CHAT, false, now));
+        dispatcher.submit(new Narration("alex 1", "Alex", NarrationType.CHAT, false, now));
+        now += TimeUnit.SECONDS.toNanos(1);
+        dispatcher.submit(new Narration("steve 4", "Steve", NarrationType.CHAT, false, now));
+        dispatcher.drain();
+
+        assertEquals(List.of("steve 0", "steve 1", "alex 0", "steve 4"), narrator.thingsSaid,
+                "Senders should be limited by their own bucket and by the global bucket");
+    }
+
+    @Test
+    @DisplayName("Messages without a sender and whispers are not limited per sender")
+    void testRateLimitsWithoutSender() {
+        final RecordingNarrator narrator = new RecordingNarrator();
+        final NarrateChatConfig config = config(64, QueueOverflowPolicy.DROP_OLDEST);
+        config.senderBurst = 1;
+        config.senderRatePerSecond = 1;
+        config.duplicateWindowMillis = 0;
+        config.coalesceWindowMillis = 0;
+        final NarrationDispatcher dispatcher = dispatcher(narrator, config);
+
+        for (int i = 0; i < 4; i++) {
+            dispatcher.submit(new Narration("Player" + i + " joined the game", null, NarrationType.GAME, false, now));
+        }
+        for (int i = 0; i < 3; i++) {
+            dispatcher.submit(new Narration(() -> Text.translatable("commands.message.display.incoming", "Alex",
+                    "psst"), NarrationType.SYSTEM, false, now));
+        }
+        dispatcher.submit(new Narration("steve 0", "Steve", NarrationType.CHAT, false, now));
+        dispatcher.submit(new Narration("steve 1", "Steve", NarrationType.CHAT, false, now));
+        dispatcher.drain();
+
+        assertEquals(3, narrator.thingsSaid.stream().filter("commands.message.display.incoming"::equals).count(),
+                "Whispers should not be rate limited");
+        assertEquals(4, narrator.thingsSaid.stream().filter(text -> text.endsWith("joined the game")).count(),
+                "Messages without a sender should not share a bucket");
+        assertEquals(List.of("steve 0"), narrator.thingsSaid.stream().filter(text -> text.startsWith("steve")).toList(),
+                "Players should still be limited by their own bucket");
+    }
+
+    @Test
+    @DisplayName("Narrations older than the maximum age are dropped")
+    void testMaxAge() {
+        final RecordingNarrator narrator = new RecordingNarrator();
+        final NarrationDispatcher dispatcher = dispatcher(narrator, config(8, QueueOverflowPolicy.DROP_OLDEST));
+
+        submitAll(dispatcher, "old");
+        now += TimeUnit.SECONDS.toNanos(30);
+        submitAll(dispatcher, "new");
+        dispatcher.drain();
+
+        assertEquals(List.of("new"), narrator.thingsSaid, "Expired narrations should not be spoken");
+    }
+
+    @Test
+    @DisplayName("Mentions, whispers and alerts skip ahead of general chat")
+    void testPriorityLanes() {
+        final RecordingNarrator narrator = new RecordingNarrator();
+        final NarrationDispatcher dispatcher = dispatcher(narrator, config(8, QueueOverflowPolicy.DROP_OLDEST));
+
+        submitAll(dispatcher, "Steve says hello");
+        dispatcher.submit(new Narration(() -> Text.translatable("death.attack.generic", "Alex"),
+                NarrationType.SYSTEM, false, now));
+        dispatcher.submit(new Narration("Alex says hi player", "Alex", NarrationType.CHAT, false, now));
+        dispatcher.submit(new Narration(() -> Text.translatable("commands.message.display.incoming", "Alex", "psst"),
+                NarrationType.SYSTEM, false, now));
+        dispatcher.submit(new Narration("Player says hi Player", "Player", NarrationType.CHAT, false, now));
+        dispatcher.drain();
+
+        assertEquals(5, narrator.thingsSaid.size(), "All narrations should be spoken");
+        assertEquals("Alex says hi player", narrator.thingsSaid.get(0), "Mentions should be spoken first");
+        assertEquals("commands.message.display.incoming", narrator.thingsSaid.get(1), "Whispers should be next");
+        assertEquals("death.attack.generic", narrator.thingsSaid.get(2), "Alerts should be next");
+        assertEquals(List.of("Steve says hello", "Player says hi Player"), narrator.thingsSaid.subList(3, 5),
+                "General chat, including the player's own messages, should be last and in order");
+    }
+
+    @Test
+    @DisplayName("Only the player's name as a whole word, from another player, is a mention")
+    void testMentionMatching() {
+        final PriorityClassifier classifier = new PriorityClassifier(new NarrateChatConfig(), () -> "Al");
+
+        assertEquals(NarrationPriority.MENTION, classify(classifier, "Steve", "hey al, over here!"),
+                "The name as a word should be a mention");
+        assertEquals(NarrationPriority.MENTION, classify(classifier, "Steve", "AL"), "Case should not matter");
+        assertEquals(NarrationPriority.CHAT, classify(classifier, "Steve", "we also need all of it"),
+                "The name inside other words should not be a mention");
+        assertEquals(NarrationPriority.CHAT, classify(classifier, "Steve", "Al_2 and Al2 are here"),
+                "Longer player names should not be a mention");
+        assertEquals(NarrationPriority.CHAT, classify(classifier, null, "Al joined the game"),
+                "Messages without a sender should not be a mention");
+    }
+
+    @Test
+    @DisplayName("Stale low priority narrations are trimmed while mentions are kept")
+    void testLowPriorityTrimmed() {
+        final RecordingNarrator narrator = new RecordingNarrator();
+        final NarrationDispatcher dispatcher = dispatcher(narrator, config(8, QueueOverflowPolicy.DROP_OLDEST));
+
+        submitAll(dispatcher, "old chat");
+        dispatcher.submit(new Narration("old mention of Player", "Alex", NarrationType.CHAT, false, now));
+        now += TimeUnit.SECONDS.toNanos(10);
+        submitAll(dispatcher, "new chat");
+        dispatcher.drain();
+
+        assertEquals(List.of("old mention of Player", "new chat"), narrator.thingsSaid,
+                "Only the stale general chat should be trimmed");
+    }
+
+    @Test
+    @DisplayName("Bursts of short messages are held for the batch window and spoken as one utterance")
+    void testBatching() {
+        final RecordingNarrator narrator = new RecordingNarrator();
+        final NarrateChatConfig config = config(8, QueueOverflowPolicy.DROP_OLDEST);
+        config.batchWindowMillis = 50;
+        config.batchMaxChars = 20;
+        config.speechCharsPerSecond = 0;
+        final NarrationDispatcher dispatcher = dispatcher(narrator, config);
+
+        submitAll(dispatcher, "hi", "hey!", "what");
+        assertTrue(dispatcher.step() > 0, "The worker should wait for more messages");
+        assertTrue(narrator.thingsSaid.isEmpty(), "Nothing should be spoken within the batch window");
+
+        now += TimeUnit.MILLISECONDS.toNanos(50);
+        while (dispatcher.step() == 0) {}
+        assertEquals(List.of("hi. hey! what"), narrator.thingsSaid, "The burst should be one utterance");
+
+        narrator.thingsSaid.clear();
+        submitAll(dispatcher, "first message", "second message");
+        while (dispatcher.step() == 0) {}
+        assertEquals(List.of("first message"), narrator.thingsSaid,
+                "A full batch should be spoken without waiting, and messages beyond it should not be added");
+        now += TimeUnit.MILLISECONDS.toNanos(50);
+        while (dispatcher.step() == 0) {}
+        assertEquals(List.of("first message", "second message"), narrator.thingsSaid,
+                "The rest should be spoken once the batch window has passed");
+    }
+
+    @Test
+    @DisplayName("A new config and backend take effect for the next narration without losing queued ones")
+    void testReconfigure() {
+        final RecordingNarrator narrator = new RecordingNarrator();
+        final NarrationDispatcher dispatcher = dispatcher(narrator, config(8, QueueOverflowPolicy.DROP_OLDEST));
+        submitAll(dispatcher, "queued before");
+
+        final NarrateChatConfig muted = config(8, QueueOverflowPolicy.DROP_OLDEST);
+        muted.mutedKeywords = List.of("spam");
+        dispatcher.reconfigure(muted);
+        final RecordingNarrator replacement = new RecordingNarrator();
+        dispatcher.setBackend(new MinecraftNarrationBackend(replacement));
+        submitAll(dispatcher, "buy spam now", "kept");
+        dispatcher.drain();
+
+        assertEquals(muted, dispatcher.config(), "The dispatcher should report the new config");
+        assertTrue(narrator.thingsSaid.isEmpty(), "The old backend should no longer be used");
+        assertEquals(List.of("queued before", "kept"), replacement.thingsSaid,
+                "Queued narrations should survive the switch and new filters should apply to new ones");
+    }
+
+    @Test
+    @DisplayName("Cancelling stops the speech and drops the queue, and stale utterances are cut off")
+    void testCancel() {
+        final RecordingNarrator narrator = new RecordingNarrator();
+        final NarrateChatConfig config = config(8, QueueOverflowPolicy.DROP_OLDEST);
+        config.speechCharsPerSecond = 10;
+        config.staleUtteranceMillis = 5000;
+        config.maxNarrationAgeMillis = 0;
+        final NarrationDispatcher dispatcher = dispatcher(narrator, config);
+
+        submitAll(dispatcher, "a message which takes a while to say", "dead backlog", "more dead backlog");
+        dispatcher.step();
+        dispatcher.cancel();
+        dispatcher.step();
+        assertEquals(List.of("a message which takes a while to say"), narrator.thingsSaid,
+                "Only the narration spoken before cancelling should be heard");
+        assertEquals(1, narrator.clears, "Cancelling should stop the speech");
+        assertEquals(0, dispatcher.pending(), "Cancelling should drop the waiting narrations");
+
+        submitAll(dispatcher, "a very long message which would take the narrator about eight seconds to say", "next");
+        dispatcher.step();
+        now += TimeUnit.MILLISECONDS.toNanos(2000);
+        assertTrue(dispatcher.step() > 0, "A recent utterance should not be cut off");
+        now += TimeUnit.MILLISECONDS.toNanos(3001);
+        dispatcher.step();
+        assertEquals(2, narrator.clears, "An utterance past the stale limit should be cut off");
+        assertEquals("next", narrator.thingsSaid.get(narrator.thingsSaid.size() - 1),
+                "The next narration should be spoken right away");
+    }
+
+    private NarrationDispatcher dispatcher(final Narrator narrator, final NarrateChatConfig config) {
+        return new NarrationDispatcher(new MinecraftNarrationBackend(narrator), config, () -> "Player", () -> now);
+    }
+
+    /**
+     * Create a config with the given queue settings, no rate limits and no batching.
+     */
+    private static NarrateChatConfig config(final int capacity, final QueueOverflowPolicy policy) {
+        final NarrateChatConfig config = new NarrateChatConfig();
+        config.queueCapacity = capacity;
+        config.queueOverflowPolicy = policy;
+        config.globalRatePerSecond = 0;
+        config.senderRatePerSecond = 0;
+        config.batchMaxChars = 0;
+        return config;
+    }
+
+    private NarrationPriority classify(final PriorityClassifier classifier, final String sender, final String text) {
+        return classifier.classify(new Narration(text, sender, NarrationType.CHAT, false, now), text);
+    }
+
+    private void submitAll(final NarrationDispatcher dispatcher, final String... texts) {
+        for (String text : texts) {
+            dispatcher.submit(new Narration(text, null, NarrationType.CHAT, false, now));
+        }
+    }
+
+    /**
+     * Narrator which records everything it is asked to say.
+     */
+    private static class RecordingNarrator implements Narrator {
+        public final List<String> thingsSaid = Collections.synchronizedList(new ArrayList<>());
+
+        public void say(String msg, boolean interrupt) { thingsSaid.add(msg); }
+        public int clears;
+
+        public void clear() { clears++; }
+        public boolean active() { return true; }
+        public void destroy() {}
+    }
+}
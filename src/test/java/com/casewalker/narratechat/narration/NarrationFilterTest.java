@@ -0,0 +1,122 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.narration;
+
+import com.casewalker.narratechat.config.NarrateChatConfig;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test functionality within the {@link NarrationFilter} and its {@link KeywordMatcher}.
+ *
+ * @author Case Walker
+ */
+public class NarrationFilterTest {
+
+    @Test
+    @DisplayName("The keyword matcher finds overlapping keywords anywhere in the text, ignoring case")
+    void testKeywordMatcher() {
+        final KeywordMatcher matcher = new KeywordMatcher(List.of("he", "she", "his", "hers", "ushers"));
+
+        assertTrue(matcher.matches("an USHER came"), "'she' inside 'usher' should match via failure links");
+        assertTrue(matcher.matches("xxhisxx"), "'his' should match");
+        assertFalse(matcher.matches("hxs sh"), "No keyword should match");
+        assertFalse(new KeywordMatcher(List.of()).matches("anything"), "An empty matcher should never match");
+    }
+
+    @Test
+    @DisplayName("Message types can be disabled individually")
+    void testTypes() {
+        final NarrateChatConfig config = new NarrateChatConfig();
+        config.narrateGame = false;
+        final NarrationFilter filter = new NarrationFilter(config);
+
+        assertTrue(filter.allows(NarrationType.CHAT, "Steve", "hi"), "Chat should be allowed");
+        assertTrue(filter.allows(NarrationType.SYSTEM, null, "hi"), "System should be allowed");
+        assertFalse(filter.allows(NarrationType.GAME, null, "hi"), "Game info should be filtered");
+    }
+
+    @Test
+    @DisplayName("Sender allow and deny lists are applied case-insensitively")
+    void testSenders() {
+        final NarrateChatConfig config = new NarrateChatConfig();
+        config.allowedSenders = List.of("Steve", "Alex");
+        config.deniedSenders = List.of("alex");
+        final NarrationFilter filter = new NarrationFilter(config);
+
+        assertTrue(filter.allows(NarrationType.CHAT, "STEVE", "hi"), "Allowed sender should pass");
+        assertFalse(filter.allows(NarrationType.CHAT, "Alex", "hi"), "Denied sender should be filtered");
+        assertFalse(filter.allows(NarrationType.CHAT, "Notch", "hi"),
+                "Sender not on the allow list should be filtered");
+        assertTrue(filter.allows(NarrationType.SYSTEM, null, "hi"), "Messages without a sender should pass");
+    }
+
+    @Test
+    @DisplayName("Muted keywords and patterns filter messages, invalid patterns are ignored")
+    void testMuteRules() {
+        final NarrateChatConfig config = new NarrateChatConfig();
+        config.mutedKeywords = List.of("discord", "vote");
+        config.mutedPatterns = List.of("^\\[ad\\]", "([unclosed", "\\d{3,}-\\d{4}");
+        final NarrationFilter filter = new NarrationFilter(config);
+
+        assertFalse(filter.allows(NarrationType.CHAT, null, "Join our DISCORD!"), "Keyword should mute");
+        assertFalse(filter.allows(NarrationType.CHAT, null, "[AD] buy stuff"), "Pattern should mute");
+        assertFalse(filter.allows(NarrationType.CHAT, null, "call 555-1234"), "Second pattern should mute");
+        assertTrue(filter.allows(NarrationType.CHAT, null, "hello [ad]"), "Anchored pattern should not match");
+    }
+
+    @Test
+    @DisplayName("Patterns with backreferences keep working next to other patterns")
+    void testBackreferences() {
+        final NarrateChatConfig config = new NarrateChatConfig();
+        config.mutedPatterns = List.of("(spam)", "\\b(\\w+) \\1\\b", "(?<word>\\w+)!\\k<word>", "\\\\1");
+        final NarrationFilter filter = new NarrationFilter(config);
+
+        assertFalse(filter.allows(NarrationType.CHAT, null, "the the game"), "Repeated words should mute");
+        assertFalse(filter.allows(NarrationType.CHAT, null, "hey!HEY"), "Named backreferences should mute");
+        assertFalse(filter.allows(NarrationType.CHAT, null, "no spam here"), "Combined patterns should still mute");
+        assertFalse(filter.allows(NarrationType.CHAT, null, "path\\1"), "Escaped backslashes are not backreferences");
+        assertTrue(filter.allows(NarrationType.CHAT, null, "the game"), "Different words should not mute");
+    }
+
+    @Test
+    @DisplayName("Inline flags and quotes in a pattern do not change how the other patterns are matched")
+    void testInlineFlagsAndQuotes() {
+        final NarrateChatConfig config = new NarrateChatConfig();
+        config.mutedPatterns = List.of("(?x) free  spacing  # with a comment", "\\Qa+b", "(spam)", "(?-i)LOUD");
+        final NarrationFilter filter = new NarrationFilter(config);
+
+        assertFalse(filter.allows(NarrationType.CHAT, null, "freespacing"),
+                "Comments mode should apply to its pattern");
+        assertFalse(filter.allows(NarrationType.CHAT, null, "1 a+b 2"), "Quoted text should match literally");
+        assertFalse(filter.allows(NarrationType.CHAT, null, "no SPAM here"), "Other patterns should still mute");
+        assertFalse(filter.allows(NarrationType.CHAT, null, "LOUD"), "Flags should apply to their own pattern");
+        assertTrue(filter.allows(NarrationType.CHAT, null, "loud spa m"), "Flags should not leak into other patterns");
+    }
+}
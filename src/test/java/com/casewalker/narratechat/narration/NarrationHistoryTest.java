@@ -0,0 +1,115 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.narration;
+
+import com.casewalker.narratechat.NarrateChatMod;
+import com.casewalker.narratechat.backend.MinecraftNarrationBackend;
+import com.casewalker.narratechat.config.NarrateChatConfig;
+import com.mojang.text2speech.Narrator;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the {@link NarrationHistory} and the replay of its entries by the {@link NarrationDispatcher}.
+ *
+ * @author Case Walker
+ */
+public class NarrationHistoryTest {
+
+    @Test
+    @DisplayName("The history keeps the newest entries in order and drops those overwritten in the arena")
+    void testBounded() {
+        final NarrationHistory history = new NarrationHistory();
+        history.configure(4);
+        for (int i = 0; i < 10; i++) {
+            history.record(NarrationType.CHAT, "Steve", "message " + i, i);
+        }
+        assertEquals(List.of("message 7", "message 8", "message 9"), texts(history.recent(3)),
+                "The most recent entries should be returned oldest first");
+        assertEquals(4, history.size(), "Only as many entries as configured should be kept");
+
+        // Each entry may use 128 characters of the arena, so two long messages push out the short ones
+        history.record(NarrationType.SYSTEM, null, "x".repeat(300), 10);
+        history.record(NarrationType.SYSTEM, null, "y".repeat(400), 11);
+        final List<NarrationHistory.Entry> kept = history.recent(4);
+        assertEquals(1, kept.size(), "Entries whose characters were overwritten should be dropped");
+        assertEquals("y".repeat(400), kept.get(0).text(), "The newest entry should be intact");
+        assertNull(kept.get(0).sender(), "A message without a sender should have none");
+    }
+
+    @Test
+    @DisplayName("The history can be searched by text and by sender, ignoring case")
+    void testSearch() {
+        final NarrationHistory history = new NarrationHistory();
+        history.configure(10);
+        history.record(NarrationType.CHAT, "Steve", "Steve says Meet at the portal", 1);
+        history.record(NarrationType.CHAT, "Alex", "Alex says on my way", 2);
+        history.record(NarrationType.SYSTEM, null, "The portal was destroyed", 3);
+        history.record(NarrationType.CHAT, "Steve", "Steve says never mind", 4);
+
+        assertEquals(List.of("The portal was destroyed", "Steve says Meet at the portal"),
+                texts(history.searchText("PORTAL", 10)), "Text search should find matches, newest first");
+        assertEquals(List.of("Steve says never mind"), texts(history.searchSender("steve", 1)),
+                "Sender search should respect the limit");
+        assertEquals(2, history.searchSender("STEVE", 10).size(), "Sender search should ignore case");
+        assertTrue(history.searchSender("Ste", 10).isEmpty(), "Sender search should match whole names");
+    }
+
+    @Test
+    @DisplayName("Narrated messages are recorded and replayed without being recorded again")
+    void testReplay() {
+        NarrateChatMod.HISTORY.configure(0);
+        NarrateChatMod.HISTORY.configure(8);
+        final List<String> said = new ArrayList<>();
+        final NarrateChatConfig config = new NarrateChatConfig();
+        config.batchMaxChars = 0;
+        final NarrationDispatcher dispatcher = new NarrationDispatcher(
+                new MinecraftNarrationBackend(new Narrator() {
+                    public void say(String msg, boolean interrupt) { said.add(msg); }
+                    public void clear() {}
+                    public boolean active() { return true; }
+                    public void destroy() {}
+                }), config, () -> "Player", () -> 0);
+
+        dispatcher.submit(new Narration("first", null, NarrationType.SYSTEM, false, 0));
+        dispatcher.submit(new Narration("second", null, NarrationType.SYSTEM, false, 0));
+        dispatcher.drain();
+        assertEquals(2, dispatcher.replay(NarrateChatMod.HISTORY.recent(2)), "Both entries should be queued again");
+        dispatcher.drain();
+
+        assertEquals(List.of("first", "second", "first", "second"), said, "Replayed messages should be spoken again");
+        assertEquals(2, NarrateChatMod.HISTORY.size(), "Replayed messages should not be recorded again");
+    }
+
+    private static List<String> texts(final List<NarrationHistory.Entry> entries) {
+        return entries.stream().map(NarrationHistory.Entry::text).toList();
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.narration;
+
+import com.casewalker.narratechat.config.NarrateChatConfig;
+import com.casewalker.narratechat.config.NarrationModeConfig;
+import com.casewalker.narratechat.util.Util;
+import net.minecraft.client.option.NarratorMode;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Test the layout of the mode ids and the routing masks of {@link NarrationModes}.
+ *
+ * @author Case Walker
+ */
+public class NarrationModesTest {
+
+    @Test
+    @DisplayName("Removing the mode with the highest id leaves a placeholder, so its saved id maps to no other mode")
+    void testRemovedMode() {
+        final NarrateChatConfig before = config(mode(5, "Whispers"), mode(9, "Team"));
+        final NarrateChatConfig after = config(mode(5, "Whispers"));
+
+        final NarrationModeConfig[] oldLayout = NarrationModes.layout(before);
+        final NarrationModeConfig[] newLayout = NarrationModes.layout(after);
+
+        assertEquals(NarrateChatConfig.MAX_NARRATION_MODE_ID + 1, oldLayout.length, "Every id should be taken");
+        assertEquals(oldLayout.length, newLayout.length, "Removing a mode should not change the number of modes");
+        assertSame(oldLayout[9], before.narrationModes.get(1), "A configured mode should keep its id");
+        assertNull(newLayout[Math.floorMod(9, newLayout.length)], "The removed mode's id should be a placeholder");
+        assertSame(after.narrationModes.get(0), newLayout[5], "The remaining mode should keep its id");
+        for (int id = 0; id <= Util.ALL_CHAT_ID; id++) {
+            assertNull(newLayout[id], "The vanilla ids and ALL_CHAT should not be laid out again");
+        }
+    }
+
+    @Test
+    @DisplayName("Cycling from a mode moves on to the listed mode with the next id, wrapping around after the last")
+    void testListedAfter() {
+        assertEquals(NarratorMode.ALL, NarrationModes.listedAfter(NarratorMode.OFF), "The next id should follow");
+        assertEquals(NarratorMode.OFF, NarrationModes.listedAfter(NarratorMode.SYSTEM),
+                "The last mode should wrap around to the first");
+        assertFalse(NarrationModes.isPlaceholder(NarratorMode.CHAT), "A listed mode should not be a placeholder");
+    }
+
+    private static NarrateChatConfig config(final NarrationModeConfig... modes) {
+        final NarrateChatConfig config = new NarrateChatConfig();
+        config.narrationModes = List.of(modes);
+        return config;
+    }
+
+    private static NarrationModeConfig mode(final int id, final String name) {
+        final NarrationModeConfig mode = new NarrationModeConfig();
+        mode.id = id;
+        mode.name = name;
+        return mode;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.narration;
+
+import com.casewalker.narratechat.config.NarrateChatConfig;
+import net.minecraft.text.Text;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test functionality within the {@link NarrationTemplates} and {@link NarrationTemplate}.
+ *
+ * @author Case Walker
+ */
+public class NarrationTemplatesTest {
+
+    @Test
+    @DisplayName("Templates use the argument syntax of Minecraft's language files")
+    void testCompile() {
+        assertEquals("Alex got Diamonds!", fill("%s got %s", "Alex", "Diamonds!"), "Arguments should be sequential");
+        assertEquals("Diamonds! for Alex", fill("%2$s for %1$s", "Alex", "Diamonds!"), "Arguments can be indexed");
+        assertEquals("100% Alex", fill("100%% %s", "Alex"), "%% should be a percent sign");
+        assertEquals("Alex and ", fill("%s and %s", "Alex"), "Missing arguments should be left out");
+        assertThrows(IllegalArgumentException.class, () -> NarrationTemplate.compile("%d"),
+                "Unsupported specifiers should be rejected");
+        assertTrue(NarrationTemplate.compile("").isMuted(), "An empty template should mute");
+        assertFalse(NarrationTemplate.compile("Someone joined").isMuted(), "A plain phrase should not mute");
+    }
+
+    @Test
+    @DisplayName("Messages with a template are narrated as the filled-in template, or dropped if it is empty")
+    void testNarration() {
+        final NarrateChatConfig config = new NarrateChatConfig();
+        config.narrationTemplates = Map.of(
+                "multiplayer.player.joined", "%s joined",
+                "multiplayer.player.left", "",
+                "broken", "%q");
+        final NarrationTemplates templates = new NarrationTemplates(config);
+
+        final Narration joined = narration(Text.translatable("multiplayer.player.joined", Text.literal("§cAlex")));
+        assertTrue(joined.applyTemplate(templates), "A shortened message should not be dropped");
+        assertEquals("Alex joined", joined.plainText().toString(), "Arguments should be flattened and stripped");
+        assertEquals("Alex joined", joined.text(), "The template should be spoken");
+
+        assertFalse(narration(Text.translatable("multiplayer.player.left", "Alex")).applyTemplate(templates),
+                "A muted key should be dropped");
+        assertNull(templates.forMessage(Text.translatable("broken")), "Invalid templates should be ignored");
+        assertNull(templates.forMessage(Text.literal("multiplayer.player.joined")),
+                "Literal messages should never match a key");
+    }
+
+    private static String fill(final String template, final Object... args) {
+        return NarrationText.fillToBuffer(NarrationTemplate.compile(template), args).toString();
+    }
+
+    private static Narration narration(final Text message) {
+        return new Narration(() -> message, NarrationType.SYSTEM, false, 0);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.narration;
+
+import net.minecraft.text.Text;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Test functionality within the {@link NarrationText}.
+ *
+ * @author Case Walker
+ */
+public class NarrationTextTest {
+
+    @Test
+    @DisplayName("Flattening a nested text matches Text#getString")
+    void testFlattenNested() {
+        final Text text = Text.literal("<Steve> ").append(Text.literal("hello ").append(Text.literal("there")));
+
+        assertEquals(text.getString(), NarrationText.flatten(text), "Plain nested text should flatten like getString");
+    }
+
+    @Test
+    @DisplayName("Formatting codes are stripped, even when split across siblings")
+    void testStripFormattingCodes() {
+        final Text text = Text.literal("§cred§").append(Text.literal("r plain"));
+
+        assertEquals("red plain", NarrationText.flatten(text), "Formatting codes should be removed");
+    }
+
+    @Test
+    @DisplayName("URLs are replaced with a short word")
+    void testReplaceUrls() {
+        assertEquals("see link and link now", NarrationText.strip("see https://example.com/a?b=c and WWW.test.org now"),
+                "URLs should be replaced");
+        assertEquals("http is fine", NarrationText.strip("http is fine"), "Words merely starting like a URL are kept");
+    }
+}
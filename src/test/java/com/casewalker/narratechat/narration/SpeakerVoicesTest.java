@@ -0,0 +1,137 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.narration;
+
+import com.casewalker.narratechat.backend.NarrationBackend;
+import com.casewalker.narratechat.config.NarrateChatConfig;
+import net.minecraft.text.Text;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * Test the assignment of voices to players by {@link SpeakerVoices} and their use by the {@link NarrationDispatcher}.
+ *
+ * @author Case Walker
+ */
+public class SpeakerVoicesTest {
+
+    @Test
+    @DisplayName("Players keep their voice, and the most recent speakers never share one")
+    void testAssignment() {
+        final SpeakerVoices voices = new SpeakerVoices(config(3), true);
+
+        final int steve = voices.voiceOf(chat("Steve"));
+        assertEquals(steve, new SpeakerVoices(config(3), true).voiceOf(chat("Steve")),
+                "A player's first voice should be stable across instances");
+        final Set<Integer> recent = new HashSet<>(List.of(steve, voices.voiceOf(chat("Alex")),
+                voices.voiceOf(chat("Herobrine"))));
+        assertEquals(Set.of(1, 2, 3), recent, "Three recent speakers should have three different voices");
+        assertEquals(steve, voices.voiceOf(chat("Steve")), "A recent speaker should keep their voice");
+        assertEquals(SpeakerVoices.DEFAULT_VOICE, voices.voiceOf(new Narration("Server restart", null,
+                NarrationType.SYSTEM, false, 0)), "Messages without a sender should use the default voice");
+
+        for (int i = 0; i < 100; i++) {
+            final int previous = voices.voiceOf(chat("Player" + i));
+            assertNotEquals(previous, voices.voiceOf(chat("Other" + i)), "Consecutive speakers should sound different");
+        }
+        assertEquals(SpeakerVoices.DEFAULT_VOICE, new SpeakerVoices(config(3), false).voiceOf(chat("Steve")),
+                "Without backend support, everyone should use the default voice");
+    }
+
+    @Test
+    @DisplayName("Chat is spoken without the sender's name, in their voice, and not batched across senders")
+    void testDispatcher() {
+        final VoiceBackend backend = new VoiceBackend();
+        final NarrateChatConfig config = config(4);
+        config.globalRatePerSecond = 0;
+        config.senderRatePerSecond = 0;
+        config.batchWindowMillis = 0;
+        final NarrationDispatcher dispatcher = new NarrationDispatcher(backend, config, () -> "Player", () -> 0);
+
+        for (String[] message : new String[][]{{"Steve", "hi"}, {"Steve", "anyone here?"}, {"Alex", "yes"}}) {
+            dispatcher.submit(new Narration(() -> Text.translatable("chat.type.text.narrate",
+                    Text.literal(message[0]), Text.literal(message[1])), NarrationType.CHAT, false, 0));
+        }
+        dispatcher.drain();
+
+        assertEquals(List.of("hi. anyone here?", "yes"), backend.thingsSaid,
+                "Names should be left out and only one sender's messages should be batched");
+        assertEquals(2, backend.voicesSet.size(), "The voice should be switched for each sender");
+        assertFalse(backend.voicesSet.get(0).equals(backend.voicesSet.get(1)), "Senders should have different voices");
+    }
+
+    @Test
+    @DisplayName("The same words from two players are neither duplicates nor merged when names are left out")
+    void testSameWordsFromTwoSenders() {
+        final VoiceBackend backend = new VoiceBackend();
+        final NarrateChatConfig config = config(4);
+        config.batchWindowMillis = 0;
+        final NarrationDispatcher dispatcher = new NarrationDispatcher(backend, config, () -> "Player", () -> 0);
+
+        for (String sender : new String[]{"Steve", "Alex", "Alex"}) {
+            dispatcher.submit(new Narration(() -> Text.translatable("chat.type.text.narrate",
+                    Text.literal(sender), Text.literal("gg")), NarrationType.CHAT, false, 0));
+        }
+        dispatcher.drain();
+
+        assertEquals(List.of("gg", "gg"), backend.thingsSaid,
+                "Each player's message should be spoken once, and only one player's repeat dropped");
+        assertEquals(2, backend.voicesSet.size(), "Each message should be spoken in its sender's voice");
+    }
+
+    private static NarrateChatConfig config(final int voiceCount) {
+        final NarrateChatConfig config = new NarrateChatConfig();
+        config.speakerVoices = true;
+        config.speakerVoiceCount = voiceCount;
+        return config;
+    }
+
+    private static Narration chat(final String sender) {
+        return new Narration("message", sender, NarrationType.CHAT, false, 0);
+    }
+
+    /**
+     * Backend which supports voices and records what it is asked to do.
+     */
+    private static class VoiceBackend implements NarrationBackend {
+        private final List<String> thingsSaid = new ArrayList<>();
+        private final List<Integer> voicesSet = new ArrayList<>();
+
+        public void say(final String text, final boolean interrupt) { thingsSaid.add(text); }
+        public boolean supportsVoices() { return true; }
+        public void setVoice(final int voice, final int voices) { voicesSet.add(voice); }
+        public void clear() {}
+        public boolean active() { return true; }
+        public void close() {}
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2022 Case Walker.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.casewalker.narratechat.replay;
+
+import com.casewalker.narratechat.config.NarrateChatConfig;
+import com.casewalker.narratechat.interfaces.ForcedNarratorManager;
+import com.casewalker.narratechat.narration.NarrationType;
+import net.minecraft.text.Text;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Test reading chat from Minecraft's log files with the {@link ChatLogReader}.
+ *
+ * @author Case Walker
+ */
+public class ChatLogReaderTest {
+
+    private static final String LOG = String.join("\n",
+            "[23:59:58] [main/INFO]: Loading Minecraft 1.19.1 with Fabric Loader 0.14.8",
+            "[23:59:58] [Render thread/INFO]: [CHAT] <Steve> hello there",
+            "[23:59:59] [Render thread/INFO]: [System] [CHAT] Alex joined the game",
+            "[23:59:59] [Render thread/INFO]: [Not Secure] [CHAT] <Alex> hi Steve\r",
+            "[00:00:01] [Render thread/WARN]: Something else " + "x".repeat(ChatLogReader.MAX_LINE_BYTES),
+            "[00:00:02] [Render thread/INFO]: [CHAT] <Steve> after midnight");
+
+    private Path dir;
+
+    @BeforeEach
+    void createDirectory() throws IOException {
+        dir = Files.createTempDirectory("narratechat");
+    }
+
+    @AfterEach
+    void deleteDirectory() throws IOException {
+        try (var files = Files.list(dir)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    @Test
+    @DisplayName("Chat lines of a plain log are read with their sender, type and time")
+    void testPlainLog() throws IOException {
+        final Path log = dir.resolve("latest.log");
+        Files.writeString(log, LOG);
+
+        assertEntries(log);
+    }
+
+    @Test
+    @DisplayName("Gzipped archived logs are read the same way")
+    void testGzippedLog() throws IOException {
+        final Path log = dir.resolve("2022-08-01-1.log.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(log))) {
+            out.write(LOG.getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertEntries(log);
+    }
+
+    @Test
+    @DisplayName("Replaying a log hands every chat message to forceNarrateOnMode")
+    void testReplay() throws IOException {
+        final Path log = dir.resolve("latest.log");
+        Files.writeString(log, LOG + "\n");
+        final List<NarrationType> types = new ArrayList<>();
+
+        final long count = ChatLogReader.replay(log, new ForcedNarratorManager() {
+            public void forceNarrateOnMode(final Text text, final NarrationType type) { types.add(type); }
+            public void stopNarration() {}
+            public void onChatClosed() {}
+            public void applyConfig(final NarrateChatConfig config) {}
+            public int replayHistory(final int count) { return 0; }
+            public void initializeInBackground() {}
+        });
+
+        assertEquals(4, count, "Every chat line should be replayed");
+        assertEquals(List.of(NarrationType.CHAT, NarrationType.SYSTEM, NarrationType.CHAT, NarrationType.CHAT), types,
+                "Messages should be replayed in order with their types");
+    }
+
+    private static void assertEntries(final Path log) throws IOException {
+        final List<String> entries = new ArrayList<>();
+        try (ChatLogReader reader = new ChatLogReader(log)) {
+            for (ChatLogEntry entry = reader.next(); entry != null; entry = reader.next()) {
+                entries.add(entry.offsetMillis() + " " + entry.type() + " " + entry.sender() + ": " + entry.message());
+            }
+        }
+        assertEquals(List.of(
+                "0 CHAT Steve: hello there",
+                "1000 SYSTEM null: Alex joined the game",
+                "1000 CHAT Alex: hi Steve",
+                "4000 CHAT Steve: after midnight"), entries,
+                "Only chat lines should be read, and times should continue past midnight");
+    }
+}